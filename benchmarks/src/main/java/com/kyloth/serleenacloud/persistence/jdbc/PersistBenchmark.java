@@ -0,0 +1,222 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: PersistBenchmark.java
+ * Package: com.kyloth.serleenacloud.persistence.jdbc
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.persistence.jdbc;
+
+import com.kyloth.serleenacloud.datamodel.auth.User;
+import com.kyloth.serleenacloud.datamodel.business.CheckPoint;
+import com.kyloth.serleenacloud.datamodel.business.Experience;
+import com.kyloth.serleenacloud.datamodel.business.PointOfInterest;
+import com.kyloth.serleenacloud.datamodel.business.Telemetry;
+import com.kyloth.serleenacloud.datamodel.business.Track;
+import com.kyloth.serleenacloud.datamodel.business.UserPoint;
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+import com.kyloth.serleenacloud.persistence.IDataSource;
+import com.kyloth.serleenacloud.persistence.IExperienceDao;
+import com.kyloth.serleenacloud.persistence.ITelemetryDao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH della scrittura di Esperienze e tracciamenti.
+ *
+ * @use Misura il salvataggio, su una base di dati H2 in memoria, di un tracciamento con size eventi e di un'Esperienza con un percorso di size checkpoint, un tracciamento di size eventi, size/20 punti utente e size/20 punti d'interesse. L'Esperienza viene salvata sempre con lo stesso id, per cui ogni invocazione sostituisce quella precedente, come avviene alla sincronizzazione; i tracciamenti salvati vengono eliminati al termine di ogni iterazione.
+ * @field size : int Campo dati rappresentante la dimensione dei dati: numero di checkpoint del percorso e di eventi del tracciamento
+ * @field context : ClassPathXmlApplicationContext Campo dati contenente il contesto Spring della base di dati in memoria
+ * @field tpl : JdbcTemplate Campo dati contenente il template JDBC della base di dati
+ * @field experienceDao : IExperienceDao Campo dati contenente il DAO delle Esperienze dell'utente
+ * @field telemetryDao : ITelemetryDao Campo dati contenente il DAO dei tracciamenti
+ * @field experience : Experience Campo dati contenente l'Esperienza da salvare
+ * @field telemetry : Telemetry Campo dati contenente il tracciamento da salvare
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistBenchmark {
+
+    /**
+     * Dimensione dei dati: numero di checkpoint del percorso e di eventi
+     * del tracciamento.
+     */
+
+    @Param({"100", "2000"})
+    int size;
+
+    /**
+     * Contesto Spring della base di dati in memoria.
+     */
+
+    ClassPathXmlApplicationContext context;
+
+    /**
+     * Template JDBC della base di dati.
+     */
+
+    JdbcTemplate tpl;
+
+    /**
+     * DAO delle Esperienze dell'utente.
+     */
+
+    IExperienceDao experienceDao;
+
+    /**
+     * DAO dei tracciamenti.
+     */
+
+    ITelemetryDao telemetryDao;
+
+    /**
+     * Esperienza da salvare.
+     */
+
+    Experience experience;
+
+    /**
+     * Tracciamento da salvare.
+     */
+
+    Telemetry telemetry;
+
+    /**
+     * Popola la base di dati con l'utente, il percorso del tracciamento e
+     * i punti d'interesse, e prepara l'Esperienza e il tracciamento.
+     */
+
+    @Setup
+    public void setup() {
+        context = new ClassPathXmlApplicationContext("Spring-ModuleBenchmark.xml");
+        tpl = new JdbcTemplate((DataSource)context.getBean("inMemoryDataSource"));
+        IDataSource ds = ((IDataSource)context.getBean("dataSource"))
+            .forUser(new User("bench@kyloth.com", "psw", "Kyloth-1"));
+        experienceDao = ds.experienceDao();
+        telemetryDao = ds.telemetryDao();
+
+        tpl.update("INSERT INTO Users (Email, Password, DeviceId) VALUES ('bench@kyloth.com', 'psw', 'Kyloth-1')");
+        tpl.update("INSERT INTO Tracks (Id, Name) VALUES ('telemetry', 'Telemetry')");
+
+        Date[] events = new Date[size];
+        for (int i = 0; i < size; i++)
+            events[i] = new Date(i * 1000L);
+        telemetry = new Telemetry(events, "telemetry");
+
+        CheckPoint[] cps = new CheckPoint[size];
+        for (int i = 0; i < size; i++)
+            cps[i] = new CheckPoint(45.0 + i * 0.0001, 11.0, i);
+
+        UserPoint[] ups = new UserPoint[size / 20];
+        PointOfInterest[] pois = new PointOfInterest[size / 20];
+        for (int i = 0; i < ups.length; i++) {
+            ups[i] = new UserPoint(45.0, 11.0 + i * 0.0001);
+            pois[i] = new PointOfInterest(45.1, 11.0 + i * 0.0001, "POI" + i, PointOfInterest.POIType.INFO);
+            tpl.update("INSERT INTO POIs (Name, Longitude, Latitude, Type) VALUES (?, ?, ?, 'INFO')",
+                       pois[i].getName(), pois[i].getLongitude(), pois[i].getLatitude());
+        }
+
+        Track t = new Track("T", "track", cps, new Telemetry[] {new Telemetry(events, "track")});
+        experience = new Experience("E", "experience", new Rect(new Point(46.0, 10.0), new Point(44.0, 12.0)),
+                                    new Track[] {t}, ups, pois);
+    }
+
+    /**
+     * Elimina i tracciamenti salvati da telemetry().
+     */
+
+    @TearDown(Level.Iteration)
+    public void clean() {
+        tpl.update("DELETE FROM Telemetries WHERE TrackId = 'telemetry'");
+    }
+
+    /**
+     * Chiude il contesto Spring.
+     */
+
+    @TearDown
+    public void close() {
+        context.close();
+    }
+
+    /**
+     * Salvataggio di un tracciamento con i suoi eventi.
+     */
+
+    @Benchmark
+    public void telemetry() {
+        telemetryDao.persist(telemetry);
+    }
+
+    /**
+     * Salvataggio dell'Esperienza, in sostituzione di quella salvata
+     * dall'invocazione precedente.
+     */
+
+    @Benchmark
+    public void experience() {
+        experienceDao.persist(experience);
+    }
+
+    /**
+     * Esegue tutti i benchmark.
+     *
+     * @param args Argomenti ignorati.
+     * @throws RunnerException
+     */
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                   .include(PersistBenchmark.class.getSimpleName())
+                   .build()).run();
+    }
+}
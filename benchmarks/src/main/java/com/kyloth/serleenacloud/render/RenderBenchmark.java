@@ -0,0 +1,211 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RenderBenchmark.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.business.Experience;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH delle fasi del rendering di un'Esperienza.
+ *
+ * @use Misura separatamente la costruzione di un ImageRenderer, il disegno dell'immagine complessiva, il disegno di un quadrante con un ImageRenderer nuovo o già utilizzato, la codifica PNG e la codifica base64 di un quadrante, per Esperienze sintetiche di dimensione crescente. I quadranti vengono disegnati senza BaseLayer né cache, per cui ogni invocazione ridisegna tutte le entità. Va eseguito con il profiler gc per ottenere, oltre al throughput, la quantità di memoria allocata per operazione.
+ * @field size : int Campo dati rappresentante la dimensione dell'Esperienza: numero di checkpoint del percorso
+ * @field renderer : Renderer Campo dati contenente il Renderer dell'Esperienza
+ * @field ir : ImageRenderer Campo dati contenente un ImageRenderer già utilizzato per disegnare un quadrante
+ * @field x : int Campo dati rappresentante la coordinata x del quadrante centrale
+ * @field y : int Campo dati rappresentante la coordinata y del quadrante centrale
+ * @field quadrant : BufferedImage Campo dati contenente il quadrante centrale disegnato
+ * @field png : byte[] Campo dati contenente il quadrante centrale codificato in PNG
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    /**
+     * Dimensione dell'Esperienza: numero di checkpoint del percorso.
+     */
+
+    @Param({"100", "1000", "10000"})
+    int size;
+
+    /**
+     * Renderer dell'Esperienza.
+     */
+
+    Renderer renderer;
+
+    /**
+     * ImageRenderer già utilizzato per disegnare un quadrante.
+     */
+
+    ImageRenderer ir;
+
+    /**
+     * Coordinata x del quadrante centrale.
+     */
+
+    int x;
+
+    /**
+     * Coordinata y del quadrante centrale.
+     */
+
+    int y;
+
+    /**
+     * Quadrante centrale disegnato.
+     */
+
+    BufferedImage quadrant;
+
+    /**
+     * Quadrante centrale codificato in PNG.
+     */
+
+    byte[] png;
+
+    /**
+     * Popola la base di dati e prepara l'Esperienza e il quadrante
+     * centrale.
+     *
+     * @throws IOException
+     */
+
+    @Setup
+    public void setup() throws IOException {
+        Utils.tileRendering = true;
+        Utils.baseLayer = false;
+        Renderer.ds = SyntheticData.load(size);
+
+        Experience e = SyntheticData.experience(size);
+        renderer = Renderer.fromExperience(e);
+        ir = new ImageRenderer(renderer);
+        x = (ir.getImageWidth() / RasterQuadrant.quadrantWidth / 2) * RasterQuadrant.quadrantWidth;
+        y = (ir.getImageHeight() / RasterQuadrant.quadrantHeight / 2 + 1) * RasterQuadrant.quadrantHeight;
+        quadrant = ir.renderQuadrant(x, y);
+        png = PngEncoder.encode(quadrant);
+    }
+
+    /**
+     * Costruzione di un ImageRenderer, senza disegno.
+     */
+
+    @Benchmark
+    public ImageRenderer construct() {
+        return new ImageRenderer(renderer);
+    }
+
+    /**
+     * Disegno dell'immagine complessiva dell'Esperienza.
+     */
+
+    @Benchmark
+    public BufferedImage image() {
+        return new ImageRenderer(renderer).getImage();
+    }
+
+    /**
+     * Disegno del quadrante centrale con un ImageRenderer nuovo, che deve
+     * proiettare le entità e compattare le informazioni di altitudine.
+     */
+
+    @Benchmark
+    public BufferedImage quadrant() {
+        return new RasterQuadrant(new ImageRenderer(renderer), x, y).currentQuadrant();
+    }
+
+    /**
+     * Disegno del quadrante centrale con un ImageRenderer già utilizzato,
+     * come avviene per i quadranti successivi al primo di un rendering.
+     */
+
+    @Benchmark
+    public BufferedImage quadrantWarm() {
+        return new RasterQuadrant(ir, x, y).currentQuadrant();
+    }
+
+    /**
+     * Codifica PNG del quadrante centrale.
+     *
+     * @throws IOException
+     */
+
+    @Benchmark
+    public byte[] png() throws IOException {
+        return PngEncoder.encode(quadrant);
+    }
+
+    /**
+     * Codifica base64 del quadrante centrale già codificato in PNG, come
+     * avviene per il JSON dell'Esperienza.
+     */
+
+    @Benchmark
+    public String base64() {
+        return Base64.getEncoder().encodeToString(png);
+    }
+
+    /**
+     * Esegue tutti i benchmark con il profiler gc.
+     *
+     * @param args Argomenti ignorati.
+     * @throws RunnerException
+     */
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                   .include(RenderBenchmark.class.getSimpleName())
+                   .addProfiler(GCProfiler.class)
+                   .build()).run();
+    }
+}
@@ -0,0 +1,235 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: SyntheticData.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.business.CheckPoint;
+import com.kyloth.serleenacloud.datamodel.business.Experience;
+import com.kyloth.serleenacloud.datamodel.business.PointOfInterest;
+import com.kyloth.serleenacloud.datamodel.business.Telemetry;
+import com.kyloth.serleenacloud.datamodel.business.Track;
+import com.kyloth.serleenacloud.datamodel.business.UserPoint;
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+import com.kyloth.serleenacloud.persistence.IDataSource;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Esperienze e dati di mappa sintetici per i benchmark.
+ *
+ * @use Viene utilizzato da RenderBenchmark per popolare una base di dati H2 in memoria con laghi, fiumi, sentieri e ElevationRect e per costruire un'Esperienza con percorso, punti d'interesse e punti utente. La quantità di entità cresce con la dimensione richiesta, mentre l'area resta la stessa; i dati sono generati con un seme fisso, per cui sono identici a ogni esecuzione.
+ * @field NW : Point Campo dati statico rappresentante l'angolo nord-ovest dell'area
+ * @field SE : Point Campo dati statico rappresentante l'angolo sud-est dell'area
+ * @field context : ClassPathXmlApplicationContext Campo dati statico contenente il contesto Spring della base di dati in memoria
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class SyntheticData {
+
+    /**
+     * Angolo nord-ovest dell'area.
+     */
+
+    static final Point NW = new Point(45.290, 11.640);
+
+    /**
+     * Angolo sud-est dell'area.
+     */
+
+    static final Point SE = new Point(45.270, 11.660);
+
+    /**
+     * Contesto Spring della base di dati in memoria, creato alla prima
+     * richiesta.
+     */
+
+    private static ClassPathXmlApplicationContext context;
+
+    /**
+     * Popola la base di dati in memoria con i dati di mappa della
+     * dimensione indicata, sostituendo quelli eventualmente presenti.
+     *
+     * @param size Dimensione dei dati: numero di checkpoint del percorso.
+     * @return Restituisce un IDataSource per accedere ai dati.
+     */
+
+    static synchronized IDataSource load(int size) {
+        if (context == null)
+            context = new ClassPathXmlApplicationContext("Spring-ModuleBenchmark.xml");
+
+        JdbcTemplate tpl = new JdbcTemplate((DataSource)context.getBean("inMemoryDataSource"));
+        for (String table : new String[] {"LakePoints", "Lakes", "RiverPoints", "Rivers", "PathPoints", "Paths", "ElevationRect"})
+            tpl.update("DELETE FROM " + table);
+
+        Random r = new Random(size);
+        for (int i = 0; i < Math.max(size / 20, 1); i++)
+            insert(tpl, "Lake", "L" + i, ring(r, 40, 0.0004 + r.nextDouble() * 0.0015));
+        for (int i = 0; i < Math.max(size / 50, 1); i++)
+            insert(tpl, "River", "R" + i, strip(r, 100, 0.00005));
+        for (int i = 0; i < Math.max(size / 50, 1); i++)
+            insert(tpl, "Path", "P" + i, strip(r, 50, 0.00002));
+
+        int side = (int)Math.ceil(Math.sqrt(size));
+        double w = (SE.getLongitude() - NW.getLongitude()) / side;
+        double h = (NW.getLatitude() - SE.getLatitude()) / side;
+        List<Object[]> rects = new ArrayList<Object[]>();
+        for (int i = 0; i < side; i++)
+            for (int j = 0; j < side; j++)
+                rects.add(new Object[] {(i / 4 + j / 4) % 6,
+                                        NW.getLongitude() + j * w, NW.getLatitude() - i * h,
+                                        NW.getLongitude() + (j + 1) * w, NW.getLatitude() - (i + 1) * h});
+        tpl.batchUpdate("INSERT INTO ElevationRect (Height, NWLongitude, NWLatitude, SELongitude, SELatitude) VALUES (?, ?, ?, ?, ?)", rects);
+
+        return (IDataSource)context.getBean("dataSource");
+    }
+
+    /**
+     * Costruisce un'Esperienza della dimensione indicata.
+     *
+     * @param size Dimensione dell'Esperienza: numero di checkpoint del percorso.
+     * @return Restituisce un'Esperienza con un percorso di size checkpoint, size/10 punti d'interesse e size/20 punti utente.
+     */
+
+    static Experience experience(int size) {
+        Random r = new Random(-size);
+
+        CheckPoint[] cps = new CheckPoint[size];
+        double[] p = point(r);
+        for (int i = 0; i < size; i++) {
+            p[0] = clamp(p[0] + (r.nextDouble() - 0.5) * 0.0004, SE.getLatitude(), NW.getLatitude());
+            p[1] = clamp(p[1] + (r.nextDouble() - 0.5) * 0.0004, NW.getLongitude(), SE.getLongitude());
+            cps[i] = new CheckPoint(p[0], p[1], i);
+        }
+
+        PointOfInterest.POIType[] types = PointOfInterest.POIType.values();
+        PointOfInterest[] pois = new PointOfInterest[size / 10];
+        for (int i = 0; i < pois.length; i++) {
+            p = point(r);
+            pois[i] = new PointOfInterest(p[0], p[1], "POI" + i, types[i % types.length]);
+        }
+
+        UserPoint[] ups = new UserPoint[size / 20];
+        for (int i = 0; i < ups.length; i++) {
+            p = point(r);
+            ups[i] = new UserPoint(p[0], p[1]);
+        }
+
+        Track t = new Track("T", "t" + size, cps, new Telemetry[0]);
+        return new Experience("E", "e" + size, new Rect(NW, SE), new Track[] {t}, ups, pois);
+    }
+
+    /**
+     * Inserisce un'entità con i suoi punti.
+     *
+     * @param tpl Template JDBC della base di dati.
+     * @param table Tipo dell'entità: Lake, River o Path.
+     * @param name Nome dell'entità.
+     * @param points Latitudine e longitudine dei punti.
+     */
+
+    private static void insert(JdbcTemplate tpl, String table, String name, double[][] points) {
+        tpl.update("INSERT INTO " + table + "s (Name) VALUES (?)", name);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < points.length; i++)
+            rows.add(new Object[] {name, points[i][0], points[i][1], i});
+        tpl.batchUpdate("INSERT INTO " + table + "Points (" + table + "Name, Latitude, Longitude, Idx) VALUES (?, ?, ?, ?)", rows);
+    }
+
+    /**
+     * Restituisce un poligono irregolare attorno a un punto casuale.
+     *
+     * @param r Generatore di numeri casuali.
+     * @param n Numero di vertici.
+     * @param radius Raggio medio in gradi.
+     * @return Restituisce latitudine e longitudine dei vertici.
+     */
+
+    private static double[][] ring(Random r, int n, double radius) {
+        double[] c = point(r);
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            double a = 2 * Math.PI * i / n;
+            double d = radius * (0.7 + 0.3 * r.nextDouble());
+            points[i] = new double[] {c[0] + d * Math.sin(a), c[1] + d * Math.cos(a)};
+        }
+        return points;
+    }
+
+    /**
+     * Restituisce il contorno di una striscia sottile lungo una spezzata
+     * casuale, come quelle usate per fiumi e sentieri.
+     *
+     * @param r Generatore di numeri casuali.
+     * @param n Numero di vertici del contorno.
+     * @param width Larghezza in gradi della striscia.
+     * @return Restituisce latitudine e longitudine dei vertici.
+     */
+
+    private static double[][] strip(Random r, int n, double width) {
+        double[] c = point(r);
+        double[][] points = new double[n][];
+        for (int i = 0; i < n / 2; i++) {
+            c[0] = clamp(c[0] + (r.nextDouble() - 0.5) * 0.0006, SE.getLatitude(), NW.getLatitude());
+            c[1] = clamp(c[1] + r.nextDouble() * 0.0003, NW.getLongitude(), SE.getLongitude());
+            points[i] = new double[] {c[0], c[1]};
+            points[n - 1 - i] = new double[] {c[0] + width, c[1]};
+        }
+        return points;
+    }
+
+    /**
+     * Restituisce un punto casuale dell'area.
+     *
+     * @param r Generatore di numeri casuali.
+     * @return Restituisce latitudine e longitudine del punto.
+     */
+
+    private static double[] point(Random r) {
+        return new double[] {SE.getLatitude() + r.nextDouble() * (NW.getLatitude() - SE.getLatitude()),
+                             NW.getLongitude() + r.nextDouble() * (SE.getLongitude() - NW.getLongitude())};
+    }
+
+    /**
+     * Limita un valore a un intervallo.
+     *
+     * @param v Valore da limitare.
+     * @param min Estremo inferiore.
+     * @param max Estremo superiore.
+     * @return Restituisce il valore dell'intervallo più vicino a v.
+     */
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+}
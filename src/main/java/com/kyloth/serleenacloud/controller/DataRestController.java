@@ -51,6 +51,8 @@ import com.kyloth.serleenacloud.datamodel.sync.SyncInputData;
 import com.kyloth.serleenacloud.datamodel.auth.User;
 import com.kyloth.serleenacloud.datamodel.auth.AuthToken;
 
+import com.kyloth.serleenacloud.render.RenderQueue;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.util.MultiValueMap;
@@ -161,6 +163,7 @@ public class DataRestController {
 
                 Experience newE = new Experience(e.getName(), e.getId(), e.getBoundingRect(), e.getTracks(), userPoints, e.getPOIs());
                 dataSource.experienceDao().persist(newE);
+                RenderQueue.enqueue(newE);
 
                 for (Telemetry t : input.getTelemetryData()) {
                     dataSource.telemetryDao().persist(t);
@@ -218,6 +221,7 @@ public class DataRestController {
             for (String e : experiences)
                 syncList.add(dataSource.experienceDao().find(e));
             dataSource.syncListDao().persist(syncList);
+            RenderQueue.enqueue(syncList);
         } catch (IOException e) {}
     }
 }
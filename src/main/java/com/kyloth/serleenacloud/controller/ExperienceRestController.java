@@ -37,6 +37,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.servlet.http.HttpServletResponse;
 
 import com.kyloth.serleenacloud.persistence.IDataSource;
 import com.kyloth.serleenacloud.persistence.DataSourceFactory;
@@ -51,6 +56,10 @@ import com.kyloth.serleenacloud.datamodel.geometry.Rect;
 import com.kyloth.serleenacloud.datamodel.auth.User;
 import com.kyloth.serleenacloud.datamodel.auth.AuthToken;
 
+import com.kyloth.serleenacloud.render.RasterQuadrant;
+import com.kyloth.serleenacloud.render.RenderQueue;
+import com.kyloth.serleenacloud.render.Renderer;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.util.MultiValueMap;
@@ -191,6 +200,7 @@ public class ExperienceRestController {
             String id = UUID.randomUUID().toString();
             Experience experience = new Experience(name, id, new Rect(_from, _to), _tracks, _ups, _pois);
             dataSource.experienceDao().persist(experience);
+            RenderQueue.enqueue(experience);
             return id;
         } catch (IOException e) {
             return null;
@@ -225,6 +235,7 @@ public class ExperienceRestController {
 
             Experience experience = new Experience(name, id, new Rect(from, to), tracks, ups, pois);
             dataSource.experienceDao().persist(experience);
+            RenderQueue.enqueue(experience);
 
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -293,4 +304,113 @@ public class ExperienceRestController {
 
         return null;
     }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    class TileNotFoundException extends RuntimeException {}
+
+    /**
+     * Metodo che implementa la richiesta GET per ottenere la griglia dei
+     * quadranti raster di un'esperienza a un livello di zoom meno
+     * dettagliato, ad esempio per mostrarne un'anteprima.
+     *
+     * @param id Id dell'esperienza cui i quadranti sono relativi.
+     * @param zoom Livello di zoom richiesto; 0 indica il massimo dettaglio.
+     * @param authToken Token di autenticazione
+     * @return Restituisce l'insieme dei quadranti raster dell'esperienza al livello di zoom effettivo.
+     */
+
+    @RequestMapping(value= "/{id}/tiles", method = RequestMethod.GET)
+    public Iterable<RasterQuadrant> getTiles(@PathVariable("id") String id,
+                                             @RequestParam(value = "zoom", defaultValue = "0") int zoom,
+                                             @RequestHeader("X-AuthToken") String authToken) {
+
+        Experience experience = get(id, authToken);
+        if (experience == null)
+            throw new TileNotFoundException();
+
+        return Renderer.fromExperience(experience, zoom).getRasterQuadrants();
+    }
+
+    /**
+     * Metodo che implementa la richiesta GET per ottenere l'immagine PNG
+     * di un quadrante raster di un'esperienza, individuato dalla sua
+     * colonna e dalla sua riga nella griglia dei quadranti.
+     *
+     * @param id Id dell'esperienza cui il quadrante è relativo.
+     * @param x Colonna del quadrante, a partire da ovest.
+     * @param y Riga del quadrante, a partire da sud.
+     * @param zoom Livello di zoom del quadrante, come indicato nella griglia dei quadranti.
+     * @param authToken Token di autenticazione
+     * @param request Richiesta, utilizzata per verificare l'ETag del quadrante.
+     * @param response Risposta, su cui viene scritta l'immagine PNG del quadrante se il client non ne possiede già una copia aggiornata.
+     * @throws IOException
+     */
+
+    @RequestMapping(value= "/{id}/tiles/{x}/{y}.png", method = RequestMethod.GET, produces = "image/png")
+    public void getTile(@PathVariable("id") String id,
+                        @PathVariable("x") int x,
+                        @PathVariable("y") int y,
+                        @RequestParam(value = "zoom", defaultValue = "0") int zoom,
+                        @RequestHeader("X-AuthToken") String authToken,
+                        WebRequest request,
+                        HttpServletResponse response) throws IOException {
+
+        Experience experience = get(id, authToken);
+        if (experience == null)
+            throw new TileNotFoundException();
+
+        RasterQuadrant quadrant = Renderer.fromExperience(experience, zoom).getRasterQuadrant(x, y);
+        if (quadrant == null)
+            throw new TileNotFoundException();
+
+        String etag = "\"" + quadrant.getHash() + "\"";
+        if (request.checkNotModified(etag))
+            return;
+
+        response.setContentType(MediaType.IMAGE_PNG_VALUE);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        quadrant.writePng(response.getOutputStream());
+    }
+
+    /**
+     * Metodo che implementa la richiesta GET per ottenere i dati
+     * vettoriali di un quadrante di un'esperienza, individuato dalla sua
+     * colonna e dalla sua riga nella griglia dei quadranti, da disegnare
+     * sul dispositivo in alternativa all'immagine PNG.
+     *
+     * @param id Id dell'esperienza cui il quadrante è relativo.
+     * @param x Colonna del quadrante, a partire da ovest.
+     * @param y Riga del quadrante, a partire da sud.
+     * @param zoom Livello di zoom del quadrante, come indicato nella griglia dei quadranti.
+     * @param authToken Token di autenticazione
+     * @param request Richiesta, utilizzata per verificare l'ETag del quadrante.
+     * @param response Risposta, su cui vengono scritti i dati vettoriali del quadrante se il client non ne possiede già una copia aggiornata.
+     * @throws IOException
+     */
+
+    @RequestMapping(value= "/{id}/tiles/{x}/{y}.vt", method = RequestMethod.GET, produces = "application/octet-stream")
+    public void getVectorTile(@PathVariable("id") String id,
+                              @PathVariable("x") int x,
+                              @PathVariable("y") int y,
+                              @RequestParam(value = "zoom", defaultValue = "0") int zoom,
+                              @RequestHeader("X-AuthToken") String authToken,
+                              WebRequest request,
+                              HttpServletResponse response) throws IOException {
+
+        Experience experience = get(id, authToken);
+        if (experience == null)
+            throw new TileNotFoundException();
+
+        RasterQuadrant quadrant = Renderer.fromExperience(experience, zoom).getRasterQuadrant(x, y);
+        if (quadrant == null)
+            throw new TileNotFoundException();
+
+        String etag = "\"" + quadrant.getVectorHash() + "\"";
+        if (request.checkNotModified(etag))
+            return;
+
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.getOutputStream().write(quadrant.getVectorData());
+    }
 }
@@ -40,6 +40,10 @@ import com.kyloth.serleenacloud.datamodel.business.Path;
 import com.kyloth.serleenacloud.datamodel.geometry.Rect;
 import com.kyloth.serleenacloud.datamodel.geometry.Point;
 
+import com.kyloth.serleenacloud.render.Renderer;
+
+import java.util.Map;
+
 /**
  * Controller REST per la gestione di alcune richiesta di utilità generale.
  *
@@ -128,4 +132,27 @@ public class MiscRestController {
         return ds.pathDao().findAll(r);
     }
 
+    /**
+     * Metodo che implementa la richiesta GET per ottenere le metriche
+     * del rendering delle Esperienze.
+     *
+     * @return Restituisce le metriche del pianificatore dei rendering e della cache dei quadranti.
+     */
+
+    @RequestMapping(value= "/render/metrics", method = RequestMethod.GET)
+    public Map<String, Map<String, Long>> renderMetrics() {
+        return Renderer.getMetrics();
+    }
+
+    /**
+     * Metodo che implementa la richiesta GET per ottenere le metriche
+     * del pool di connessioni al database.
+     *
+     * @return Restituisce le connessioni aperte, attive e inattive, i thread in attesa e i tempi di attesa delle connessioni.
+     */
+
+    @RequestMapping(value= "/db/metrics", method = RequestMethod.GET)
+    public Map<String, Long> dbMetrics() {
+        return ds.getMetrics();
+    }
 }
@@ -31,20 +31,32 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 /**
  * Classe factory per la creazione di un oggetto IDataSource.
  *
+ * @field ds : IDataSource Campo dati statico contenente l'IDataSource condiviso
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
  */
 
 public class DataSourceFactory {
+
+    /**
+     * IDataSource condiviso, creato alla prima richiesta.
+     */
+
+    private static IDataSource ds;
     
     /**
      * Restituisce una classe factory per la creazione di oggetti DAO.
+     * L'IDataSource viene creato una sola volta, in modo che tutti i
+     * chiamanti condividano lo stesso pool di connessioni.
      *
      * @return Restituisce un IDataSource per ottenere oggetti DAO.
      */
 
-    public static IDataSource getDataSource() {
-        ApplicationContext context = new ClassPathXmlApplicationContext("Spring-Module.xml");
-        return (IDataSource) context.getBean("dataSource");
+    public static synchronized IDataSource getDataSource() {
+        if (ds == null) {
+            ApplicationContext context = new ClassPathXmlApplicationContext("Spring-Module.xml");
+            ds = (IDataSource) context.getBean("dataSource");
+        }
+        return ds;
     }
 }
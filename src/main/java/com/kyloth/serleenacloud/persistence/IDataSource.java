@@ -27,6 +27,8 @@ package com.kyloth.serleenacloud.persistence;
 
 import com.kyloth.serleenacloud.datamodel.auth.User;
 
+import java.util.Map;
+
 /**
  * Interfaccia per una classe factory per la creazione di oggetti di tipo DAO.
  *
@@ -142,6 +144,16 @@ public interface IDataSource {
 
     public ITempTokenDao tempTokenDao();
 
+    /**
+     * Restituisce le metriche delle connessioni al database: connessioni
+     * aperte, attive, inattive e thread in attesa del pool, numero di
+     * connessioni ottenute e tempo di attesa complessivo e massimo.
+     *
+     * @return Restituisce una mappa dal nome di ogni metrica al suo valore.
+     */
+
+    public Map<String, Long> getMetrics();
+
     /**
      * Restituisce in IDataSource per uno specifico utente.
      *
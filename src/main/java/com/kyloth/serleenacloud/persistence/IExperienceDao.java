@@ -63,6 +63,15 @@ public interface IExperienceDao {
 
     public Experience find(String id);
 
+    /**
+     * Permette di ottenere un insieme di esperienze dell'utente corrente.
+     *
+     * @param ids Id delle esperienze da ottenere.
+     * @return Restituisce le esperienze presenti, nell'ordine degli id.
+     */
+
+    public Iterable<Experience> findAll(Iterable<String> ids);
+
     /**
      * Permette di eliminare un'esperienza dalla base di dati.
      *
@@ -64,6 +64,8 @@ public class ElevationRectDao implements IElevationRectDao {
 
     /**
      * Metodo che implementa IElevationRectDao.findAll(Rect).
+     * Vengono restituiti gli ElevationRect che intersecano la regione,
+     * compresi quelli che la contengono interamente.
      *
      * @param region La regione di interesse.
      * @return Restituisce la lista dei rettangoli di elevazione relativi alla regione specificata.
@@ -71,27 +73,13 @@ public class ElevationRectDao implements IElevationRectDao {
     public Iterable<ElevationRect> findAll(Rect region) {
         return tpl.query("SELECT NWLatitude, NWLongitude, SELatitude, SELongitude, Height " +
                          "FROM ElevationRect " +
-                         "WHERE ((NWLatitude BETWEEN ? AND ?) AND (NWLongitude BETWEEN ? AND ?)) " +
-                         "OR ((SELatitude BETWEEN ? AND ?) AND (SELongitude BETWEEN ? AND ?)) " +
-                         "OR ((NWLongitude BETWEEN ? AND ?) AND (SELatitude BETWEEN ? AND ?)) " +
-                         "OR ((NWLatitude BETWEEN ? AND ?) AND (SELongitude BETWEEN ? AND ?)) ",
+                         "WHERE NWLatitude >= ? AND SELatitude <= ? " +
+                         "AND NWLongitude <= ? AND SELongitude >= ? ",
                          new Object[] {
                              region.getSEPoint().getLatitude(),
                              region.getNWPoint().getLatitude(),
-                             region.getNWPoint().getLongitude(),
                              region.getSEPoint().getLongitude(),
-                             region.getSEPoint().getLatitude(),
-                             region.getNWPoint().getLatitude(),
-                             region.getNWPoint().getLongitude(),
-                             region.getSEPoint().getLongitude(),
-                             region.getNWPoint().getLongitude(),
-                             region.getSEPoint().getLongitude(),
-                             region.getSEPoint().getLatitude(),
-                             region.getNWPoint().getLatitude(),
-                             region.getSEPoint().getLatitude(),
-                             region.getNWPoint().getLatitude(),
-                             region.getNWPoint().getLongitude(),
-                             region.getSEPoint().getLongitude()
+                             region.getNWPoint().getLongitude()
                          },
         new RowMapper<ElevationRect>() {
             @Override
@@ -36,17 +36,19 @@ import com.kyloth.serleenacloud.persistence.IExperienceDao;
 import com.kyloth.serleenacloud.persistence.ITrackDao;
 
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * Classe che concretizza IExperienceDao per database MySQL utilizzando JDBC.
  *
  * @field tpl : JdbcTemplate Template JDBC per la connessione alla base di dati
+ * @field txTpl : TransactionTemplate Template per l'esecuzione di operazioni in un'unica transazione
  * @field user : User Oggetto che rappresenta l'utente per il quale si vogliono ottenere dati dal database
  * @field tDao : ITrackDao DAO per agire su oggetti di tipo Track nel database
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
@@ -60,6 +62,12 @@ public class ExperienceDao implements IExperienceDao {
      */
 
     private JdbcTemplate tpl;
+
+    /**
+     * Template per l'esecuzione di operazioni in un'unica transazione.
+     */
+
+    private TransactionTemplate txTpl;
     
     /**
      * Utente per il quale si vogliono ottenere dati dal database.
@@ -81,17 +89,38 @@ public class ExperienceDao implements IExperienceDao {
 
     ExperienceDao(JDBCDataSource ds) {
         this.tpl = ds.getTpl();
+        this.txTpl = ds.getTxTpl();
         this.user = ds.getUser();
         this.tDao = ds.trackDao();
     }
 
     /**
-     * Metodo che implementa IExperienceDao.persist(Experience).
+     * Metodo che implementa IExperienceDao.persist(Experience). Tutte le
+     * operazioni vengono eseguite in un'unica transazione.
      *
      * @param experience Esperienza da inserire.
      */
 
-    public void persist(Experience experience) {
+    public void persist(final Experience experience) {
+        txTpl.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    insert(experience);
+                }
+            });
+    }
+
+    /**
+     * Inserisce un'Esperienza, sostituendo quella con lo stesso id se
+     * presente. I percorsi già presenti vengono letti prima della
+     * sostituzione, in modo da conservarne i tracciamenti; punti utente,
+     * punti d'interesse e percorsi vengono associati all'Esperienza con
+     * un'operazione batch ciascuno.
+     *
+     * @param experience Esperienza da inserire.
+     */
+
+    private void insert(Experience experience) {
         String id = experience.getId();
 
         Rect r = experience.getBoundingRect();
@@ -129,43 +158,48 @@ public class ExperienceDao implements IExperienceDao {
                        new Object[] {id, user.getEmail()});
         }
 
+        List<Object[]> rows = new ArrayList<Object[]>();
         for (Track t : tracks) {
-                tDao.persist(t);
-                tpl.update("INSERT INTO ExperienceTracks(ExperienceId, TrackId) VALUES(?, ?)",
-                           new Object[] {id, t.getId()});
+            tDao.persist(t);
+            rows.add(new Object[] {id, t.getId()});
         }
+        tpl.batchUpdate("INSERT INTO ExperienceTracks(ExperienceId, TrackId) VALUES(?, ?)", rows);
 
+        rows = new ArrayList<Object[]>();
         for (UserPoint p : experience.getUserPoints())
-            tpl.update("INSERT INTO ExperienceUserPoints(ExperienceId, Longitude, Latitude) VALUES (?, ?, ?) ",
-                       new Object[] {id, p.getLongitude(), p.getLatitude()});
-
+            rows.add(new Object[] {id, p.getLongitude(), p.getLatitude()});
+        tpl.batchUpdate("INSERT INTO ExperienceUserPoints(ExperienceId, Longitude, Latitude) VALUES (?, ?, ?)", rows);
 
+        rows = new ArrayList<Object[]>();
         for (PointOfInterest p : experience.getPOIs())
-            tpl.update("INSERT INTO ExperiencePOIs(ExperienceId, POIName) VALUES(?, ?)",
-                       new Object[] {id, p.getName()});
-
+            rows.add(new Object[] {id, p.getName()});
+        tpl.batchUpdate("INSERT INTO ExperiencePOIs(ExperienceId, POIName) VALUES(?, ?)", rows);
     }
 
     /**
-     * Metodo che implementa IExperienceDao.delete(String).
+     * Metodo che implementa IExperienceDao.delete(String). Tutte le
+     * operazioni vengono eseguite in un'unica transazione.
      *
-     * @param name Nome dell'Esperienza da eliminare.
+     * @param id Id dell'Esperienza da eliminare.
      */
 
-    public void delete(String id) {
-        tpl.update("DELETE FROM SyncList WHERE ExperienceId = ?", new Object[] {id});
-        tpl.query("SELECT TrackId From ExperienceTracks WHERE ExperienceId = ?", new Object[] {id},
-                  new RowMapper<Object>() {
-                      @Override
-                      public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
-                          tpl.update("DELETE FROM Tracks WHERE Id = ?", new Object[] {rs.getString("TrackId")});
-                          return null;
-                      }
-                  });
-        tpl.update("DELETE FROM ExperienceTracks WHERE ExperienceId = ?", new Object[] {id});
-        tpl.update("DELETE FROM ExperiencePOIs WHERE ExperienceId = ?", new Object[] {id});
-        tpl.update("DELETE FROM ExperienceUserPoints WHERE ExperienceId = ?", new Object[] {id});
-        tpl.update("DELETE FROM Experiences WHERE Id = ?", new Object[] {id});
+    public void delete(final String id) {
+        txTpl.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    List<Object[]> tracks = new ArrayList<Object[]>();
+                    for (String trackId : tpl.queryForList("SELECT TrackId From ExperienceTracks WHERE ExperienceId = ?",
+                                                           new Object[] {id}, String.class))
+                        tracks.add(new Object[] {trackId});
+
+                    tpl.update("DELETE FROM SyncList WHERE ExperienceId = ?", new Object[] {id});
+                    tpl.batchUpdate("DELETE FROM Tracks WHERE Id = ?", tracks);
+                    tpl.update("DELETE FROM ExperienceTracks WHERE ExperienceId = ?", new Object[] {id});
+                    tpl.update("DELETE FROM ExperiencePOIs WHERE ExperienceId = ?", new Object[] {id});
+                    tpl.update("DELETE FROM ExperienceUserPoints WHERE ExperienceId = ?", new Object[] {id});
+                    tpl.update("DELETE FROM Experiences WHERE Id = ?", new Object[] {id});
+                }
+            });
     }
 
     /**
@@ -176,10 +210,37 @@ public class ExperienceDao implements IExperienceDao {
      */
 
     public Experience find(String id) {
-        for (Experience e : findAll())
-            if (e.getId().equals(id))
-                return e;
-        return null;
+        List<Experience> l = new ExperienceLoader(tpl).load("e.User = ? AND e.Id = ?",
+                                                            new Object[] {user.getEmail(), id});
+        return l.isEmpty() ? null : l.get(0);
+    }
+
+    /**
+     * Metodo che implementa IExperienceDao.findAll(Iterable<String>).
+     *
+     * @param ids Id delle esperienze da ottenere.
+     * @return Restituisce le esperienze presenti, nell'ordine degli id.
+     */
+
+    public Iterable<Experience> findAll(Iterable<String> ids) {
+        ArrayList<Object> args = new ArrayList<Object>();
+        args.add(user.getEmail());
+        StringBuilder in = new StringBuilder();
+        for (String id : ids) {
+            in.append(in.length() == 0 ? "?" : ", ?");
+            args.add(id);
+        }
+        ArrayList<Experience> result = new ArrayList<Experience>();
+        if (in.length() == 0)
+            return result;
+
+        HashMap<String, Experience> found = new HashMap<String, Experience>();
+        for (Experience e : new ExperienceLoader(tpl).load("e.User = ? AND e.Id IN (" + in + ")", args.toArray()))
+            found.put(e.getId(), e);
+        for (String id : ids)
+            if (found.containsKey(id))
+                result.add(found.get(id));
+        return result;
     }
 
     /**
@@ -189,45 +250,6 @@ public class ExperienceDao implements IExperienceDao {
      */
 
     public Iterable<Experience> findAll() {
-        return tpl.query("SELECT Id, Name, NWLongitude, NWLatitude, SELongitude, SELatitude " +
-                         "FROM Experiences " +
-                         "WHERE User =  ? ",
-                         new Object[] {user.getEmail()},
-        new RowMapper<Experience>() {
-            @Override
-            public Experience mapRow(ResultSet rs, int rowNum) throws SQLException {
-                String eId = rs.getString("Id");
-                return new Experience(rs.getString("Name"), eId,
-                                      new Rect(new Point(rs.getDouble("NWLatitude"),
-                                               rs.getDouble("NWLongitude")),
-                                               new Point(rs.getDouble("SELatitude"),
-                                                       rs.getDouble("SELongitude"))),
-                                      tDao.findAll(eId),
-                                      tpl.query("SELECT Longitude, Latitude " +
-                                                "FROM ExperienceUserPoints " +
-                                                "WHERE ExperienceId =  ? ",
-                                                new Object[] {eId},
-                new RowMapper<UserPoint>() {
-                    @Override
-                    public UserPoint mapRow(ResultSet rs, int rowNum) throws SQLException {
-                        return new UserPoint(rs.getDouble("Latitude"),
-                                             rs.getDouble("Longitude"));
-                    }
-                }),
-                tpl.query("SELECT Name, Longitude, Latitude, Type " +
-                          "FROM ExperiencePOIs ep, POIs p " +
-                          "WHERE ep.ExperienceId =  ?  AND ep.POIName = p.Name",
-                          new Object[] {eId},
-                new RowMapper<PointOfInterest>() {
-                    @Override
-                    public PointOfInterest mapRow(ResultSet rs, int rowNum) throws SQLException {
-                        return new PointOfInterest(rs.getDouble("Latitude"),
-                                                   rs.getDouble("Longitude"),
-                                                   rs.getString("Name"),
-                                                   PointOfInterest.POIType.valueOf(rs.getString("Type")));
-                    }
-                }));
-            }
-        });
+        return new ExperienceLoader(tpl).load("e.User = ?", new Object[] {user.getEmail()});
     }
 }
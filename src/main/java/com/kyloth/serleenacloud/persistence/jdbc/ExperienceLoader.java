@@ -0,0 +1,214 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: ExperienceLoader.java
+ * Package: com.kyloth.serleenacloud.persistence.jdbc
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.persistence.jdbc;
+
+import com.kyloth.serleenacloud.datamodel.business.Track;
+import com.kyloth.serleenacloud.datamodel.business.Telemetry;
+import com.kyloth.serleenacloud.datamodel.business.CheckPoint;
+import com.kyloth.serleenacloud.datamodel.business.Experience;
+import com.kyloth.serleenacloud.datamodel.business.UserPoint;
+import com.kyloth.serleenacloud.datamodel.business.PointOfInterest;
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caricatore di Esperienze con i relativi percorsi, checkpoint,
+ * tracciamenti, punti utente e punti d'interesse.
+ *
+ * @use Viene utilizzato da ExperienceDao per ottenere un insieme di Esperienze individuato da una condizione sulla tabella Experiences. Ogni tabella viene letta con una sola query, che seleziona le righe relative alle Esperienze che soddisfano la condizione tramite una sottoquery; le righe vengono poi raggruppate in memoria. Il numero di query è quindi costante e non dipende dal numero di Esperienze, percorsi o tracciamenti. Esperienze, punti utente e punti d'interesse vengono caricati subito; percorsi con i relativi checkpoint, tracciamenti ed eventi vengono caricati tramite LazyGroups alla prima iterazione, una volta per tutte le Esperienze caricate insieme.
+ * @field tpl : JdbcTemplate Campo dati contenente il template JDBC per la connessione alla base di dati
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class ExperienceLoader {
+
+    /**
+     * Template JDBC per la connessione alla base di dati.
+     */
+
+    private JdbcTemplate tpl;
+
+    /**
+     * Costruisce un nuovo ExperienceLoader.
+     *
+     * @param tpl Template JDBC per la connessione alla base di dati.
+     */
+
+    ExperienceLoader(JdbcTemplate tpl) {
+        this.tpl = tpl;
+    }
+
+    /**
+     * Carica le Esperienze che soddisfano una condizione.
+     *
+     * @param where Condizione SQL sulla tabella Experiences, con alias e.
+     * @param args Parametri della condizione.
+     * @return Restituisce la lista delle Esperienze, con punti utente e punti d'interesse e con percorsi e tracciamenti caricati alla prima iterazione.
+     */
+
+    List<Experience> load(String where, final Object[] args) {
+        final String experiences = "SELECT e.Id FROM Experiences e WHERE " + where;
+        final String tracks = "SELECT et.TrackId FROM ExperienceTracks et, Experiences e " +
+            "WHERE et.ExperienceId = e.Id AND " + where;
+
+        final LazyGroups<Date> events = new LazyGroups<Date>() {
+            @Override
+            protected Map<String, List<Date>> load() {
+                final Map<String, List<Date>> m = new HashMap<String, List<Date>>();
+                tpl.query("SELECT te.TelemetryId, te.Date FROM TelemetryEvents te, Telemetries tl " +
+                          "WHERE te.TelemetryId = tl.Id AND tl.TrackId IN (" + tracks + ") ORDER BY te.Date",
+                          args,
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        add(m, rs.getString("TelemetryId"), (Date)rs.getTimestamp("Date"));
+                    }
+                });
+                return m;
+            }
+        };
+
+        final LazyGroups<Telemetry> telemetries = new LazyGroups<Telemetry>() {
+            @Override
+            protected Map<String, List<Telemetry>> load() {
+                final Map<String, List<Telemetry>> m = new HashMap<String, List<Telemetry>>();
+                tpl.query("SELECT Id, TrackId FROM Telemetries WHERE TrackId IN (" + tracks + ") ORDER BY Id",
+                          args,
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        String id = rs.getString("Id");
+                        String trackId = rs.getString("TrackId");
+                        add(m, trackId, new Telemetry(events.get(id), trackId, id));
+                    }
+                });
+                return m;
+            }
+        };
+
+        final LazyGroups<Track> experienceTracks = new LazyGroups<Track>() {
+            @Override
+            protected Map<String, List<Track>> load() {
+                final Map<String, List<CheckPoint>> checkpoints = new HashMap<String, List<CheckPoint>>();
+                tpl.query("SELECT TrackId, Idx, Longitude, Latitude FROM Checkpoints " +
+                          "WHERE TrackId IN (" + tracks + ") ORDER BY Idx",
+                          args,
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        add(checkpoints, rs.getString("TrackId"),
+                            new CheckPoint(rs.getDouble("Latitude"),
+                                           rs.getDouble("Longitude"),
+                                           rs.getInt("Idx")));
+                    }
+                });
+
+                final Map<String, Track> trackById = new HashMap<String, Track>();
+                final Map<String, List<Track>> m = new HashMap<String, List<Track>>();
+                tpl.query("SELECT et.ExperienceId, t.Id, t.Name FROM ExperienceTracks et, Tracks t " +
+                          "WHERE et.TrackId = t.Id AND et.ExperienceId IN (" + experiences + ") ORDER BY et.Id",
+                          args,
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        String id = rs.getString("Id");
+                        Track t = trackById.get(id);
+                        if (t == null) {
+                            List<CheckPoint> cps = checkpoints.get(id);
+                            t = new Track(rs.getString("Name"), id,
+                                          cps != null ? cps : new ArrayList<CheckPoint>(),
+                                          telemetries.get(id));
+                            trackById.put(id, t);
+                        }
+                        add(m, rs.getString("ExperienceId"), t);
+                    }
+                });
+                return m;
+            }
+        };
+
+        final Map<String, List<UserPoint>> ups = new HashMap<String, List<UserPoint>>();
+        tpl.query("SELECT ExperienceId, Longitude, Latitude FROM ExperienceUserPoints " +
+                  "WHERE ExperienceId IN (" + experiences + ") ORDER BY Id",
+                  args,
+        new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                LazyGroups.add(ups, rs.getString("ExperienceId"),
+                               new UserPoint(rs.getDouble("Latitude"),
+                                             rs.getDouble("Longitude")));
+            }
+        });
+
+        final Map<String, List<PointOfInterest>> pois = new HashMap<String, List<PointOfInterest>>();
+        tpl.query("SELECT ep.ExperienceId, p.Name, p.Longitude, p.Latitude, p.Type FROM ExperiencePOIs ep, POIs p " +
+                  "WHERE ep.POIName = p.Name AND ep.ExperienceId IN (" + experiences + ") ORDER BY ep.Id",
+                  args,
+        new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                LazyGroups.add(pois, rs.getString("ExperienceId"),
+                               new PointOfInterest(rs.getDouble("Latitude"),
+                                                   rs.getDouble("Longitude"),
+                                                   rs.getString("Name"),
+                                                   PointOfInterest.POIType.valueOf(rs.getString("Type"))));
+            }
+        });
+
+        final List<Experience> result = new ArrayList<Experience>();
+        tpl.query("SELECT e.Id, e.Name, e.NWLongitude, e.NWLatitude, e.SELongitude, e.SELatitude " +
+                  "FROM Experiences e WHERE " + where,
+                  args,
+        new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                String id = rs.getString("Id");
+                result.add(new Experience(rs.getString("Name"), id,
+                                          new Rect(new Point(rs.getDouble("NWLatitude"),
+                                                             rs.getDouble("NWLongitude")),
+                                                   new Point(rs.getDouble("SELatitude"),
+                                                             rs.getDouble("SELongitude"))),
+                                          experienceTracks.get(id),
+                                          ups.containsKey(id) ? ups.get(id) : new ArrayList<UserPoint>(),
+                                          pois.containsKey(id) ? pois.get(id) : new ArrayList<PointOfInterest>()));
+            }
+        });
+        return result;
+    }
+}
@@ -30,12 +30,17 @@ import com.kyloth.serleenacloud.datamodel.auth.User;
 import com.kyloth.serleenacloud.persistence.*;
 
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import javax.sql.DataSource;
 
+import java.util.Map;
+
 /**
  * Classe che concretizza IDataSource per database MySQL utilizzando JDBC.
  *
  * @field tpl : JdbcTemplate Template JDBC per la connessione alla base di dati
+ * @field txTpl : TransactionTemplate Template per l'esecuzione di operazioni in un'unica transazione
  * @field user : User Oggetto rappresentate l'utente i quali dati si vogliono manipolare
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
@@ -48,6 +53,12 @@ public class JDBCDataSource implements IDataSource {
      */
 
     private JdbcTemplate tpl;
+
+    /**
+     * Template per l'esecuzione di operazioni in un'unica transazione.
+     */
+
+    private TransactionTemplate txTpl;
     
     /**
      * Utente i quali dati si vogliono manipolare.
@@ -62,18 +73,22 @@ public class JDBCDataSource implements IDataSource {
      */
 
     private JDBCDataSource(DataSource ds) {
-        this.tpl = new JdbcTemplate(ds);
+        MeteredDataSource mds = new MeteredDataSource(ds);
+        this.tpl = new JdbcTemplate(mds);
+        this.txTpl = new TransactionTemplate(new DataSourceTransactionManager(mds));
     }
     
     /**
      * Costruisce un nuovo JDBCDataSource per un particolare utente.
      *
      * @param tpl JdbcTemplate per la connessione al database.
+     * @param txTpl TransactionTemplate per le transazioni sul database.
      * @param user Utente per il quale si vuole creare il data source.
      */
 
-    private JDBCDataSource(JdbcTemplate tpl, User user) {
+    private JDBCDataSource(JdbcTemplate tpl, TransactionTemplate txTpl, User user) {
         this.tpl = tpl;
+        this.txTpl = txTpl;
         this.user = user;
     }
     
@@ -87,6 +102,17 @@ public class JDBCDataSource implements IDataSource {
         return tpl;
     }
 
+    /**
+     * Permette di ottenere il TransactionTemplate per eseguire più operazioni
+     * in un'unica transazione, sulla stessa connessione di getTpl().
+     *
+     * @return Restituisce un oggetto TransactionTemplate.
+     */
+
+    TransactionTemplate getTxTpl() {
+        return txTpl;
+    }
+
     /**
      * Permette di ottenere l'utente, se presente, cui il data source è relativo.
      *
@@ -227,6 +253,16 @@ public class JDBCDataSource implements IDataSource {
         return new SyncListDao(this);
     }
     
+    /**
+     * Implementa IDataSource.getMetrics().
+     *
+     * @return Restituisce le metriche del pool di connessioni.
+     */
+
+    public Map<String, Long> getMetrics() {
+        return ((MeteredDataSource)tpl.getDataSource()).getMetrics();
+    }
+
     /**
      * Implementa IDataSource.forUser(User).
      *
@@ -235,6 +271,6 @@ public class JDBCDataSource implements IDataSource {
      */
 
     public IDataSource forUser(User u) {
-        return new JDBCDataSource(tpl, u);
+        return new JDBCDataSource(tpl, txTpl, u);
     }
 }
@@ -64,20 +64,24 @@ public class LakeDao implements ILakeDao {
 
     /**
      * Metodo che implementa ILakeDao.findAll(Rect).
+     * Vengono restituiti i laghi il cui rettangolo di ingombro interseca
+     * la regione, anche se nessuno dei loro punti vi è compreso.
      *
      * @param region La regione di interesse.
      * @return Restituisce la lista dei laghi relativi alla regione specificata.
      */
 
     public Iterable<Lake> findAll(Rect region) {
-        return tpl.query("SELECT DISTINCT LakeName " +
+        return tpl.query("SELECT LakeName " +
                          "FROM LakePoints " +
-                         "WHERE (Latitude BETWEEN ? AND ?) AND (Longitude BETWEEN ? AND ?) ",
+                         "GROUP BY LakeName " +
+                         "HAVING MIN(Latitude) <= ? AND MAX(Latitude) >= ? " +
+                         "AND MIN(Longitude) <= ? AND MAX(Longitude) >= ? ",
                          new Object[] {
-                             region.getSEPoint().getLatitude(),
                              region.getNWPoint().getLatitude(),
-                             region.getNWPoint().getLongitude(),
-                             region.getSEPoint().getLongitude()
+                             region.getSEPoint().getLatitude(),
+                             region.getSEPoint().getLongitude(),
+                             region.getNWPoint().getLongitude()
                          },
         new RowMapper<Lake>() {
             @Override
@@ -0,0 +1,107 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: LazyGroups.java
+ * Package: com.kyloth.serleenacloud.persistence.jdbc
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.persistence.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Insieme di collezioni caricate dal database alla prima richiesta.
+ *
+ * @use Viene utilizzato da ExperienceLoader per rinviare il caricamento di percorsi, tracciamenti ed eventi finché non vengono effettivamente percorsi. Le righe di tutte le collezioni dello stesso grafo di oggetti vengono lette con un'unica chiamata a load() e raggruppate per chiave; ogni collezione restituita da get() è un Iterable che alla prima iterazione provoca il caricamento, dopo il quale il risultato viene riutilizzato.
+ * @field groups : Map<String, List<T>> Campo dati contenente le collezioni caricate, per chiave, o null se non ancora caricate
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+abstract class LazyGroups<T> {
+
+    /**
+     * Collezioni caricate, per chiave, o null se non ancora caricate.
+     */
+
+    private Map<String, List<T>> groups;
+
+    /**
+     * Carica tutte le collezioni dal database.
+     *
+     * @return Restituisce una mappa dalla chiave di ogni collezione ai suoi elementi.
+     */
+
+    protected abstract Map<String, List<T>> load();
+
+    /**
+     * Restituisce gli elementi di una collezione, caricando tutte le
+     * collezioni se non ancora caricate.
+     *
+     * @param key Chiave della collezione.
+     * @return Restituisce la lista degli elementi, vuota se la chiave non è presente.
+     */
+
+    synchronized List<T> elements(String key) {
+        if (groups == null)
+            groups = load();
+        List<T> l = groups.get(key);
+        return l == null ? Collections.<T>emptyList() : l;
+    }
+
+    /**
+     * Restituisce una collezione che viene caricata alla prima iterazione.
+     *
+     * @param key Chiave della collezione.
+     * @return Restituisce un Iterable sugli elementi della collezione.
+     */
+
+    Iterable<T> get(final String key) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return Collections.unmodifiableList(elements(key)).iterator();
+            }
+        };
+    }
+
+    /**
+     * Aggiunge un elemento alla collezione associata a una chiave,
+     * creandola se assente.
+     *
+     * @param groups Mappa dalle chiavi alle collezioni.
+     * @param key Chiave.
+     * @param element Elemento da aggiungere.
+     */
+
+    static <T> void add(Map<String, List<T>> groups, String key, T element) {
+        List<T> l = groups.get(key);
+        if (l == null) {
+            l = new ArrayList<T>();
+            groups.put(key, l);
+        }
+        l.add(element);
+    }
+}
@@ -0,0 +1,152 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: MeteredDataSource.java
+ * Package: com.kyloth.serleenacloud.persistence.jdbc
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.persistence.jdbc;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DataSource che misura il tempo di attesa delle connessioni.
+ *
+ * @use Viene utilizzato da JDBCDataSource per avvolgere il DataSource configurato, normalmente un pool di connessioni. Misura il numero di connessioni ottenute e il tempo speso ad attenderle; se il DataSource è un pool di tomcat-jdbc ne riporta anche le connessioni aperte, attive, inattive e i thread in attesa.
+ * @field borrowed : AtomicLong Campo dati contenente il numero di connessioni ottenute
+ * @field waitNanos : AtomicLong Campo dati contenente il tempo complessivo di attesa delle connessioni, in nanosecondi
+ * @field maxWaitNanos : AtomicLong Campo dati contenente il tempo massimo di attesa di una connessione, in nanosecondi
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class MeteredDataSource extends DelegatingDataSource {
+
+    /**
+     * Numero di connessioni ottenute.
+     */
+
+    private AtomicLong borrowed = new AtomicLong();
+
+    /**
+     * Tempo complessivo di attesa delle connessioni, in nanosecondi.
+     */
+
+    private AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Tempo massimo di attesa di una connessione, in nanosecondi.
+     */
+
+    private AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Crea un nuovo MeteredDataSource.
+     *
+     * @param ds DataSource da cui ottenere le connessioni.
+     */
+
+    MeteredDataSource(DataSource ds) {
+        super(ds);
+    }
+
+    /**
+     * Ottiene una connessione, misurando il tempo di attesa.
+     *
+     * @return Restituisce una connessione al database.
+     * @throws SQLException
+     */
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Ottiene una connessione con le credenziali indicate, misurando il
+     * tempo di attesa.
+     *
+     * @param username Nome utente.
+     * @param password Password.
+     * @return Restituisce una connessione al database.
+     * @throws SQLException
+     */
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Registra il tempo di attesa di una connessione.
+     *
+     * @param nanos Tempo di attesa in nanosecondi.
+     */
+
+    private void record(long nanos) {
+        borrowed.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos))
+            max = maxWaitNanos.get();
+    }
+
+    /**
+     * Restituisce le metriche delle connessioni.
+     *
+     * @return Restituisce una mappa dal nome di ogni metrica al suo valore.
+     */
+
+    Map<String, Long> getMetrics() {
+        LinkedHashMap<String, Long> m = new LinkedHashMap<String, Long>();
+        if (getTargetDataSource() instanceof DataSourceProxy) {
+            DataSourceProxy pool = (DataSourceProxy)getTargetDataSource();
+            m.put("size", (long)pool.getSize());
+            m.put("active", (long)pool.getActive());
+            m.put("idle", (long)pool.getIdle());
+            m.put("waiting", (long)pool.getWaitCount());
+            m.put("maxActive", (long)pool.getMaxActive());
+        }
+        m.put("borrowed", borrowed.get());
+        m.put("waitMillis", waitNanos.get() / 1000000);
+        m.put("maxWaitMillis", maxWaitNanos.get() / 1000000);
+        return m;
+    }
+}
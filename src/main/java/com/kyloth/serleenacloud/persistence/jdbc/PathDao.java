@@ -64,20 +64,24 @@ public class PathDao implements IPathDao {
 
     /**
      * Metodo che implementa IPathDao.findAll(Rect).
+     * Vengono restituiti i sentieri il cui rettangolo di ingombro interseca
+     * la regione, anche se nessuno dei loro punti vi è compreso.
      *
      * @param region La regione di interesse.
      * @return Restituisce tutti i percorsi relativi alla regione specificata.
      */
 
     public Iterable<Path> findAll(Rect region) {
-        return tpl.query("SELECT DISTINCT PathName " +
+        return tpl.query("SELECT PathName " +
                          "FROM PathPoints " +
-                         "WHERE (Latitude BETWEEN ? AND ?) AND (Longitude BETWEEN ? AND ?) ",
+                         "GROUP BY PathName " +
+                         "HAVING MIN(Latitude) <= ? AND MAX(Latitude) >= ? " +
+                         "AND MIN(Longitude) <= ? AND MAX(Longitude) >= ? ",
                          new Object[] {
-                             region.getSEPoint().getLatitude(),
                              region.getNWPoint().getLatitude(),
-                             region.getNWPoint().getLongitude(),
-                             region.getSEPoint().getLongitude()
+                             region.getSEPoint().getLatitude(),
+                             region.getSEPoint().getLongitude(),
+                             region.getNWPoint().getLongitude()
                          },
         new RowMapper<Path>() {
             @Override
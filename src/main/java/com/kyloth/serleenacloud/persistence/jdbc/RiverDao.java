@@ -64,20 +64,24 @@ public class RiverDao implements IRiverDao {
 
     /**
      * Metodo che implementa IRiverDao.findAll(Rect).
+     * Vengono restituiti i fiumi il cui rettangolo di ingombro interseca
+     * la regione, anche se nessuno dei loro punti vi è compreso.
      *
      * @param region La regione di interesse.
      * @return Restituisce la lista dei fiumi relativi alla regione specificata.
      */
 
     public Iterable<River> findAll(Rect region) {
-        return tpl.query("SELECT DISTINCT RiverName " +
+        return tpl.query("SELECT RiverName " +
                          "FROM RiverPoints " +
-                         "WHERE (Latitude BETWEEN ? AND ?) AND (Longitude BETWEEN ? AND ?) ",
+                         "GROUP BY RiverName " +
+                         "HAVING MIN(Latitude) <= ? AND MAX(Latitude) >= ? " +
+                         "AND MIN(Longitude) <= ? AND MAX(Longitude) >= ? ",
                          new Object[] {
-                             region.getSEPoint().getLatitude(),
                              region.getNWPoint().getLatitude(),
-                             region.getNWPoint().getLongitude(),
-                             region.getSEPoint().getLongitude()
+                             region.getSEPoint().getLatitude(),
+                             region.getSEPoint().getLongitude(),
+                             region.getNWPoint().getLongitude()
                          },
         new RowMapper<River>() {
             @Override
@@ -32,10 +32,6 @@ import com.kyloth.serleenacloud.persistence.IExperienceDao;
 import com.kyloth.serleenacloud.persistence.ISyncListDao;
 
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
 
 /**
  * Classe che concretizza ISyncListDao per database MySQL utilizzando JDBC.
@@ -100,14 +96,9 @@ public class SyncListDao implements ISyncListDao {
      */
 
     public Iterable<Experience> findAll() {
-        return tpl.query("SELECT ExperienceId FROM SyncList WHERE User = ?",
-                         new Object[] {user.getEmail()},
-                         new RowMapper<Experience>() {
-                             @Override
-                             public Experience mapRow(ResultSet rs, int rowNum) throws SQLException {
-                                 return ed.find(rs.getString("ExperienceId"));
-                             }
-                         });
+        return ed.findAll(tpl.queryForList("SELECT ExperienceId FROM SyncList WHERE User = ? ORDER BY Id",
+                                           new Object[] {user.getEmail()},
+                                           String.class));
     }
 
 }
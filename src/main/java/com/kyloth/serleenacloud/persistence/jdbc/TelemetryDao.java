@@ -33,8 +33,13 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -45,6 +50,7 @@ import java.sql.PreparedStatement;
  * Classe che concretizza ITelemetryDao per database MySQL utilizzando JDBC.
  *
  * @field JdbcTemplate Template JDBC per la connessione alla base di dati
+ * @field txTpl : TransactionTemplate Template per l'esecuzione di operazioni in un'unica transazione
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
  */
@@ -57,6 +63,12 @@ public class TelemetryDao implements ITelemetryDao {
 
     private JdbcTemplate tpl;
 
+    /**
+     * Template per l'esecuzione di operazioni in un'unica transazione.
+     */
+
+    private TransactionTemplate txTpl;
+
     /**
      * Costruisce un nuovo TelemetryDao.
      *
@@ -65,6 +77,7 @@ public class TelemetryDao implements ITelemetryDao {
 
     TelemetryDao(JDBCDataSource ds) {
         this.tpl = ds.getTpl();
+        this.txTpl = ds.getTxTpl();
     }
 
     /**
@@ -73,29 +86,43 @@ public class TelemetryDao implements ITelemetryDao {
      * @param t Tracciamento da inserire.
      */
 
-    public void persist(Telemetry t) {
+    public void persist(final Telemetry t) {
         if (t.getEvents().iterator().hasNext()) {
-            final String trackId = t.getTrack();
-            KeyHolder keyHolder = new GeneratedKeyHolder();
-            tpl.update(new PreparedStatementCreator() {
-                    public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-                        PreparedStatement ps = connection.prepareStatement("INSERT INTO Telemetries(TrackId) VALUES (?)",
-                                                                           new String[] {"Id"});
-                        ps.setString(1, trackId);
-                        return ps;
+            txTpl.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        insert(t);
                     }
-                },
-                keyHolder);
-            for (Date event : t.getEvents()) {
-                tpl.update("INSERT INTO TelemetryEvents(TelemetryId, Date) " +
-                           "VALUES(?, ?)",
-                           new Object[] { keyHolder.getKey(),
-                                          event
-                           });
-            }
+                });
         }
     }
 
+    /**
+     * Inserisce un tracciamento e i suoi eventi, questi ultimi con un'unica
+     * operazione batch.
+     *
+     * @param t Tracciamento da inserire.
+     */
+
+    private void insert(Telemetry t) {
+        final String trackId = t.getTrack();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        tpl.update(new PreparedStatementCreator() {
+                public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+                    PreparedStatement ps = connection.prepareStatement("INSERT INTO Telemetries(TrackId) VALUES (?)",
+                                                                       new String[] {"Id"});
+                    ps.setString(1, trackId);
+                    return ps;
+                }
+            },
+            keyHolder);
+
+        List<Object[]> events = new ArrayList<Object[]>();
+        for (Date event : t.getEvents())
+            events.add(new Object[] {keyHolder.getKey(), event});
+        tpl.batchUpdate("INSERT INTO TelemetryEvents(TelemetryId, Date) VALUES(?, ?)", events);
+    }
+
     /**
      * Metodo che implementa ITelemetryDao.findAll(String).
      *
@@ -33,14 +33,21 @@ import com.kyloth.serleenacloud.persistence.ITelemetryDao;
 
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Classe che concretizza ITrackDao per database MySQL utilizzando JDBC.
  *
  * @field tpl : JdbcTemplate Template JDBC per la connessione alla base di dati
+ * @field txTpl : TransactionTemplate Template per l'esecuzione di operazioni in un'unica transazione
  * @field tDao : ITelemetryDao DAO per oggetti di tipo Telemetry
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
@@ -54,6 +61,12 @@ public class TrackDao implements ITrackDao {
 
     private JdbcTemplate tpl;
 
+    /**
+     * Template per l'esecuzione di operazioni in un'unica transazione.
+     */
+
+    private TransactionTemplate txTpl;
+
     /**
      * DAO per oggetti di tipo Telemetry.
      */
@@ -68,6 +81,7 @@ public class TrackDao implements ITrackDao {
 
     TrackDao(JDBCDataSource ds) {
         this.tpl = ds.getTpl();
+        this.txTpl = ds.getTxTpl();
         tDao = new TelemetryDao(ds);
     }
 
@@ -77,7 +91,23 @@ public class TrackDao implements ITrackDao {
      * @param e Il percorso da inserire.
      */
 
-    public void persist(Track track) {
+    public void persist(final Track track) {
+        txTpl.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    insert(track);
+                }
+            });
+    }
+
+    /**
+     * Inserisce un percorso con i suoi tracciamenti e checkpoint, questi
+     * ultimi con un'unica operazione batch.
+     *
+     * @param track Il percorso da inserire.
+     */
+
+    private void insert(Track track) {
         String trackName = track.getName();
         String trackId = track.getId();
         tpl.update("INSERT INTO Tracks(Id, Name) VALUES(?, ?)", new Object[] {trackId, trackName});
@@ -85,11 +115,11 @@ public class TrackDao implements ITrackDao {
         for (Telemetry t : track.getTelemetries())
             tDao.persist(t);
 
+        List<Object[]> checkpoints = new ArrayList<Object[]>();
         for (CheckPoint p : track.getCheckPoints())
-            tpl.update("INSERT INTO Checkpoints(TrackId, Longitude, Latitude, Idx) " +
-                       "VALUES(?, ?, ?, ?)",
-                       new Object[] {trackId, p.getLongitude(), p.getLatitude(), p.getId()});
-
+            checkpoints.add(new Object[] {trackId, p.getLongitude(), p.getLatitude(), p.getId()});
+        tpl.batchUpdate("INSERT INTO Checkpoints(TrackId, Longitude, Latitude, Idx) " +
+                        "VALUES(?, ?, ?, ?)", checkpoints);
     }
 
     /**
@@ -0,0 +1,200 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: BaseLayer.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.business.River;
+import com.kyloth.serleenacloud.datamodel.business.Path;
+import com.kyloth.serleenacloud.datamodel.business.Lake;
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+import com.kyloth.serleenacloud.datamodel.geometry.ElevationRect;
+
+import java.awt.image.BufferedImage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Livello dei dati di mappa condiviso tra tutte le Esperienze.
+ *
+ * @use Viene utilizzato da ImageRenderer per comporre i quadranti delle Esperienze. I dati di mappa (altitudini, laghi, fiumi e sentieri) vengono disegnati in quadranti allineati alla griglia globale della proiezione di Mercatore, uno per ogni livello di zoom, che vengono conservati in cache e riutilizzati da tutte le Esperienze che li attraversano. La cache viene svuotata al cambiare di Utils.mapDataVersion.
+ * @field tiles : LinkedHashMap<String, BufferedImage> Campo dati statico contenente i quadranti in cache, in ordine di accesso
+ * @field version : String Campo dati statico rappresentante la versione dei dati di mappa dei quadranti in cache
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class BaseLayer {
+
+    /**
+     * Quadranti in cache, in ordine di accesso.
+     */
+
+    private static LinkedHashMap<String, BufferedImage> tiles = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            return size() > Utils.baseLayerCacheSize;
+        }
+    };
+
+    /**
+     * Versione dei dati di mappa dei quadranti in cache.
+     */
+
+    private static String version;
+
+    /**
+     * Compone i quadranti che coprono una porzione della griglia globale.
+     *
+     * @param g Painter su cui disegnare, con origine nell'angolo nord-ovest della porzione.
+     * @param factor Fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom.
+     * @param x Coordinata x globale in pixel del bordo ovest della porzione.
+     * @param y Coordinata y globale in pixel del bordo nord della porzione, crescente verso sud.
+     * @param width Larghezza in pixel della porzione.
+     * @param height Altezza in pixel della porzione.
+     */
+
+    static void draw(Painter g, int factor, int x, int y, int width, int height) {
+        int w = RasterQuadrant.quadrantWidth;
+        int h = RasterQuadrant.quadrantHeight;
+
+        for (int ty = floorDiv(y, h); ty <= floorDiv(y + height - 1, h); ty++)
+            for (int tx = floorDiv(x, w); tx <= floorDiv(x + width - 1, w); tx++)
+                g.drawImage(getTile(factor, tx, ty), tx * w - x, ty * h - y);
+    }
+
+    /**
+     * Restituisce un quadrante della griglia globale, disegnandolo se non
+     * presente in cache.
+     *
+     * @param factor Fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom.
+     * @param tx Colonna del quadrante.
+     * @param ty Riga del quadrante, crescente verso sud.
+     * @return Restituisce l'immagine del quadrante.
+     */
+
+    static BufferedImage getTile(int factor, int tx, int ty) {
+        String key = factor + "/" + tx + "/" + ty;
+
+        synchronized (tiles) {
+            if (!Utils.mapDataVersion.equals(version)) {
+                tiles.clear();
+                version = Utils.mapDataVersion;
+            }
+            BufferedImage tile = tiles.get(key);
+            if (tile != null)
+                return tile;
+        }
+
+        BufferedImage tile = renderTile(factor, tx, ty);
+
+        synchronized (tiles) {
+            if (Utils.mapDataVersion.equals(version))
+                tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Disegna un quadrante della griglia globale. Vengono disegnate le
+     * entità il cui ingombro interseca il quadrante o i quadranti adiacenti,
+     * in modo che le entità a cavallo tra due quadranti o più grandi di un
+     * quadrante vengano disegnate in tutti quelli che coprono.
+     *
+     * @param factor Fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom.
+     * @param tx Colonna del quadrante.
+     * @param ty Riga del quadrante, crescente verso sud.
+     * @return Restituisce l'immagine del quadrante.
+     */
+
+    static BufferedImage renderTile(int factor, int tx, int ty) {
+        int w = RasterQuadrant.quadrantWidth;
+        int h = RasterQuadrant.quadrantHeight;
+
+        ImageRenderer ir = new ImageRenderer(factor, tx * w, -(ty + 1) * h, w, h, Math.max(w, h));
+        Rect region = ir.getRegion();
+
+        Iterable<ElevationRect> elevations;
+        Iterable<Lake> lakes;
+        Iterable<River> rivers;
+        Iterable<Path> paths;
+        int phase = RenderMetrics.enter(RenderMetrics.LOAD);
+        try {
+            elevations = Renderer.ds.elevationRectDao().findAll(region);
+            lakes = Renderer.ds.lakeDao().findAll(region);
+            rivers = Renderer.ds.riverDao().findAll(region);
+            paths = Renderer.ds.pathDao().findAll(region);
+        } finally {
+            RenderMetrics.exit(phase);
+        }
+
+        BufferedImage tile = Utils.createImage(w, h);
+        Painter g = Utils.createPainter(tile);
+        g.fillRect(Utils.backgroundColor, 0, 0, w, h);
+        phase = RenderMetrics.enter(RenderMetrics.DRAW);
+        try {
+            ir.drawBase(g, elevations, lakes, rivers, paths);
+        } finally {
+            RenderMetrics.exit(phase);
+        }
+        g.dispose();
+
+        return tile;
+    }
+
+    /**
+     * Svuota la cache dei quadranti.
+     */
+
+    static void invalidate() {
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * Restituisce il numero di quadranti in cache.
+     *
+     * @return Restituisce il numero di quadranti.
+     */
+
+    static int getCount() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * Divisione intera arrotondata per difetto.
+     *
+     * @param a Dividendo.
+     * @param b Divisore positivo.
+     * @return Restituisce il più grande intero minore o uguale ad a/b.
+     */
+
+    private static int floorDiv(int a, int b) {
+        return a >= 0 ? a / b : -((-a + b - 1) / b);
+    }
+}
@@ -0,0 +1,244 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: ElevationLayer.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.geometry.ElevationRect;
+
+import java.awt.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Informazioni di altitudine di un'immagine, compattate in rettangoli di
+ * altezza uniforme.
+ *
+ * @use Viene creato da ImageRenderer una volta per ogni insieme di ElevationRect e riutilizzato per tutti i quadranti della stessa immagine. Gli ElevationRect vengono convertiti in pixel e scansionati riga per riga nell'ordine in cui verrebbero disegnati, ottenendo per ogni riga le sequenze di pixel di uguale altezza; le righe con le stesse sequenze vengono unite, per cui una griglia di ElevationRect adiacenti di uguale altezza diventa un solo rettangolo. Il risultato coincide con quello del disegno dei singoli ElevationRect.
+ * @field source : Iterable<ElevationRect> Campo dati contenente l'insieme di ElevationRect da cui è stato creato
+ * @field spans : int[] Campo dati contenente colonna, riga, larghezza, altezza in pixel e altezza del terreno di ogni rettangolo
+ * @field count : int Campo dati rappresentante il numero di rettangoli
+ * @field rects : int Campo dati rappresentante il numero di ElevationRect da cui è stato creato
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class ElevationLayer {
+
+    /**
+     * Insieme di ElevationRect da cui è stato creato.
+     */
+
+    private Iterable<ElevationRect> source;
+
+    /**
+     * Colonna, riga, larghezza, altezza in pixel e altezza del terreno di
+     * ogni rettangolo.
+     */
+
+    private int[] spans = new int[5 * 16];
+
+    /**
+     * Numero di rettangoli.
+     */
+
+    private int count = 0;
+
+    /**
+     * Numero di ElevationRect da cui è stato creato.
+     */
+
+    private int rects = 0;
+
+    /**
+     * Compatta un insieme di ElevationRect.
+     *
+     * @param ir ImageRenderer che converte gli ElevationRect in pixel.
+     * @param source Insieme di ElevationRect, nell'ordine in cui vanno disegnati.
+     */
+
+    ElevationLayer(ImageRenderer ir, Iterable<ElevationRect> source) {
+        this.source = source;
+
+        ArrayList<int[]> list = new ArrayList<int[]>();
+        for (ElevationRect er : source) {
+            rects++;
+            Rectangle b = ir.elevationBounds(er).intersection(new Rectangle(0, 0, ir.width, ir.height));
+            if (!b.isEmpty())
+                list.add(new int[] {b.x, b.y, b.x + b.width, b.y + b.height, er.getHeight()});
+        }
+        if (list.isEmpty())
+            return;
+
+        int n = list.size();
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = ((long)list.get(i)[1] << 32) | i;
+            ends[i] = ((long)list.get(i)[3] << 32) | i;
+        }
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+
+        int[] row = new int[ir.width];
+        boolean[] active = new boolean[n];
+        int[] runs = new int[0];
+        int[] open = new int[0];
+        int s = 0;
+        int e = 0;
+        int y = (int)(starts[0] >> 32);
+
+        while (s < n || e < n) {
+            int next = Integer.MAX_VALUE;
+            if (s < n)
+                next = (int)(starts[s] >> 32);
+            if (e < n)
+                next = Math.min(next, (int)(ends[e] >> 32));
+
+            for (int i = 0; i < open.length; i++)
+                spans[5 * open[i] + 3] += next - y;
+            y = next;
+
+            while (s < n && (int)(starts[s] >> 32) == y)
+                active[(int)starts[s++]] = true;
+            while (e < n && (int)(ends[e] >> 32) == y)
+                active[(int)ends[e++]] = false;
+
+            Arrays.fill(row, -1);
+            for (int i = 0; i < n; i++)
+                if (active[i])
+                    Arrays.fill(row, list.get(i)[0], list.get(i)[2], list.get(i)[4]);
+
+            int[] r = runs(row);
+            if (!Arrays.equals(r, runs)) {
+                runs = r;
+                open = new int[r.length / 3];
+                for (int i = 0; i < open.length; i++)
+                    open[i] = add(r[3*i], y, r[3*i+1] - r[3*i], r[3*i+2]);
+            }
+        }
+    }
+
+    /**
+     * Restituisce le sequenze di pixel di uguale altezza di una riga.
+     *
+     * @param row Altezza di ogni pixel della riga, -1 se il pixel non è coperto.
+     * @return Restituisce inizio, fine e altezza di ogni sequenza.
+     */
+
+    private static int[] runs(int[] row) {
+        int n = 0;
+        int[] r = new int[12];
+        for (int x = 0; x < row.length; ) {
+            int start = x;
+            int h = row[x];
+            while (x < row.length && row[x] == h)
+                x++;
+            if (h < 0)
+                continue;
+            if (n + 3 > r.length)
+                r = Arrays.copyOf(r, r.length * 2);
+            r[n++] = start;
+            r[n++] = x;
+            r[n++] = h;
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    /**
+     * Aggiunge un rettangolo di altezza in pixel nulla, che viene
+     * estesa man mano che le righe successive hanno le stesse sequenze.
+     *
+     * @return Restituisce l'indice del rettangolo.
+     */
+
+    private int add(int x, int y, int width, int height) {
+        if (5 * count + 5 > spans.length)
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        spans[5*count] = x;
+        spans[5*count+1] = y;
+        spans[5*count+2] = width;
+        spans[5*count+3] = 0;
+        spans[5*count+4] = height;
+        return count++;
+    }
+
+    /**
+     * Indica se il livello è stato creato da un insieme di ElevationRect.
+     *
+     * @param source Insieme di ElevationRect.
+     * @return Restituisce true se si tratta dello stesso oggetto.
+     */
+
+    boolean isFor(Iterable<ElevationRect> source) {
+        return this.source == source;
+    }
+
+    /**
+     * Disegna i rettangoli, ciascuno del colore corrispondente alla sua
+     * altezza.
+     *
+     * @param g Painter su cui disegnare.
+     */
+
+    void draw(Painter g) {
+        for (int i = 0; i < count; i++) {
+            int[] s = spans;
+            if (s[5*i+3] > 0)
+                g.fillRect(Utils.elevationShade(s[5*i+4]), s[5*i], s[5*i+1], s[5*i+2], s[5*i+3]);
+        }
+    }
+
+    /**
+     * Restituisce il numero di rettangoli.
+     *
+     * @return Restituisce il numero di rettangoli compattati.
+     */
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Restituisce i rettangoli: colonna, riga, larghezza, altezza in pixel
+     * e altezza del terreno di ognuno, per i primi getCount() rettangoli.
+     *
+     * @return Restituisce l'array dei rettangoli, da non modificare.
+     */
+
+    int[] getSpans() {
+        return spans;
+    }
+
+    /**
+     * Restituisce il numero di ElevationRect da cui è stato creato.
+     *
+     * @return Restituisce il numero di ElevationRect.
+     */
+
+    int getRects() {
+        return rects;
+    }
+}
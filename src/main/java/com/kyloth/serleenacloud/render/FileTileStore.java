@@ -0,0 +1,603 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: FileTileStore.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Archivio su file dei quadranti raster già renderizzati.
+ *
+ * @use Viene utilizzato da RasterQuadrant come secondo livello di cache, dietro a Renderer.tileCache e Renderer.tileIndex, in modo che il lavoro di rendering sopravviva al riavvio del servizio. I valori vengono aggiunti in coda a un unico file di segmento e non vengono mai riscritti; all'apertura l'indice in memoria viene ricostruito leggendo le sole intestazioni dei record, e un record incompleto in coda al file, lasciato da un arresto improvviso, viene scartato. I valori vengono letti con letture posizionali, sotto il lock in lettura, e scritti verso i client solo dopo averlo rilasciato. Quando il file supera la dimensione massima viene compattato mantenendo i valori usati più di recente, fino a metà della dimensione massima. Gli errori di lettura vengono registrati e trattati come valori assenti; un errore di scrittura o di compattazione, dopo il quale il file non è più affidabile, viene registrato e disattiva l'archivio per il resto del processo.
+ * @field MAGIC : int Campo dati statico rappresentante l'intestazione del file di segmento
+ * @field HEADER : int Campo dati statico rappresentante la lunghezza in byte dell'intestazione del file di segmento
+ * @field log : Logger Campo dati statico contenente il logger degli errori dell'archivio
+ * @field file : File Campo dati rappresentante il file di segmento
+ * @field maxSize : long Campo dati rappresentante la dimensione massima in byte del file di segmento
+ * @field lock : ReentrantReadWriteLock Campo dati contenente il lock che impedisce letture e scritture durante la compattazione
+ * @field raf : RandomAccessFile Campo dati rappresentante il file di segmento aperto
+ * @field channel : FileChannel Campo dati rappresentante il canale del file di segmento
+ * @field index : LinkedHashMap<String, long[]> Campo dati contenente posizione, lunghezza, lunghezza del record e CRC di ogni valore, in ordine di accesso
+ * @field size : long Campo dati rappresentante la dimensione in byte del file di segmento
+ * @field live : long Campo dati rappresentante la dimensione in byte dei record ancora indicizzati
+ * @field hits : long Campo dati rappresentante il numero di richieste soddisfatte dall'archivio
+ * @field misses : long Campo dati rappresentante il numero di richieste non soddisfatte dall'archivio
+ * @field disabled : boolean Campo dati che indica se l'archivio è stato disattivato
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class FileTileStore {
+
+    /**
+     * Intestazione del file di segmento: "SCT" seguito dalla versione del
+     * formato.
+     */
+
+    private static final int MAGIC = 0x53435401;
+
+    /**
+     * Lunghezza in byte dell'intestazione del file di segmento.
+     */
+
+    private static final int HEADER = 4;
+
+    /**
+     * Logger degli errori dell'archivio.
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(FileTileStore.class);
+
+    /**
+     * File di segmento.
+     */
+
+    private File file;
+
+    /**
+     * Dimensione massima in byte del file di segmento.
+     */
+
+    private long maxSize;
+
+    /**
+     * Lock che impedisce letture e scritture durante la compattazione,
+     * che sostituisce il file di segmento.
+     */
+
+    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * File di segmento aperto.
+     */
+
+    private RandomAccessFile raf;
+
+    /**
+     * Canale del file di segmento.
+     */
+
+    private FileChannel channel;
+
+    /**
+     * Posizione del valore, lunghezza del valore, lunghezza del record e
+     * CRC del valore di ogni chiave, in ordine di accesso.
+     */
+
+    private LinkedHashMap<String, long[]> index = new LinkedHashMap<String, long[]>(16, 0.75f, true);
+
+    /**
+     * Dimensione in byte del file di segmento.
+     */
+
+    private long size;
+
+    /**
+     * Dimensione in byte dei record ancora indicizzati.
+     */
+
+    private long live;
+
+    /**
+     * Numero di richieste soddisfatte dall'archivio.
+     */
+
+    private long hits = 0;
+
+    /**
+     * Numero di richieste non soddisfatte dall'archivio.
+     */
+
+    private long misses = 0;
+
+    /**
+     * Indica se l'archivio è stato disattivato, dalla chiusura o da un
+     * errore; un archivio disattivato non restituisce né inserisce valori.
+     */
+
+    private volatile boolean disabled = false;
+
+    /**
+     * Apre l'archivio in una directory, creandola se necessario.
+     *
+     * @param path Percorso della directory dell'archivio; se vuoto l'archivio è disattivato.
+     * @param maxSize Dimensione massima in byte del file di segmento.
+     * @return Restituisce l'archivio, o null se disattivato o se non è possibile aprirlo.
+     */
+
+    static FileTileStore open(String path, long maxSize) {
+        if (path == null || path.trim().isEmpty())
+            return null;
+
+        try {
+            return new FileTileStore(new File(path.trim()), maxSize);
+        } catch (IOException e) {
+            log.error("Cannot open tile store in {}, tile store disabled", path.trim(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Crea un nuovo FileTileStore.
+     *
+     * @param dir Directory dell'archivio.
+     * @param maxSize Dimensione massima in byte del file di segmento.
+     * @throws IOException
+     */
+
+    FileTileStore(File dir, long maxSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        this.file = new File(dir, "tiles.dat");
+        this.maxSize = maxSize;
+        load();
+    }
+
+    /**
+     * Apre il file di segmento e ricostruisce l'indice dalle intestazioni
+     * dei record. Un file con intestazione diversa viene svuotato; il file
+     * viene troncato al primo record incompleto o corrotto.
+     *
+     * @throws IOException
+     */
+
+    private void load() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        index.clear();
+        live = 0;
+
+        long length = channel.size();
+        long pos = 0;
+        if (length >= HEADER) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() == MAGIC) {
+                    pos = HEADER;
+                    CRC32 crc = new CRC32();
+                    while (true) {
+                        int headerCrc = in.readInt();
+                        int keyLength = in.readUnsignedShort();
+                        byte[] key = new byte[keyLength];
+                        in.readFully(key);
+                        int valueLength = in.readInt();
+                        int valueCrc = in.readInt();
+
+                        crc.reset();
+                        crc.update(keyLength >>> 8);
+                        crc.update(keyLength);
+                        crc.update(key);
+                        updateInt(crc, valueLength);
+                        updateInt(crc, valueCrc);
+                        long header = 14 + keyLength;
+                        if ((int)crc.getValue() != headerCrc || valueLength < 0 || pos + header + valueLength > length)
+                            break;
+
+                        long skipped = 0;
+                        while (skipped < valueLength) {
+                            long n = in.skip(valueLength - skipped);
+                            if (n <= 0)
+                                throw new EOFException();
+                            skipped += n;
+                        }
+
+                        long[] old = index.put(new String(key, "UTF-8"),
+                                               new long[] {pos + header, valueLength, header + valueLength, valueCrc});
+                        if (old != null)
+                            live -= old[2];
+                        live += header + valueLength;
+                        pos += header + valueLength;
+                    }
+                }
+            } catch (EOFException e) {
+            } finally {
+                in.close();
+            }
+        }
+
+        if (pos == 0) {
+            channel.truncate(0);
+            ByteBuffer magic = ByteBuffer.allocate(HEADER);
+            magic.putInt(MAGIC).flip();
+            while (magic.hasRemaining())
+                channel.write(magic, magic.position());
+            pos = HEADER;
+        } else if (pos < length) {
+            channel.truncate(pos);
+        }
+        size = pos;
+    }
+
+    /**
+     * Restituisce un valore presente nell'archivio.
+     *
+     * @param key Chiave del valore.
+     * @return Restituisce il valore, o null se non presente, corrotto, non leggibile o se l'archivio è disattivato.
+     */
+
+    byte[] get(String key) {
+        if (disabled)
+            return null;
+
+        lock.readLock().lock();
+        try {
+            long[] entry = lookup(key);
+            if (entry == null)
+                return null;
+
+            ByteBuffer buf = ByteBuffer.allocate((int)entry[1]);
+            while (buf.hasRemaining())
+                if (channel.read(buf, entry[0] + buf.position()) < 0)
+                    throw new EOFException();
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.array());
+            if ((int)crc.getValue() != (int)entry[3]) {
+                synchronized (index) {
+                    if (index.remove(key) != null)
+                        live -= entry[2];
+                }
+                return null;
+            }
+            return buf.array();
+        } catch (IOException e) {
+            if (!disabled)
+                log.warn("Cannot read {} from tile store {}", key, file, e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scrive un valore presente nell'archivio su uno stream. Il valore
+     * viene letto sotto lock e scritto dopo averlo rilasciato, in modo che
+     * un client lento non blocchi la compattazione e, di conseguenza, le
+     * altre letture e scritture.
+     *
+     * @param key Chiave del valore.
+     * @param out Stream su cui scrivere il valore.
+     * @return Restituisce true se il valore era presente ed è stato scritto.
+     * @throws IOException
+     */
+
+    boolean writeTo(String key, OutputStream out) throws IOException {
+        byte[] value = get(key);
+        if (value == null)
+            return false;
+
+        out.write(value);
+        return true;
+    }
+
+    /**
+     * Cerca una chiave nell'indice, aggiornando le statistiche.
+     *
+     * @param key Chiave da cercare.
+     * @return Restituisce la voce dell'indice, o null se non presente.
+     */
+
+    private long[] lookup(String key) {
+        synchronized (index) {
+            long[] entry = index.get(key);
+            if (entry == null)
+                misses++;
+            else
+                hits++;
+            return entry;
+        }
+    }
+
+    /**
+     * Aggiunge un valore in coda all'archivio, se la chiave non è già
+     * presente; i valori sono indirizzati per contenuto e non vengono
+     * mai sostituiti. Se il file supera la dimensione massima viene
+     * compattato. Se la scrittura fallisce l'archivio viene disattivato.
+     *
+     * @param key Chiave del valore.
+     * @param value Valore da aggiungere.
+     */
+
+    void put(String key, byte[] value) {
+        if (disabled)
+            return;
+
+        byte[] k;
+        try {
+            k = key.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(value);
+        int valueCrc = (int)crc.getValue();
+
+        crc.reset();
+        crc.update(k.length >>> 8);
+        crc.update(k.length);
+        crc.update(k);
+        updateInt(crc, value.length);
+        updateInt(crc, valueCrc);
+
+        int header = 14 + k.length;
+        ByteBuffer record = ByteBuffer.allocate(header + value.length);
+        record.putInt((int)crc.getValue()).putShort((short)k.length).put(k)
+            .putInt(value.length).putInt(valueCrc).put(value).flip();
+
+        boolean full;
+        lock.readLock().lock();
+        try {
+            long pos;
+            synchronized (index) {
+                if (index.containsKey(key))
+                    return;
+                pos = size;
+                size += record.limit();
+            }
+
+            try {
+                while (record.hasRemaining())
+                    channel.write(record, pos + record.position());
+            } catch (IOException e) {
+                disable("write of " + key + " failed", e);
+                return;
+            }
+
+            synchronized (index) {
+                long[] old = index.put(key, new long[] {pos + header, value.length, record.limit(), valueCrc});
+                if (old != null)
+                    live -= old[2];
+                live += record.limit();
+                full = size > maxSize;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (full)
+            compact();
+    }
+
+    /**
+     * Riscrive il file di segmento mantenendo i valori usati più di
+     * recente, fino a metà della dimensione massima, e sostituisce il
+     * file originale. Se la compattazione fallisce l'archivio viene
+     * disattivato, poiché il file originale potrebbe essere già stato
+     * chiuso o sostituito.
+     */
+
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            if (size <= maxSize || disabled)
+                return;
+
+            ArrayList<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(index.entrySet());
+            int first = entries.size();
+            long kept = HEADER;
+            while (first > 0 && kept + entries.get(first - 1).getValue()[2] <= maxSize / 2)
+                kept += entries.get(--first).getValue()[2];
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+                try {
+                    FileChannel c = out.getChannel();
+                    c.truncate(0);
+                    ByteBuffer magic = ByteBuffer.allocate(HEADER);
+                    magic.putInt(MAGIC).flip();
+                    while (magic.hasRemaining())
+                        c.write(magic);
+                    for (int i = first; i < entries.size(); i++) {
+                        long[] entry = entries.get(i).getValue();
+                        long start = entry[0] + entry[1] - entry[2];
+                        long done = 0;
+                        while (done < entry[2])
+                            done += channel.transferTo(start + done, entry[2] - done, c);
+                    }
+                    c.force(false);
+                } finally {
+                    out.close();
+                }
+
+                raf.close();
+                if (!tmp.renameTo(file)) {
+                    file.delete();
+                    if (!tmp.renameTo(file))
+                        throw new IOException("Cannot replace " + file);
+                }
+                load();
+            } catch (IOException e) {
+                disable("compaction failed", e);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Chiude il file di segmento.
+     *
+     * @throws IOException
+     */
+
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            disabled = true;
+            raf.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Disattiva l'archivio dopo un errore che rende il file non
+     * affidabile, svuotando l'indice e chiudendo il file.
+     *
+     * @param reason Descrizione dell'operazione fallita.
+     * @param e Errore che ha causato la disattivazione.
+     */
+
+    private void disable(String reason, IOException e) {
+        synchronized (index) {
+            if (disabled)
+                return;
+            disabled = true;
+            index.clear();
+            live = 0;
+        }
+        log.error("Tile store {} disabled: {}", file, reason, e);
+        try {
+            raf.close();
+        } catch (IOException ce) {
+            log.warn("Cannot close tile store {}", file, ce);
+        }
+    }
+
+    /**
+     * Indica se l'archivio è stato disattivato.
+     *
+     * @return Restituisce true se l'archivio è stato chiuso o disattivato da un errore.
+     */
+
+    boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * Restituisce il numero di richieste soddisfatte dall'archivio.
+     *
+     * @return Restituisce il numero di richieste soddisfatte.
+     */
+
+    long getHits() {
+        synchronized (index) {
+            return hits;
+        }
+    }
+
+    /**
+     * Restituisce il numero di richieste non soddisfatte dall'archivio.
+     *
+     * @return Restituisce il numero di richieste non soddisfatte.
+     */
+
+    long getMisses() {
+        synchronized (index) {
+            return misses;
+        }
+    }
+
+    /**
+     * Restituisce la dimensione del file di segmento.
+     *
+     * @return Restituisce la dimensione in byte.
+     */
+
+    long getSize() {
+        synchronized (index) {
+            return size;
+        }
+    }
+
+    /**
+     * Restituisce la dimensione dei record ancora indicizzati.
+     *
+     * @return Restituisce la dimensione in byte.
+     */
+
+    long getLive() {
+        synchronized (index) {
+            return live;
+        }
+    }
+
+    /**
+     * Restituisce il numero di valori nell'archivio.
+     *
+     * @return Restituisce il numero di valori.
+     */
+
+    int getCount() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    /**
+     * Aggiorna un CRC con i byte di un intero, in ordine big-endian.
+     *
+     * @param crc CRC da aggiornare.
+     * @param v Intero da aggiungere.
+     */
+
+    private static void updateInt(CRC32 crc, int v) {
+        crc.update(v >>> 24);
+        crc.update(v >>> 16);
+        crc.update(v >>> 8);
+        crc.update(v);
+    }
+}
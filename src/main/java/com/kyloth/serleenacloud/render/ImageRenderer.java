@@ -36,23 +36,34 @@ import com.kyloth.serleenacloud.datamodel.geometry.ElevationRect;
 import com.kyloth.serleenacloud.datamodel.geometry.Point;
 
 import java.awt.image.BufferedImage;
-import java.awt.Graphics2D;
 import java.awt.Color;
+import java.awt.Rectangle;
+
+import java.io.UnsupportedEncodingException;
 
 import java.util.ArrayList;
 
 /**
  * Classe che si occupa del rendering effettivo degli elementi di un'Esperienza in un'immagine
  *
- * @use Prendendo in input un oggetto Renderer, disegna gli elementi dell'Esperienza associata in un Image.
+ * @use Prendendo in input un oggetto Renderer, disegna gli elementi dell'Esperienza associata in un Image. Le coordinate in pixel sono quelle della proiezione di Mercatore con il fattore del livello di zoom, traslate di un numero intero di pixel: in questo modo i pixel di ogni immagine coincidono con quelli della griglia globale usata da BaseLayer.
+ * @field r : Renderer Campo dati contenente un oggetto da cui ottenere le informazioni sulle entità dell'Esperienza da renderizzare
  * @field img : BufferedImage Campo dati contenente l'immagine generata
- * @field g : Graphics2d Campo dati rappresentante l'oggetto su cui disegnare l'immagine
+ * @field factor : int Campo dati rappresentante il fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom
+ * @field originX : int Campo dati rappresentante la coordinata x globale in pixel del bordo ovest dell'immagine
+ * @field originY : int Campo dati rappresentante la coordinata y globale in pixel del bordo sud dell'immagine
  * @field width : int Campo dati rappresentante la larghezza totale dell'immagine in pixel
  * @field height : int Campo dati rappresentante l'altezza totale dell'immagine in pixel
- * @field maxLatitude : double Campo dati rappresentante la latitudine massima tra le entità dell'Esperienza
- * @field maxLongitude : double Campo dati rappresentante la longitudine massima tra le entità dell'Esperienza
- * @field minLatitude : double Campo dati rappresentante la latitudine minima tra le entità dell'Esperienza
- * @field minLongitude : double Campo dati rappresentante la longitudine minima tra le entità dell'Esperienza
+ * @field maxLatitude : double Campo dati rappresentante la latitudine massima oltre la quale le entità non vengono disegnate
+ * @field maxLongitude : double Campo dati rappresentante la longitudine massima oltre la quale le entità non vengono disegnate
+ * @field minLatitude : double Campo dati rappresentante la latitudine minima oltre la quale le entità non vengono disegnate
+ * @field minLongitude : double Campo dati rappresentante la longitudine minima oltre la quale le entità non vengono disegnate
+ * @field imageWidth : int Campo dati rappresentante la larghezza in pixel dell'immagine restituita, multipla di quella di un quadrante
+ * @field imageHeight : int Campo dati rappresentante l'altezza in pixel dell'immagine restituita, multipla di quella di un quadrante
+ * @field projection : Projection Campo dati contenente le coordinate in pixel globali delle entità già proiettate durante il rendering
+ * @field elevationLayer : ElevationLayer Campo dati contenente le informazioni di altitudine compattate, condivise da tutti i quadranti
+ * @field overlayBounds : ArrayList<Rectangle> Campo dati contenente l'ingombro in pixel delle entità proprie dell'Esperienza, nell'ordine in cui vengono disegnate
+ * @field overlayKeys : ArrayList<String> Campo dati contenente la descrizione in pixel delle entità proprie dell'Esperienza, nello stesso ordine
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
  */
@@ -78,50 +89,108 @@ public class ImageRenderer {
     BufferedImage _img = null;
 
     /**
-     * Oggetto su cui disegnare l'immagine.
+     * Fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom.
+     */
+
+    int factor;
+
+    /**
+     * Coordinata x globale in pixel del bordo ovest dell'immagine.
+     */
+
+    int originX;
+
+    /**
+     * Coordinata y globale in pixel del bordo sud dell'immagine.
      */
 
-    Graphics2D g;
+    int originY;
 
     /**
      * Larghezza totale dell'immagine in pixel.
      */
 
-    double width;
+    int width;
 
     /**
      * Altezza totale dell'immagine in pixel.
      */
 
-    double height;
+    int height;
+
+    /**
+     * Latitudine massima oltre la quale le entità non vengono disegnate.
+     */
 
+    double maxLatitude;
 
     /**
-     * Latitudine massima tra le entità dell'Esperienza.
+     * Longitudine massima oltre la quale le entità non vengono disegnate.
      */
 
-    double maxLatitude = Double.MIN_VALUE;
+    double maxLongitude;
 
     /**
-     * Longitudine massima tra le entità dell'Esperienza.
+     * Latitudine minima oltre la quale le entità non vengono disegnate.
      */
 
-    double maxLongitude = Double.MIN_VALUE;
+    double minLatitude;
 
     /**
-     * Latitudine minima tra le entità dell'Esperienza.
+     * Longitudine minima oltre la quale le entità non vengono disegnate.
      */
 
-    double minLatitude = Double.MAX_VALUE;
+    double minLongitude;
 
     /**
-     * Longitudine minima tra le entità dell'Esperienza.
+     * Larghezza in pixel dell'immagine restituita da getImage(), multipla di quella di un quadrante.
      */
 
-    double minLongitude = Double.MAX_VALUE;
+    int imageWidth;
 
     /**
-     * Costruisce un nuovo ImageRenderer a partire dal Renderer
+     * Altezza in pixel dell'immagine restituita da getImage(), multipla di quella di un quadrante.
+     */
+
+    int imageHeight;
+
+    /**
+     * Coordinate in pixel globali delle entità già proiettate, condivise
+     * da tutti i quadranti del rendering.
+     */
+
+    Projection projection;
+
+    /**
+     * Informazioni di altitudine compattate, condivise da tutti i
+     * quadranti dell'immagine.
+     */
+
+    ElevationLayer elevationLayer;
+
+    /**
+     * Ingombro in pixel delle entità proprie dell'Esperienza, nell'ordine
+     * in cui vengono disegnate; calcolato alla prima richiesta.
+     */
+
+    ArrayList<Rectangle> overlayBounds;
+
+    /**
+     * Descrizione in pixel delle entità proprie dell'Esperienza, nello
+     * stesso ordine di overlayBounds.
+     */
+
+    ArrayList<String> overlayKeys;
+
+    /**
+     * Costruisce un nuovo ImageRenderer a partire dal Renderer.
+     * L'immagine copre il rettangolo dell'Esperienza, arrotondato ai pixel
+     * della griglia globale.
+     * L'immagine complessiva non viene allocata dal costruttore: se
+     * Utils.tileRendering è attivo ogni quadrante viene disegnato su
+     * richiesta da renderQuadrant, altrimenti l'immagine viene disegnata
+     * alla prima chiamata di getImage(), all'interno del rendering
+     * ammesso da RenderScheduler.
      *
      * @param r Renderer a partire dalla quale costruire l'ImageRenderer
      */
@@ -129,144 +198,266 @@ public class ImageRenderer {
     ImageRenderer(Renderer r) {
 
         this.r = r;
+        this.factor = r.factor;
 
-        calcMaxLatLong();
+        Point nw = r.rect.getNWPoint();
+        Point se = r.rect.getSEPoint();
 
-        width = normalizeLongitude(maxLongitude);
-        height = normalizeLatitude(maxLatitude);
+        int west = (int)Math.floor(globalX(nw.getLongitude()));
+        int south = (int)Math.floor(globalY(se.getLatitude()));
+        int east = (int)Math.ceil(globalX(se.getLongitude()));
+        int north = (int)Math.ceil(globalY(nw.getLatitude()));
+
+        init(west, south, Math.max(east - west, 1), Math.max(north - south, 1), 1);
+    }
 
-        img = new BufferedImage(Utils.round(width), Utils.round(height), BufferedImage.TYPE_INT_RGB);
-        g = img.createGraphics();
+    /**
+     * Costruisce un nuovo ImageRenderer per una porzione della griglia
+     * globale, non relativo ad alcuna Esperienza.
+     *
+     * @param factor Fattore moltiplicativo per la conversione da gradi a pixel.
+     * @param originX Coordinata x globale in pixel del bordo ovest.
+     * @param originY Coordinata y globale in pixel del bordo sud.
+     * @param width Larghezza in pixel.
+     * @param height Altezza in pixel.
+     * @param margin Margine in pixel oltre il quale le entità non vengono disegnate.
+     */
 
-        draw();
+    ImageRenderer(int factor, int originX, int originY, int width, int height, int margin) {
+        this.factor = factor;
+        init(originX, originY, width, height, margin);
     }
 
     /**
-     * Disegna le entità.
+     * Inizializza la posizione e le dimensioni dell'immagine.
+     *
+     * @param originX Coordinata x globale in pixel del bordo ovest.
+     * @param originY Coordinata y globale in pixel del bordo sud.
+     * @param width Larghezza in pixel.
+     * @param height Altezza in pixel.
+     * @param margin Margine in pixel oltre il quale le entità non vengono disegnate.
      */
 
-    void draw() {
-        g.setBackground(Utils.backgroundColor);
-        g.clearRect(0, 0, Utils.round(width), Utils.round(height));
+    void init(int originX, int originY, int width, int height, int margin) {
+        this.originX = originX;
+        this.originY = originY;
+        this.width = width;
+        this.height = height;
+        this.projection = new Projection(factor);
 
-        for (ElevationRect er : r.elevations)
-            drawElevation(er);
+        minLongitude = XtoLon(-margin);
+        maxLongitude = XtoLon(width + margin);
+        minLatitude = YtoLat(-margin);
+        maxLatitude = YtoLat(height + margin);
 
-        for (Lake t : r.lakes)
-            drawLake(t);
+        imageWidth = Utils.round(Utils.multipleOf(width, RasterQuadrant.quadrantWidth));
+        imageHeight = Utils.round(Utils.multipleOf(height, RasterQuadrant.quadrantHeight));
+    }
 
-        for (River t : r.rivers)
-            drawRiver(t);
+    /**
+     * Alloca l'immagine complessiva e vi disegna le entità.
+     */
 
-        for (Path t : r.paths)
-            drawPath(t);
+    void renderImage() {
+        img = Utils.createImage(width, height);
+        Painter g = Utils.createPainter(img);
+        draw(g);
+        g.dispose();
+    }
+
+    /**
+     * Restituisce la regione geografica entro la quale le entità vengono disegnate.
+     *
+     * @return Restituisce un Rect delimitato da latitudini e longitudini minime e massime.
+     */
 
-        for (Track t : r.tracks)
-            drawTrack(t);
+    Rect getRegion() {
+        return new Rect(new Point(maxLatitude, minLongitude), new Point(minLatitude, maxLongitude));
+    }
 
-        for (PointOfInterest p : r.pois)
-            drawPOI(p);
+    /**
+     * Disegna le entità.
+     *
+     * @param g Oggetto su cui disegnare le entità.
+     */
 
-        for (UserPoint p : r.ups)
-            drawUP(p);
+    void draw(Painter g) {
+        g.fillRect(Utils.backgroundColor, 0, 0, width, height);
 
+        r.loadMapData();
+        int phase = RenderMetrics.enter(RenderMetrics.DRAW);
+        try {
+            drawBase(g, r.elevations, r.lakes, r.rivers, r.paths);
+            drawOverlays(g);
+        } finally {
+            RenderMetrics.exit(phase);
+        }
     }
 
     /**
-     * Disegna le informazioni di altitudine.
+     * Disegna i dati di mappa, comuni a tutte le Esperienze.
      *
-     * @param er ElevationRect da disegnare.
+     * @param g Oggetto su cui disegnare le entità.
+     * @param elevations Insieme di ElevationRect da disegnare.
+     * @param lakes Insieme di laghi da disegnare.
+     * @param rivers Insieme di fiumi da disegnare.
+     * @param paths Insieme di sentieri da disegnare.
      */
 
-    void drawElevation(ElevationRect er) {
-        Color c = Utils.elevationColor;
-        for (int i = 0; i < er.getHeight(); i++)
-            c = c.darker();
-        g.setColor(c);
+    void drawBase(Painter g, Iterable<ElevationRect> elevations, Iterable<Lake> lakes, Iterable<River> rivers, Iterable<Path> paths) {
+        ElevationLayer layer = elevationLayer(elevations);
+        layer.draw(g);
+        int features = layer.getCount();
 
-        double nwLat = Math.min(er.getNWPoint().getLatitude(), maxLatitude);
-        double nwLon = Math.max(er.getNWPoint().getLongitude(), minLongitude);
+        for (Lake t : lakes) {
+            drawLake(g, t);
+            features++;
+        }
 
-        double seLat = Math.max(er.getSEPoint().getLatitude(), minLatitude);
-        double seLon = Math.min(er.getSEPoint().getLongitude(), maxLongitude);
+        for (River t : rivers) {
+            drawRiver(g, t);
+            features++;
+        }
 
-        g.fillRect(Utils.round(normalizeLongitude(nwLon)),
-                   Utils.round(height-normalizeLatitude(nwLat)),
-                   Utils.round(normalizeLongitude(seLon))-Utils.round(normalizeLongitude(nwLon)),
-                   Utils.round(normalizeLatitude(nwLat))-Utils.round(normalizeLatitude(seLat)));
+        for (Path t : paths) {
+            drawPath(g, t);
+            features++;
+        }
+
+        RenderMetrics.count(RenderMetrics.FEATURES, features);
     }
 
     /**
-     * Individua le latitudini e longitudini massime e minime tra le entità da disegnare.
+     * Disegna le entità proprie dell'Esperienza: percorsi, punti
+     * d'interesse e punti utente.
+     *
+     * @param g Oggetto su cui disegnare le entità.
      */
 
-    void calcMaxLatLong() {
+    void drawOverlays(Painter g) {
+        int features = 0;
 
-        calcMaxLatLong(r.rect.getPoints());
+        for (Track t : r.tracks) {
+            drawTrack(g, t);
+            features++;
+        }
 
-        calcMaxLatLong(r.pois);
-        calcMaxLatLong(r.ups);
+        for (PointOfInterest p : r.pois) {
+            drawPOI(g, p);
+            features++;
+        }
 
-        for (Track t : r.tracks)
-            calcMaxLatLong(t.getCheckPoints());
-        for (Path t : r.paths)
-            calcMaxLatLong(t.getPoints());
-        for (River t : r.rivers)
-            calcMaxLatLong(t.getPoints());
-        for (Lake t : r.lakes)
-            calcMaxLatLong(t.getPoints());
+        for (UserPoint p : r.ups) {
+            drawUP(g, p);
+            features++;
+        }
 
+        RenderMetrics.count(RenderMetrics.FEATURES, features);
     }
 
     /**
-     * Individua le latitudini e longitudini massime e minime nella lista dei punti.
+     * Restituisce le informazioni di altitudine compattate, compattandole
+     * alla prima richiesta per ogni insieme di ElevationRect.
      *
-     * @param points Punti su cui individuare latitudine e longitudine massima e minima.
+     * @param elevations Insieme di ElevationRect.
+     * @return Restituisce l'ElevationLayer corrispondente.
      */
 
-    void calcMaxLatLong(Iterable<? extends Point> points) {
-        for (Point p : points) {
-            double lat = p.getLatitude();
-            double lon = p.getLongitude();
+    synchronized ElevationLayer elevationLayer(Iterable<ElevationRect> elevations) {
+        if (elevationLayer == null || !elevationLayer.isFor(elevations))
+            elevationLayer = new ElevationLayer(this, elevations);
+        return elevationLayer;
+    }
 
-            if (lat > maxLatitude) {
-                maxLatitude = lat;
-            } else if (lat < minLatitude) {
-                minLatitude = lat;
-            }
+    /**
+     * Disegna le informazioni di altitudine di un singolo ElevationRect.
+     *
+     * @param g Oggetto su cui disegnare.
+     * @param er ElevationRect da disegnare.
+     */
 
-            if (lon > maxLongitude) {
-                maxLongitude = lon;
-            } else if (lon < minLongitude) {
-                minLongitude = lon;
-            }
-        }
+    void drawElevation(Painter g, ElevationRect er) {
+        Rectangle b = elevationBounds(er);
+        g.fillRect(Utils.elevationShade(er.getHeight()), b.x, b.y, b.width, b.height);
+    }
+
+    /**
+     * Restituisce il rettangolo in pixel occupato da un ElevationRect,
+     * limitato alla regione entro la quale le entità vengono disegnate.
+     *
+     * @param er ElevationRect.
+     * @return Restituisce il rettangolo in pixel, di dimensioni negative se l'ElevationRect è esterno alla regione.
+     */
+
+    Rectangle elevationBounds(ElevationRect er) {
+        double nwLat = Math.min(er.getNWPoint().getLatitude(), maxLatitude);
+        double nwLon = Math.max(er.getNWPoint().getLongitude(), minLongitude);
+
+        double seLat = Math.max(er.getSEPoint().getLatitude(), minLatitude);
+        double seLon = Math.min(er.getSEPoint().getLongitude(), maxLongitude);
+
+        int west = Utils.round(normalizeLongitude(nwLon));
+        double north = normalizeLatitude(nwLat);
+        return new Rectangle(west,
+                             Utils.round(height-north),
+                             Utils.round(normalizeLongitude(seLon))-west,
+                             Utils.round(north)-Utils.round(normalizeLatitude(seLat)));
     }
 
+
     /**
-     * Disegna un icona nell'immagine.
+     * Disegna un icona nell'immagine, se interseca l'area disegnabile.
      *
+     * @param g Oggetto su cui disegnare.
      * @param i L'icona da disegnare.
      * @param x La coordinata x
      * @param x La coordinata y
      */
 
-    void drawImage(BufferedImage i, int x, int y) {
+    void drawImage(Painter g, BufferedImage i, int x, int y) {
+        Rectangle b = imageBounds(i, x, y);
+        if (g.isVisible(b.x, b.y, b.width, b.height))
+            g.drawImage(i, b.x, b.y);
+    }
+
+    /**
+     * Restituisce l'ingombro di un'icona disegnata da drawImage.
+     *
+     * @param i L'icona.
+     * @param x La coordinata x
+     * @param y La coordinata y
+     * @return Restituisce il rettangolo in pixel occupato dall'icona.
+     */
+
+    Rectangle imageBounds(BufferedImage i, int x, int y) {
         int off = (int)i.getHeight()/2;
         x = x-off;
         y = y-off;
         x = x < off ? off :x;
         y = x < off ? off :y;
-        g.drawImage(i, x, y, null);
+        return new Rectangle(x, y, i.getWidth(), i.getHeight());
     }
 
     /**
      * Disegna un punto d'interesse.
      *
+     * @param g Oggetto su cui disegnare.
      * @param p Punto d'interesse da disegnare.
      */
 
-    void drawPOI(PointOfInterest p) {
+    void drawPOI(Painter g, PointOfInterest p) {
+        double[] xy = projection.project(p);
+        drawImage(g, poiImage(p), pixelX(xy[0]), pixelY(xy[1]));
+    }
+
+    /**
+     * Restituisce l'icona di un punto d'interesse.
+     *
+     * @param p Punto d'interesse.
+     * @return Restituisce l'icona corrispondente al tipo del punto d'interesse.
+     */
+
+    BufferedImage poiImage(PointOfInterest p) {
         BufferedImage i = null;
         switch (p.getPOIType()) {
         case FOOD:
@@ -279,116 +470,148 @@ public class ImageRenderer {
             i = Utils.warning;
             break;
         }
-        drawImage(i, Utils.round(normalizeLongitude(p)), Utils.round(height-normalizeLatitude(p)));
+        return i;
     }
 
     /**
      * Disegna un punto utente.
      *
+     * @param g Oggetto su cui disegnare.
      * @param p Punto utente da disegnare.
      */
 
-    void drawUP(UserPoint p) {
-        drawImage(Utils.up, Utils.round(normalizeLongitude(p)), Utils.round(height-normalizeLatitude(p)));
+    void drawUP(Painter g, UserPoint p) {
+        double[] xy = projection.project(p);
+        drawImage(g, Utils.up, pixelX(xy[0]), pixelY(xy[1]));
     }
 
     /**
      * Disegna un lago.
      *
+     * @param g Oggetto su cui disegnare.
      * @param l Lago da disegnare.
      */
 
-    void drawLake(Lake l) {
-        drawPoly(Utils.lakeColor, l.getPoints());
+    void drawLake(Painter g, Lake l) {
+        drawPoly(g, Utils.lakeColor, projection.projectSimplified(l, l.getPoints()));
     }
 
     /**
      * Disegna un poligono riempito di un colore.
      *
+     * @param g Oggetto su cui disegnare.
      * @param color Colore di cui riempire il poligono.
-     * @param points Insieme di punti individuanti il poligono.
+     * @param xy Coordinate in pixel globali dei vertici del poligono, restituite da Projection.
      */
 
-    void drawPoly(Color color, Iterable<Point> points) {
-        int size = 0;
-        for (Point p : points) {
-            size++;
-        }
-
-        int[] x = new int[size];
-        int[] y = new int[size];
-
-        g.setColor(color);
-        int i = 0;
-        for (Point p : points) {
-            x[i] = Utils.round(normalizeLongitude(p));
-            y[i] = Utils.round(height-normalizeLatitude(p));
-            i++;
-        }
-        g.drawPolygon(x, y, size);
-        g.fillPolygon(x, y, size);
+    void drawPoly(Painter g, Color color, double[] xy) {
+        int size = toPixels(g, xy);
+        g.fillPolygon(color, g.xs, g.ys, size);
     }
 
     /**
      * Disegna un sentiero.
      *
+     * @param g Oggetto su cui disegnare.
      * @param p Sentiero da disegnare.
      */
 
-    void drawPath(Path p) {
-        ArrayList<Point> points = new ArrayList<Point>();
-        for (Point point : p.getPoints()) {
-            points.add(point);
-        }
-        drawPoly(Utils.pathColor, points);
+    void drawPath(Painter g, Path p) {
+        drawPoly(g, Utils.pathColor, projection.projectSimplified(p, p.getPoints()));
     }
 
     /**
      * Disegna un fiume.
      *
+     * @param g Oggetto su cui disegnare.
      * @param r Fiume da disegnare.
      */
 
-    void drawRiver(River r) {
-        ArrayList<Point> points = new ArrayList<Point>();
-        for (Point point : r.getPoints()) {
-            points.add(point);
-        }
-
-        drawPoly(Utils.riverColor, points);
+    void drawRiver(Painter g, River r) {
+        drawPoly(g, Utils.riverColor, projection.projectSimplified(r, r.getPoints()));
     }
 
     /**
      * Disegna un percorso.
      *
+     * @param g Oggetto su cui disegnare.
      * @param t Percorso da disegnare.
      */
 
-    void drawTrack(Track t) {
-        int size = 0;
-        for (Point p : t.getCheckPoints()) {
-            size++;
-        }
+    void drawTrack(Painter g, Track t) {
+        int size = toPixels(g, projection.project(t, t.getCheckPoints()));
+        g.drawPolyline(Utils.trackLineColor, g.xs, g.ys, size);
 
-        int[] x = new int[size];
-        int[] y = new int[size];
+        for (int i = 0; i < size; i++)
+            drawImage(g, Utils.cp, g.xs[i], g.ys[i]);
+    }
+
+    /**
+     * Converte coordinate in pixel globali in coordinate in pixel
+     * dell'immagine, scrivendole nei buffer di coordinate di un Painter.
+     *
+     * @param g Painter nei cui buffer scrivere le coordinate.
+     * @param xy Coordinate in pixel globali, restituite da Projection.
+     * @return Restituisce il numero di punti convertiti.
+     */
 
-        g.setColor(Utils.checkPointColor);
-        int i = 0;
-        for (Point p : t.getCheckPoints()) {
-            x[i] = Utils.round(normalizeLongitude(p));
-            y[i] = Utils.round(height-normalizeLatitude(p));
-            i++;
+    private int toPixels(Painter g, double[] xy) {
+        int size = xy.length / 2;
+        g.ensure(size);
+        int[] xs = g.xs;
+        int[] ys = g.ys;
+        for (int i = 0; i < size; i++) {
+            xs[i] = pixelX(xy[2*i]);
+            ys[i] = pixelY(xy[2*i+1]);
         }
+        return size;
+    }
 
-        g.setColor(Utils.trackLineColor);
-        g.drawPolyline(x, y, size);
+    /**
+     * Data una coordinata x globale in pixel, ritorna la colonna
+     * corrispondente dell'immagine.
+     *
+     * @param x Coordinata x globale in pixel
+     * @return Restituisce la colonna, contata dal bordo ovest
+     */
 
-        i = 0;
-        while (i < size) {
-            drawImage(Utils.cp, x[i], y[i]);
-            i++;
-        }
+    int pixelX(double x) {
+        return Utils.round(x-originX);
+    }
+
+    /**
+     * Data una coordinata y globale in pixel, ritorna la riga
+     * corrispondente dell'immagine.
+     *
+     * @param y Coordinata y globale in pixel, crescente verso nord
+     * @return Restituisce la riga, contata dal bordo nord
+     */
+
+    int pixelY(double y) {
+        return Utils.round(height-(y-originY));
+    }
+
+
+    /**
+     * Data una coordinata longitudinale in gradi, ritorna la sua coordinata x globale in pixel.
+     *
+     * @param lon Coordinata longitudinale in gradi
+     * @return Restituisce la coordinata x globale in pixel
+     */
+
+    double globalX(double lon) {
+        return lon*factor/180;
+    }
+
+    /**
+     * Data una coordinata latitudinale in gradi, ritorna la sua coordinata y globale in pixel.
+     *
+     * @param lat Coordinata latitudinale in gradi
+     * @return Restituisce la coordinata y globale in pixel, crescente verso nord
+     */
+
+    double globalY(double lat) {
+        return Utils.projLatitude(lat)*factor/180;
     }
 
     /**
@@ -410,7 +633,7 @@ public class ImageRenderer {
      */
 
     double normalizeLatitude(double lat) {
-        return (Utils.projLatitude(lat)-Utils.projLatitude(minLatitude))*Utils.factor/180;
+        return globalY(lat)-originY;
     }
 
     /**
@@ -432,8 +655,7 @@ public class ImageRenderer {
      */
 
     double normalizeLongitude(double lon) {
-        // lonUtils.Factor == 100 -> 1 grado per 100 pixel
-        return ((lon-minLongitude)*Utils.factor)/180;
+        return globalX(lon)-originX;
     }
 
     /**
@@ -444,7 +666,7 @@ public class ImageRenderer {
      */
 
     double YtoLat(double y) {
-        return Utils.projY(y*180/Utils.factor+Utils.projLatitude(minLatitude));
+        return Utils.projY((y+originY)*180/factor);
     }
 
 
@@ -456,45 +678,190 @@ public class ImageRenderer {
      */
 
     double XtoLon(double x) {
-        return x*180/Utils.factor+minLongitude;
+        return (x+originX)*180/factor;
     }
 
 
     /**
-     * Restituisce l'immagine renderizzata, con dimensioni multiple di Utils.quadrantHeight e Utils.quadrantWidth
+     * Restituisce l'immagine renderizzata, con dimensioni multiple di Utils.quadrantHeight e Utils.quadrantWidth.
+     * L'immagine viene disegnata alla prima chiamata.
      *
      * @return Restituisce l'immagine renderizzata
      */
 
-    BufferedImage getImage() {
+    synchronized BufferedImage getImage() {
 
         if (_img == null) {
 
-            double nwHeight = normalizeLatitude(r.rect.getNWPoint());
-            double nwWidth = normalizeLongitude(r.rect.getNWPoint());
-
-            double seHeight = normalizeLatitude(r.rect.getSEPoint());
-            double seWidth = normalizeLongitude(r.rect.getSEPoint());
-
-            int width = Utils.round(seWidth-nwWidth);
-            int height = Utils.round(nwHeight-seHeight);
+            if (img == null)
+                renderImage();
 
             _img = img;
             img = null;
 
-            if (_img.getWidth() != width || _img.getHeight() != height)
-                _img = _img.getSubimage(Utils.round(nwWidth), Utils.round(_img.getHeight()-nwHeight), width, height);
+            if (imageWidth != width || imageHeight != height) {
+                int phase = RenderMetrics.enter(RenderMetrics.CROP);
+                try {
+                    BufferedImage __img = Utils.createImage(imageWidth, imageHeight);
+                    __img.createGraphics().drawImage(_img, 0, imageHeight-height, null);
+                    _img = __img;
+                } finally {
+                    RenderMetrics.exit(phase);
+                }
+            }
+        }
+
+        return _img;
+    }
 
-            int mWidth = Utils.round(Utils.multipleOf(width, RasterQuadrant.quadrantWidth));
-            int mHeight = Utils.round(Utils.multipleOf(height, RasterQuadrant.quadrantHeight));
+    /**
+     * Disegna il solo quadrante individuato dalle coordinate, senza allocare
+     * l'immagine complessiva dell'Esperienza. Il quadrante corrisponde alla
+     * porzione dell'immagine restituita da getImage() con angolo nord-ovest
+     * in (x, getImageHeight()-y). Se Utils.baseLayer è attivo i dati di
+     * mappa vengono composti a partire dai quadranti di BaseLayer.
+     *
+     * @param x Coordinata x in pixel dell'angolo nord-ovest del quadrante
+     * @param y Coordinata y in pixel dell'angolo nord-ovest del quadrante, misurata dal bordo sud
+     * @return Restituisce l'immagine del quadrante
+     */
 
-            if (mWidth != width || mHeight != height) {
-                BufferedImage __img = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_RGB);
-                __img.createGraphics().drawImage(_img, 0, mHeight-height, null);
-                _img = __img;
+    BufferedImage renderQuadrant(int x, int y) {
+        BufferedImage quadrant = Utils.createImage(RasterQuadrant.quadrantWidth,
+                                                   RasterQuadrant.quadrantHeight);
+        int ox = x;
+        int oy = height - y;
+
+        Painter g = Utils.createPainter(quadrant);
+        g.clip(-ox, -oy, width, height);
+        if (Utils.baseLayer) {
+            int phase = RenderMetrics.enter(RenderMetrics.DRAW);
+            try {
+                BaseLayer.draw(g, factor, originX + ox, oy - originY - height,
+                               RasterQuadrant.quadrantWidth, RasterQuadrant.quadrantHeight);
+                g.translate(-ox, -oy);
+                drawOverlays(g);
+            } finally {
+                RenderMetrics.exit(phase);
             }
+        } else {
+            g.translate(-ox, -oy);
+            draw(g);
         }
+        g.dispose();
 
-        return _img;
+        return quadrant;
+    }
+
+    /**
+     * Calcola l'ingombro in pixel delle entità proprie dell'Esperienza,
+     * nell'ordine in cui vengono disegnate da drawOverlays. Ogni segmento
+     * di percorso e ogni icona viene descritto dalle sue coordinate in
+     * pixel, che sono le sole informazioni da cui dipende il disegno.
+     */
+
+    synchronized void computeOverlays() {
+        if (overlayBounds != null)
+            return;
+
+        ArrayList<Rectangle> bounds = new ArrayList<Rectangle>();
+        ArrayList<String> keys = new ArrayList<String>();
+
+        for (Track t : r.tracks) {
+            double[] xy = projection.project(t, t.getCheckPoints());
+            ArrayList<int[]> points = new ArrayList<int[]>();
+            for (int i = 0; i < xy.length; i += 2)
+                points.add(new int[] {pixelX(xy[i]), pixelY(xy[i+1])});
+
+            for (int i = 0; i < points.size(); i++) {
+                if (i == 0 && points.size() > 1)
+                    continue;
+                int[] a = points.get(Math.max(i - 1, 0));
+                int[] b = points.get(i);
+                bounds.add(new Rectangle(Math.min(a[0], b[0]) - 1, Math.min(a[1], b[1]) - 1,
+                                         Math.abs(a[0] - b[0]) + 3, Math.abs(a[1] - b[1]) + 3));
+                keys.add("s" + a[0] + "," + a[1] + "," + b[0] + "," + b[1]);
+            }
+            for (int[] p : points) {
+                bounds.add(imageBounds(Utils.cp, p[0], p[1]));
+                keys.add("c" + p[0] + "," + p[1]);
+            }
+        }
+
+        for (PointOfInterest p : r.pois) {
+            double[] xy = projection.project(p);
+            int x = pixelX(xy[0]);
+            int y = pixelY(xy[1]);
+            bounds.add(imageBounds(poiImage(p), x, y));
+            keys.add("p" + p.getPOIType() + "," + x + "," + y);
+        }
+
+        for (UserPoint p : r.ups) {
+            double[] xy = projection.project(p);
+            int x = pixelX(xy[0]);
+            int y = pixelY(xy[1]);
+            bounds.add(imageBounds(Utils.up, x, y));
+            keys.add("u" + x + "," + y);
+        }
+
+        overlayKeys = keys;
+        overlayBounds = bounds;
+    }
+
+    /**
+     * Restituisce la chiave del contenuto del quadrante individuato dalle
+     * coordinate: posizione nella griglia globale, area disegnabile,
+     * impronta della configurazione del rendering restituita da
+     * Utils.renderFingerprint() e entità dell'Esperienza che ne
+     * intersecano l'area. Due quadranti con la stessa chiave hanno lo
+     * stesso raster, per cui modificando un'Esperienza cambiano solo le
+     * chiavi dei quadranti toccati dalle entità aggiunte o rimosse.
+     *
+     * @param x Coordinata x in pixel dell'angolo nord-ovest del quadrante
+     * @param y Coordinata y in pixel dell'angolo nord-ovest del quadrante, misurata dal bordo sud
+     * @return Restituisce una String esadecimale rappresentante l'impronta SHA-1 del contenuto del quadrante.
+     */
+
+    String quadrantKey(int x, int y) {
+        computeOverlays();
+
+        Rectangle area = new Rectangle(x, height - y, RasterQuadrant.quadrantWidth, RasterQuadrant.quadrantHeight)
+            .intersection(new Rectangle(0, 0, width, height));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(Utils.renderFingerprint())
+            .append('|').append(factor)
+            .append('|').append(originX + x).append(',').append(originY + y)
+            .append('|').append(area.x).append(',').append(area.y)
+            .append(',').append(area.width).append(',').append(area.height);
+        for (int i = 0; i < overlayBounds.size(); i++)
+            if (overlayBounds.get(i).intersects(area))
+                sb.append('|').append(overlayKeys.get(i));
+
+        try {
+            return Utils.toHex(Utils.sha1(sb.toString().getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restituisce la larghezza dell'immagine restituita da getImage().
+     *
+     * @return Restituisce la larghezza in pixel, multipla di quella di un quadrante
+     */
+
+    int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Restituisce l'altezza dell'immagine restituita da getImage().
+     *
+     * @return Restituisce l'altezza in pixel, multipla di quella di un quadrante
+     */
+
+    int getImageHeight() {
+        return imageHeight;
     }
 }
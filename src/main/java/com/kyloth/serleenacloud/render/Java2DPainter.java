@@ -0,0 +1,102 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: Java2DPainter.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Painter che disegna tramite Graphics2D.
+ *
+ * @use Viene utilizzato quando Utils.scanlineRendering non è attivo, oppure per immagini che non usano la tavolozza Utils.palette; produce il rendering di riferimento con cui confrontare ScanlinePainter.
+ * @field g : Graphics2D Campo dati contenente l'oggetto su cui disegnare
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class Java2DPainter extends Painter {
+
+    /**
+     * Oggetto su cui disegnare.
+     */
+
+    private Graphics2D g;
+
+    /**
+     * Crea un nuovo Java2DPainter.
+     *
+     * @param img Immagine su cui disegnare.
+     */
+
+    Java2DPainter(BufferedImage img) {
+        this.g = img.createGraphics();
+    }
+
+    @Override
+    void translate(int dx, int dy) {
+        g.translate(dx, dy);
+    }
+
+    @Override
+    void clip(int x, int y, int width, int height) {
+        g.clipRect(x, y, width, height);
+    }
+
+    @Override
+    void fillRect(Color c, int x, int y, int width, int height) {
+        g.setColor(c);
+        g.fillRect(x, y, width, height);
+    }
+
+    @Override
+    void fillPolygon(Color c, int[] x, int[] y, int n) {
+        g.setColor(c);
+        g.drawPolygon(x, y, n);
+        g.fillPolygon(x, y, n);
+    }
+
+    @Override
+    void drawPolyline(Color c, int[] x, int[] y, int n) {
+        g.setColor(c);
+        g.drawPolyline(x, y, n);
+    }
+
+    @Override
+    void drawImage(BufferedImage i, int x, int y) {
+        g.drawImage(i, x, y, null);
+    }
+
+    @Override
+    boolean isVisible(int x, int y, int width, int height) {
+        return g.hitClip(x, y, width, height);
+    }
+
+    @Override
+    void dispose() {
+        g.dispose();
+    }
+}
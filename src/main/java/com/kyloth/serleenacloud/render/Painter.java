@@ -0,0 +1,156 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: Painter.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * Superficie su cui ImageRenderer e BaseLayer disegnano le entità.
+ *
+ * @use Viene creato da Utils.createPainter per ogni immagine da disegnare e utilizzato da un solo thread. Le coordinate sono espresse in pixel, nel sistema di riferimento traslato da translate() e limitato da clip(); i poligoni vengono disegnati con il bordo e riempiti. Mette a disposizione dei buffer di coordinate riutilizzabili, in modo che ImageRenderer non debba allocare array per ogni entità.
+ * @field xs : int[] Campo dati contenente il buffer delle coordinate x
+ * @field ys : int[] Campo dati contenente il buffer delle coordinate y
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+abstract class Painter {
+
+    /**
+     * Buffer delle coordinate x.
+     */
+
+    int[] xs = new int[64];
+
+    /**
+     * Buffer delle coordinate y.
+     */
+
+    int[] ys = new int[64];
+
+    /**
+     * Garantisce che i buffer di coordinate possano contenere il numero
+     * di punti indicato, mantenendo quelli già presenti.
+     *
+     * @param n Numero di punti.
+     */
+
+    void ensure(int n) {
+        if (n > xs.length) {
+            int length = Math.max(n, xs.length * 2);
+            int[] x = new int[length];
+            int[] y = new int[length];
+            System.arraycopy(xs, 0, x, 0, xs.length);
+            System.arraycopy(ys, 0, y, 0, ys.length);
+            xs = x;
+            ys = y;
+        }
+    }
+
+    /**
+     * Trasla il sistema di riferimento.
+     *
+     * @param dx Traslazione orizzontale in pixel.
+     * @param dy Traslazione verticale in pixel.
+     */
+
+    abstract void translate(int dx, int dy);
+
+    /**
+     * Limita il disegno all'intersezione tra l'area attuale e un
+     * rettangolo, espresso nel sistema di riferimento attuale.
+     *
+     * @param x Coordinata x dell'angolo nord-ovest.
+     * @param y Coordinata y dell'angolo nord-ovest.
+     * @param width Larghezza in pixel.
+     * @param height Altezza in pixel.
+     */
+
+    abstract void clip(int x, int y, int width, int height);
+
+    /**
+     * Riempie un rettangolo di un colore.
+     *
+     * @param c Colore di riempimento.
+     * @param x Coordinata x dell'angolo nord-ovest.
+     * @param y Coordinata y dell'angolo nord-ovest.
+     * @param width Larghezza in pixel.
+     * @param height Altezza in pixel.
+     */
+
+    abstract void fillRect(Color c, int x, int y, int width, int height);
+
+    /**
+     * Disegna il bordo di un poligono e lo riempie di un colore.
+     *
+     * @param c Colore del poligono.
+     * @param x Coordinate x dei vertici.
+     * @param y Coordinate y dei vertici.
+     * @param n Numero di vertici.
+     */
+
+    abstract void fillPolygon(Color c, int[] x, int[] y, int n);
+
+    /**
+     * Disegna una spezzata di spessore un pixel.
+     *
+     * @param c Colore della spezzata.
+     * @param x Coordinate x dei vertici.
+     * @param y Coordinate y dei vertici.
+     * @param n Numero di vertici.
+     */
+
+    abstract void drawPolyline(Color c, int[] x, int[] y, int n);
+
+    /**
+     * Disegna un'immagine.
+     *
+     * @param i Immagine da disegnare.
+     * @param x Coordinata x dell'angolo nord-ovest.
+     * @param y Coordinata y dell'angolo nord-ovest.
+     */
+
+    abstract void drawImage(BufferedImage i, int x, int y);
+
+    /**
+     * Indica se un rettangolo interseca l'area in cui è possibile disegnare.
+     *
+     * @param x Coordinata x dell'angolo nord-ovest.
+     * @param y Coordinata y dell'angolo nord-ovest.
+     * @param width Larghezza in pixel.
+     * @param height Altezza in pixel.
+     * @return Restituisce true se almeno un pixel del rettangolo è disegnabile.
+     */
+
+    abstract boolean isVisible(int x, int y, int width, int height);
+
+    /**
+     * Libera le risorse utilizzate.
+     */
+
+    abstract void dispose();
+}
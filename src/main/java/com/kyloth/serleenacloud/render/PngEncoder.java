@@ -0,0 +1,195 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: PngEncoder.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+
+/**
+ * Codificatore PNG per immagini a colori indicizzati.
+ *
+ * @use Viene utilizzato da RasterQuadrant e Utils per codificare i quadranti, disegnati su immagini con la tavolozza Utils.palette. Scrive direttamente gli indici dei pixel, senza conversioni di colore, limitando la tavolozza ai soli colori presenti nell'immagine e riducendo di conseguenza i bit per pixel; ogni thread riutilizza lo stesso Deflater. Le immagini di altro tipo vengono codificate con ImageIO.
+ * @field SIGNATURE : byte[] Campo dati statico contenente la firma di un file PNG
+ * @field deflaters : ThreadLocal<Deflater> Campo dati statico contenente il Deflater di ogni thread
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class PngEncoder {
+
+    /**
+     * Firma di un file PNG.
+     */
+
+    private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /**
+     * Deflater di ogni thread, con livello di compressione Utils.pngCompressionLevel.
+     */
+
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Utils.pngCompressionLevel);
+        }
+    };
+
+    /**
+     * Codifica un'immagine in formato PNG.
+     *
+     * @param img Immagine da codificare.
+     * @return Restituisce un array di byte contenente l'immagine PNG.
+     * @throws IOException
+     */
+
+    static byte[] encode(BufferedImage img) throws IOException {
+        if (!isIndexed(img)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ImageIO.write(img, "png", baos);
+            return baos.toByteArray();
+        }
+
+        int width = img.getWidth();
+        int height = img.getHeight();
+        IndexColorModel cm = (IndexColorModel)img.getColorModel();
+        PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel)img.getRaster().getSampleModel();
+        byte[] pixels = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+        int stride = sm.getScanlineStride();
+        int offset = img.getRaster().getDataBuffer().getOffset()
+            - img.getRaster().getSampleModelTranslateY() * stride
+            - img.getRaster().getSampleModelTranslateX();
+
+        int[] map = new int[cm.getMapSize()];
+        Arrays.fill(map, -1);
+        int colors = 0;
+        for (int y = 0; y < height; y++)
+            for (int i = offset + y * stride, end = i + width; i < end; i++)
+                if (map[pixels[i] & 0xff] < 0)
+                    map[pixels[i] & 0xff] = colors++;
+
+        int depth = colors <= 2 ? 1 : colors <= 4 ? 2 : colors <= 16 ? 4 : 8;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(width * height / 4);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(depth);
+        h.writeByte(3);
+        h.writeByte(0);
+        h.writeByte(0);
+        h.writeByte(0);
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+        byte[] palette = new byte[colors * 3];
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] >= 0) {
+                palette[3*map[i]] = (byte)cm.getRed(i);
+                palette[3*map[i]+1] = (byte)cm.getGreen(i);
+                palette[3*map[i]+2] = (byte)cm.getBlue(i);
+            }
+        }
+        writeChunk(out, "PLTE", palette, palette.length);
+
+        int perByte = 8 / depth;
+        int rowLength = (width + perByte - 1) / perByte + 1;
+        byte[] raw = new byte[rowLength * height];
+        for (int y = 0; y < height; y++) {
+            int src = offset + y * stride;
+            int dst = y * rowLength + 1;
+            for (int x = 0; x < width; x++) {
+                int shift = 8 - depth * (x % perByte + 1);
+                raw[dst + x / perByte] |= map[pixels[src + x] & 0xff] << shift;
+            }
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buf = new byte[Math.max(raw.length / 8, 1024)];
+        ByteArrayOutputStream data = new ByteArrayOutputStream(buf.length);
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            data.write(buf, 0, n);
+        }
+        writeChunk(out, "IDAT", data.toByteArray(), data.size());
+
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Indica se un'immagine può essere codificata come PNG a colori indicizzati.
+     *
+     * @param img Immagine da verificare.
+     * @return Restituisce true se l'immagine usa un byte per pixel e una tavolozza.
+     */
+
+    static boolean isIndexed(BufferedImage img) {
+        return img.getColorModel() instanceof IndexColorModel
+            && img.getColorModel().getPixelSize() == 8
+            && img.getRaster().getDataBuffer() instanceof DataBufferByte
+            && img.getRaster().getSampleModel() instanceof PixelInterleavedSampleModel;
+    }
+
+    /**
+     * Scrive un chunk PNG.
+     *
+     * @param out Stream su cui scrivere.
+     * @param type Tipo del chunk.
+     * @param data Contenuto del chunk.
+     * @param length Lunghezza del contenuto.
+     * @throws IOException
+     */
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] t = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(t);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(t);
+        out.write(data, 0, length);
+        out.writeInt((int)crc.getValue());
+    }
+}
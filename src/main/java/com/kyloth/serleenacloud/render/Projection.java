@@ -0,0 +1,195 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: Projection.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Proiezione di Mercatore delle coordinate delle entità in pixel globali.
+ *
+ * @use Viene utilizzata da ImageRenderer per proiettare una sola volta le coordinate di ogni entità, sia per il disegno dei quadranti sia per il calcolo del loro ingombro. Le coordinate vengono raccolte in array di double e proiettate con un ciclo per le longitudini e uno per le latitudini; il risultato viene conservato per tutta la durata del rendering, indicizzato per identità dell'entità.
+ * @field factor : int Campo dati rappresentante il fattore moltiplicativo per la conversione da gradi a pixel
+ * @field cache : IdentityHashMap<Object, double[]> Campo dati contenente le coordinate già proiettate di ogni entità
+ * @field simplified : IdentityHashMap<Object, double[]> Campo dati contenente le coordinate già proiettate e semplificate di ogni entità
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class Projection {
+
+    /**
+     * Fattore moltiplicativo per la conversione da gradi a pixel.
+     */
+
+    private int factor;
+
+    /**
+     * Coordinate già proiettate di ogni entità.
+     */
+
+    private IdentityHashMap<Object, double[]> cache = new IdentityHashMap<Object, double[]>();
+
+    /**
+     * Coordinate già proiettate e semplificate di ogni entità.
+     */
+
+    private IdentityHashMap<Object, double[]> simplified = new IdentityHashMap<Object, double[]>();
+
+    /**
+     * Crea una nuova Projection.
+     *
+     * @param factor Fattore moltiplicativo per la conversione da gradi a pixel.
+     */
+
+    Projection(int factor) {
+        this.factor = factor;
+    }
+
+    /**
+     * Restituisce le coordinate in pixel globali dei punti di un'entità,
+     * proiettandole alla prima richiesta.
+     *
+     * @param key Entità a cui appartengono i punti.
+     * @param points Insieme dei punti dell'entità.
+     * @return Restituisce un array con le coordinate x e y di ogni punto, alternate; y è crescente verso nord.
+     */
+
+    double[] project(Object key, Iterable<? extends Point> points) {
+        synchronized (cache) {
+            double[] xy = cache.get(key);
+            if (xy != null)
+                return xy;
+        }
+
+        double[] xy = collect(points);
+        project(xy);
+
+        synchronized (cache) {
+            cache.put(key, xy);
+        }
+        return xy;
+    }
+
+    /**
+     * Restituisce le coordinate in pixel globali dei punti di un'entità,
+     * semplificate con tolleranza Utils.simplifyTolerance. Le entità con
+     * ingombro inferiore a Utils.minFeatureSize vengono scartate. Le
+     * coordinate semplificate vengono conservate separatamente da quelle
+     * restituite da project().
+     *
+     * @param key Entità a cui appartengono i punti.
+     * @param points Insieme dei punti dell'entità.
+     * @return Restituisce un array con le coordinate x e y dei punti mantenuti, alternate; vuoto se l'entità è stata scartata.
+     */
+
+    double[] projectSimplified(Object key, Iterable<? extends Point> points) {
+        synchronized (simplified) {
+            double[] xy = simplified.get(key);
+            if (xy != null)
+                return xy;
+        }
+
+        double[] xy = collect(points);
+        project(xy);
+        if (Simplifier.isSmallerThan(xy, Utils.minFeatureSize))
+            xy = new double[0];
+        else
+            xy = Simplifier.simplify(xy, Utils.simplifyTolerance);
+
+        synchronized (simplified) {
+            simplified.put(key, xy);
+        }
+        return xy;
+    }
+
+    /**
+     * Restituisce le coordinate in pixel globali di un punto,
+     * proiettandole alla prima richiesta.
+     *
+     * @param p Punto da proiettare.
+     * @return Restituisce un array con le coordinate x e y del punto; y è crescente verso nord.
+     */
+
+    double[] project(Point p) {
+        synchronized (cache) {
+            double[] xy = cache.get(p);
+            if (xy != null)
+                return xy;
+        }
+
+        double[] xy = {p.getLongitude(), p.getLatitude()};
+        project(xy);
+
+        synchronized (cache) {
+            cache.put(p, xy);
+        }
+        return xy;
+    }
+
+    /**
+     * Raccoglie le coordinate in gradi di un insieme di punti.
+     *
+     * @param points Insieme di punti.
+     * @return Restituisce un array con longitudine e latitudine di ogni punto, alternate.
+     */
+
+    private static double[] collect(Iterable<? extends Point> points) {
+        int n = 0;
+        double[] xy = new double[16];
+        for (Point p : points) {
+            if (n == xy.length) {
+                double[] a = new double[n * 2];
+                System.arraycopy(xy, 0, a, 0, n);
+                xy = a;
+            }
+            xy[n++] = p.getLongitude();
+            xy[n++] = p.getLatitude();
+        }
+        if (n != xy.length) {
+            double[] a = new double[n];
+            System.arraycopy(xy, 0, a, 0, n);
+            xy = a;
+        }
+        return xy;
+    }
+
+    /**
+     * Proietta sul posto un array di coordinate in gradi, con longitudini
+     * e latitudini alternate. Il risultato coincide con quello di
+     * ImageRenderer.globalX() e ImageRenderer.globalY().
+     *
+     * @param xy Array di coordinate da proiettare.
+     */
+
+    void project(double[] xy) {
+        for (int i = 0; i < xy.length; i += 2)
+            xy[i] = xy[i]*factor/180;
+        for (int i = 1; i < xy.length; i += 2)
+            xy[i] = Utils.projLatitude(xy[i])*factor/180;
+    }
+}
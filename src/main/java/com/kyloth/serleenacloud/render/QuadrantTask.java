@@ -0,0 +1,103 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: QuadrantTask.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Task fork-join per il rendering di un insieme di RasterQuadrant.
+ *
+ * @use Viene utilizzato da Renderer per disegnare e codificare in parallelo i quadranti di un'Esperienza. L'intervallo di quadranti viene diviso a metà finché non contiene un solo quadrante, che viene disegnato e codificato; i quadranti mantengono l'ordine della lista originale.
+ * @field quadrants : List<RasterQuadrant> Campo dati contenente i quadranti da renderizzare
+ * @field from : int Campo dati rappresentante l'indice del primo quadrante dell'intervallo
+ * @field to : int Campo dati rappresentante l'indice successivo all'ultimo quadrante dell'intervallo
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class QuadrantTask extends RecursiveAction {
+
+    /**
+     * Quadranti da renderizzare.
+     */
+
+    private List<RasterQuadrant> quadrants;
+
+    /**
+     * Indice del primo quadrante dell'intervallo.
+     */
+
+    private int from;
+
+    /**
+     * Indice successivo all'ultimo quadrante dell'intervallo.
+     */
+
+    private int to;
+
+    /**
+     * Crea un nuovo QuadrantTask.
+     *
+     * @param quadrants Quadranti da renderizzare.
+     * @param from Indice del primo quadrante dell'intervallo.
+     * @param to Indice successivo all'ultimo quadrante dell'intervallo.
+     */
+
+    QuadrantTask(List<RasterQuadrant> quadrants, int from, int to) {
+        this.quadrants = quadrants;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Renderizza i quadranti dell'intervallo. La codifica fallita di un
+     * quadrante viene contata in RenderMetrics e sollevata come
+     * UncheckedIOException, lasciando a Renderer.getRasterQuadrants()
+     * la decisione su come proseguire.
+     */
+
+    @Override
+    protected void compute() {
+        if (to - from > 1) {
+            int mid = (from + to) >>> 1;
+            invokeAll(new QuadrantTask(quadrants, from, mid),
+                      new QuadrantTask(quadrants, mid, to));
+            return;
+        }
+
+        if (to > from) {
+            try {
+                quadrants.get(from).getPng();
+            } catch (IOException e) {
+                RenderMetrics.count(RenderMetrics.ENCODE_FAILURES, 1);
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -25,11 +25,11 @@
 
 package com.kyloth.serleenacloud.render;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import java.util.Base64;
-import javax.imageio.ImageIO;
+import java.util.concurrent.Callable;
 import java.awt.image.BufferedImage;
 
 import com.kyloth.serleenacloud.datamodel.geometry.Rect;
@@ -38,7 +38,12 @@ import com.kyloth.serleenacloud.datamodel.geometry.Point;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 /**
  * Classe per la gestione di un raster rappresentante una porzione di mappa.
@@ -48,8 +53,13 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
  * @field ir : ImageRenderer Campo dati contenente l'oggetto rappresentante il rendering dell'Esperienza
  * @field x : int Campo dati rappresentante la coordinata x in pixel dell'angolo nord-ovest del quadrante
  * @field y : int Campo dati rappresentante la coordinata y in pixel dell'angolo nord-ovest del quadrante
+ * @field png : byte[] Campo dati contenente l'immagine PNG del quadrante, se già renderizzata
+ * @field hash : String Campo dati contenente l'impronta del raster del quadrante, se già calcolata
+ * @field vector : byte[] Campo dati contenente i dati vettoriali del quadrante, se già codificati
+ * @field image : BufferedImage Campo dati contenente il raster del quadrante, in attesa di essere codificato
  * @field quadrantHeight : int Campo dati statico contentente l'altezza in pixel di un quadrante
  * @field quadrantWidth : int Campo dati statico contentente la larghezza in pixel di un quadrante
+ * @field log : Logger Campo dati statico contenente il logger degli errori di codifica
  *
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
@@ -75,6 +85,31 @@ public class RasterQuadrant {
 
     int y;
 
+    /**
+     * Immagine PNG del quadrante, se già renderizzata.
+     */
+
+    byte[] png;
+
+    /**
+     * Impronta del raster del quadrante, se già calcolata.
+     */
+
+    String hash;
+
+    /**
+     * Dati vettoriali del quadrante, se già codificati.
+     */
+
+    byte[] vector;
+
+    /**
+     * Raster del quadrante disegnato per calcolarne l'impronta, in attesa
+     * di essere codificato.
+     */
+
+    private BufferedImage image;
+
     /**
      * Altezza in pixel di un quadrante.
      */
@@ -87,6 +122,12 @@ public class RasterQuadrant {
 
     static int quadrantWidth;
 
+    /**
+     * Logger degli errori di codifica.
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(RasterQuadrant.class);
+
     static {
         ApplicationContext context = new ClassPathXmlApplicationContext("Spring-Module.xml");
 
@@ -120,6 +161,38 @@ public class RasterQuadrant {
         this.y = y;
     }
 
+    /**
+     * Restituisce il livello di zoom del quadrante.
+     *
+     * @return Restituisce il livello di zoom; il fattore di conversione è Utils.factor / 2^zoom.
+     */
+
+    public int getZoom() {
+        return ir.r.zoom;
+    }
+
+    /**
+     * Restituisce la colonna del quadrante nella griglia dei quadranti
+     * dell'Esperienza, a partire da ovest.
+     *
+     * @return Restituisce l'indice della colonna del quadrante.
+     */
+
+    public int getColumn() {
+        return x / quadrantWidth;
+    }
+
+    /**
+     * Restituisce la riga del quadrante nella griglia dei quadranti
+     * dell'Esperienza, a partire da sud.
+     *
+     * @return Restituisce l'indice della riga del quadrante.
+     */
+
+    public int getRow() {
+        return y / quadrantHeight - 1;
+    }
+
     /**
      * Restituisce la regione di mappa relativa al quadrante.
      *
@@ -128,13 +201,10 @@ public class RasterQuadrant {
 
     public Rect getBoundingRect() {
 
-        int _x = x + Utils.round(ir.normalizeLongitude(ir.r.rect.getNWPoint()));
-        int _y = y + Utils.round(ir.normalizeLatitude(ir.r.rect.getSEPoint()));
-
-        Point nw = new Point(ir.YtoLat(_y),
-                             ir.XtoLon(_x));
-        Point se = new Point(ir.YtoLat(_y-quadrantHeight),
-                             ir.XtoLon(_x+quadrantWidth));
+        Point nw = new Point(ir.YtoLat(y),
+                             ir.XtoLon(x));
+        Point se = new Point(ir.YtoLat(y-quadrantHeight),
+                             ir.XtoLon(x+quadrantWidth));
 
         return new Rect(nw, se);
     }
@@ -160,7 +230,7 @@ public class RasterQuadrant {
     @JsonIgnore
     public RasterQuadrant getNorth() {
         int newY = y+quadrantHeight;
-        return newY > ir.getImage().getHeight() ? null : new RasterQuadrant(ir, x, newY);
+        return newY > ir.getImageHeight() ? null : new RasterQuadrant(ir, x, newY);
     }
 
     /**
@@ -172,7 +242,7 @@ public class RasterQuadrant {
     @JsonIgnore
     public RasterQuadrant getEast() {
         int newX = x+quadrantWidth;
-        return newX >= ir.getImage().getWidth() ? null : new RasterQuadrant(ir, newX, y);
+        return newX >= ir.getImageWidth() ? null : new RasterQuadrant(ir, newX, y);
     }
 
     /**
@@ -189,31 +259,313 @@ public class RasterQuadrant {
 
     /**
      * Restituisce la porzione di mappa renderizzata relativa al quadrante.
+     * Se Utils.inlineTiles non è attivo l'immagine non viene inclusa nel
+     * JSON dell'Esperienza e va richiesta separatamente tramite getPng().
      *
-     * @return Restituisce una String rappresentante l'encoding base64 di un'immagine PNG rappresentante la porzione di mappa relativa al quadrante.
+     * @return Restituisce una String rappresentante l'encoding base64 di un'immagine PNG rappresentante la porzione di mappa relativa al quadrante, o null se l'immagine non va inclusa.
      */
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public String getImage() {
+        if (!Utils.inlineTiles || Utils.vectorTiles)
+            return null;
+
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(currentQuadrant(), "png", baos);
-            return Base64.getEncoder().encodeToString(baos.toByteArray());
+            return Base64.getEncoder().encodeToString(getPng());
         } catch (Throwable e) {
             return null;
         }
     }
 
+    /**
+     * Restituisce l'impronta del raster del quadrante. Quadranti con lo
+     * stesso raster hanno la stessa impronta, che permette di richiederne
+     * l'immagine una sola volta; i quadranti contenenti solo il colore di
+     * sfondo condividono un'unica impronta.
+     *
+     * @return Restituisce una String esadecimale rappresentante l'impronta SHA-1 del raster.
+     */
+
+    @JsonIgnore
+    public synchronized String getHash() {
+        if (hash != null)
+            return hash;
+
+        final String key = ir.quadrantKey(x, y);
+        byte[] digest = findDigest(key);
+        if (digest == null) {
+            long pixels = Utils.tileRendering || ir._img != null
+                ? (long)quadrantWidth * quadrantHeight
+                : 2L * ir.getImageWidth() * ir.getImageHeight();
+            digest = RenderScheduler.run(key, pixels, new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return render(key);
+                }
+            });
+        }
+        hash = Utils.toHex(digest);
+        return hash;
+    }
+
+    /**
+     * Restituisce l'impronta del raster del quadrante da includere nel
+     * JSON dell'Esperienza. Se Utils.vectorTiles è attivo l'impronta non
+     * viene inclusa, in modo che il raster non venga disegnato.
+     *
+     * @return Restituisce l'impronta restituita da getHash(), o null se non va inclusa.
+     */
+
+    @JsonGetter("hash")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getJsonHash() {
+        return Utils.vectorTiles ? null : getHash();
+    }
+
+    /**
+     * Restituisce i dati vettoriali del quadrante, codificati da
+     * VectorTileEncoder alla prima richiesta.
+     *
+     * @return Restituisce un array di byte contenente i dati vettoriali.
+     */
+
+    @JsonIgnore
+    public synchronized byte[] getVectorData() {
+        if (vector == null) {
+            int phase = RenderMetrics.enter(RenderMetrics.ENCODE);
+            try {
+                vector = VectorTileEncoder.encode(ir, x, y);
+            } finally {
+                RenderMetrics.exit(phase);
+            }
+            RenderMetrics.count(RenderMetrics.TILES, 1);
+            RenderMetrics.count(RenderMetrics.BYTES, vector.length);
+        }
+        return vector;
+    }
+
+    /**
+     * Restituisce l'impronta dei dati vettoriali del quadrante.
+     *
+     * @return Restituisce una String esadecimale rappresentante l'impronta SHA-1 dei dati vettoriali.
+     */
+
+    @JsonIgnore
+    public String getVectorHash() {
+        return Utils.toHex(Utils.sha1(getVectorData()));
+    }
+
+    /**
+     * Restituisce i dati vettoriali del quadrante da includere nel JSON
+     * dell'Esperienza, se Utils.vectorTiles è attivo.
+     *
+     * @return Restituisce una String rappresentante l'encoding base64 dei dati vettoriali, o null se non vanno inclusi.
+     */
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getVector() {
+        if (!Utils.vectorTiles)
+            return null;
+
+        return Base64.getEncoder().encodeToString(getVectorData());
+    }
+
+    /**
+     * Cerca l'impronta del raster di un quadrante nella cache delle
+     * impronte e nell'archivio su file.
+     *
+     * @param key Chiave del contenuto del quadrante.
+     * @return Restituisce l'impronta del raster, o null se non presente.
+     */
+
+    private byte[] findDigest(String key) {
+        byte[] digest = Renderer.tileIndex.get(key);
+        if (digest == null && Renderer.tileStore != null) {
+            digest = Renderer.tileStore.get("i/" + key);
+            if (digest != null)
+                Renderer.tileIndex.put(key, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Restituisce la chiave dell'archivio su file dell'immagine PNG di un
+     * raster. Le immagini dipendono anche dalla configurazione del
+     * rendering, ad esempio dal livello di compressione, per cui la
+     * chiave ne contiene l'impronta.
+     *
+     * @param hash Impronta del raster del quadrante.
+     * @return Restituisce la chiave dell'immagine PNG.
+     */
+
+    private static String pngKey(String hash) {
+        return "p/" + Utils.renderFingerprint() + "/" + hash;
+    }
+
+    /**
+     * Disegna il quadrante, ne calcola l'impronta e lo codifica, se non
+     * è già stato fatto da un rendering concluso nel frattempo. L'impronta
+     * viene inserita nella cache delle impronte solo dopo che l'immagine
+     * PNG è stata inserita nella cache dei quadranti; se la codifica
+     * fallisce il raster viene conservato per getPng().
+     *
+     * @param key Chiave del contenuto del quadrante.
+     * @return Restituisce l'impronta del raster.
+     */
+
+    private byte[] render(String key) {
+        byte[] digest = findDigest(key);
+        if (digest != null)
+            return digest;
+
+        RenderMetrics.begin();
+        try {
+            BufferedImage img = currentQuadrant();
+            int phase = RenderMetrics.enter(RenderMetrics.DIGEST);
+            int[] pixels;
+            boolean empty;
+            try {
+                pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+                empty = Utils.isEmptyTile(pixels);
+                digest = empty ? Utils.emptyTileDigest() : Utils.rasterDigest(pixels);
+            } finally {
+                RenderMetrics.exit(phase);
+            }
+            if (!empty) {
+                png = Renderer.tileCache.get(Utils.toHex(digest));
+                if (png == null) {
+                    image = img;
+                    try {
+                        loadPng(Utils.toHex(digest));
+                    } catch (IOException e) {
+                        log.warn("Cannot encode quadrant {},{} of experience {}", getColumn(), getRow(), ir.r.id, e);
+                    }
+                }
+            }
+        } finally {
+            RenderMetrics.end(ir.r.id, ir.r.zoom, getBoundingRect());
+        }
+
+        Renderer.tileIndex.put(key, digest);
+        if (Renderer.tileStore != null)
+            Renderer.tileStore.put("i/" + key, digest);
+        return digest;
+    }
+
+    /**
+     * Restituisce l'immagine PNG relativa al quadrante. Ogni raster
+     * viene codificato una sola volta e servito dalla cache dei quadranti,
+     * o dall'archivio su file se presente, finché il contenuto
+     * dell'Esperienza non cambia; i quadranti vuoti non vengono
+     * codificati. L'immagine viene conservata nel quadrante.
+     *
+     * @return Restituisce un array di byte contenente l'immagine PNG.
+     * @throws IOException
+     */
+
+    @JsonIgnore
+    public synchronized byte[] getPng() throws IOException {
+        byte[] png = cachedPng();
+        if (png != null)
+            return png;
+
+        return loadPng(getHash());
+    }
+
+    /**
+     * Restituisce l'immagine PNG del raster con l'impronta indicata,
+     * cercandola nell'archivio su file o codificandola, e la inserisce
+     * nella cache dei quadranti.
+     *
+     * @param hash Impronta del raster del quadrante.
+     * @return Restituisce un array di byte contenente l'immagine PNG.
+     * @throws IOException
+     */
+
+    private byte[] loadPng(String hash) throws IOException {
+        byte[] png = null;
+        if (Renderer.tileStore != null)
+            png = Renderer.tileStore.get(pngKey(hash));
+        if (png == null) {
+            BufferedImage img = image != null ? image : currentQuadrant();
+            int phase = RenderMetrics.enter(RenderMetrics.ENCODE);
+            try {
+                png = PngEncoder.encode(img);
+            } finally {
+                RenderMetrics.exit(phase);
+            }
+            RenderMetrics.count(RenderMetrics.TILES, 1);
+            RenderMetrics.count(RenderMetrics.BYTES, png.length);
+            if (Renderer.tileStore != null)
+                Renderer.tileStore.put(pngKey(hash), png);
+        }
+        Renderer.tileCache.put(hash, png);
+        image = null;
+        this.png = png;
+        return png;
+    }
+
+    /**
+     * Scrive l'immagine PNG relativa al quadrante su uno stream. Se
+     * l'immagine non è in memoria ma è presente nell'archivio su file
+     * viene letta dal file, senza essere inserita nella cache dei
+     * quadranti.
+     *
+     * @param out Stream su cui scrivere l'immagine.
+     * @throws IOException
+     */
+
+    public void writePng(OutputStream out) throws IOException {
+        byte[] png = cachedPng();
+        if (png == null && Renderer.tileStore != null
+            && Renderer.tileStore.writeTo(pngKey(getHash()), out))
+            return;
+        out.write(png != null ? png : getPng());
+    }
+
+    /**
+     * Restituisce l'immagine PNG relativa al quadrante se già presente in
+     * memoria, nel quadrante o nella cache dei quadranti.
+     *
+     * @return Restituisce un array di byte contenente l'immagine PNG, o null se non presente.
+     * @throws IOException
+     */
+
+    private synchronized byte[] cachedPng() throws IOException {
+        if (png != null)
+            return png;
+
+        String hash = getHash();
+        byte[] png = hash.equals(Utils.toHex(Utils.emptyTileDigest())) ? Utils.emptyTile() : Renderer.tileCache.get(hash);
+        if (png != null) {
+            image = null;
+            this.png = png;
+        }
+        return png;
+    }
+
     /**
      * Restituisce la porzione di mappa renderizzata relativa al quadrante.
+     * Se Utils.tileRendering è attivo il quadrante viene disegnato su
+     * richiesta, altrimenti viene ritagliato dall'immagine complessiva.
      *
      * @return Restituisce una BufferedImage rappresentante la porzione di mappa relativa al quadrante.
      */
 
     BufferedImage currentQuadrant() {
-        return ir.getImage().getSubimage(ir.getImage().getMinX()+ x,
-                                         ir.getImage().getHeight()-y,
-                                         quadrantWidth,
-                                         quadrantHeight);
+        if (Utils.tileRendering)
+            return ir.renderQuadrant(x, y);
+
+        BufferedImage img = ir.getImage();
+        int phase = RenderMetrics.enter(RenderMetrics.CROP);
+        try {
+            return img.getSubimage(img.getMinX()+ x,
+                                   img.getHeight()-y,
+                                   quadrantWidth,
+                                   quadrantHeight);
+        } finally {
+            RenderMetrics.exit(phase);
+        }
     }
 
 }
@@ -0,0 +1,356 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RenderMetrics.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tempi e contatori delle fasi del rendering.
+ *
+ * @use Viene utilizzato da Renderer, ImageRenderer, BaseLayer, RasterQuadrant e Utils per misurare il tempo speso in ogni fase del rendering: interrogazione dei DAO, disegno, ritaglio dall'immagine complessiva, calcolo dell'impronta e codifica PNG. Ogni thread tiene traccia della fase in corso; entrando in una fase il tempo trascorso viene attribuito alla fase precedente, per cui le fasi annidate non vengono contate due volte. Tempi e contatori vengono accumulati sia nei totali, esposti da Renderer.getMetrics(), sia nella traccia del rendering del quadrante in corso, che viene registrata nel log se la sua durata supera Utils.slowRenderMillis.
+ * @field PHASES : String[] Campo dati statico contenente il nome di ogni fase
+ * @field COUNTERS : String[] Campo dati statico contenente il nome di ogni contatore
+ * @field log : Logger Campo dati statico contenente il logger dei rendering lenti
+ * @field SYSTEM_CLOCK : Clock Campo dati statico contenente l'orologio basato su System.nanoTime()
+ * @field clock : Clock Campo dati statico contenente l'orologio da cui vengono letti gli istanti, sostituibile nei test
+ * @field nanos : AtomicLongArray Campo dati statico contenente il tempo complessivo di ogni fase, in nanosecondi
+ * @field calls : AtomicLongArray Campo dati statico contenente il numero di ingressi in ogni fase
+ * @field counts : AtomicLongArray Campo dati statico contenente il valore complessivo di ogni contatore
+ * @field renders : AtomicLongArray Campo dati statico contenente il numero di rendering di quadranti e di rendering lenti
+ * @field traces : ThreadLocal<long[]> Campo dati statico contenente per ogni thread la fase in corso, l'istante dell'ultimo cambio di fase, l'inizio del rendering e i tempi, gli ingressi e i contatori del rendering in corso
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class RenderMetrics {
+
+    /**
+     * Fase non attribuita ad alcuna delle altre.
+     */
+
+    static final int OTHER = 0;
+
+    /**
+     * Interrogazione dei DAO per i dati di mappa.
+     */
+
+    static final int LOAD = 1;
+
+    /**
+     * Disegno delle entità.
+     */
+
+    static final int DRAW = 2;
+
+    /**
+     * Ritaglio dei quadranti dall'immagine complessiva.
+     */
+
+    static final int CROP = 3;
+
+    /**
+     * Calcolo dell'impronta del raster.
+     */
+
+    static final int DIGEST = 4;
+
+    /**
+     * Codifica PNG.
+     */
+
+    static final int ENCODE = 5;
+
+    /**
+     * Nome di ogni fase.
+     */
+
+    private static final String[] PHASES = {"other", "load", "draw", "crop", "digest", "encode"};
+
+    /**
+     * Entità disegnate.
+     */
+
+    static final int FEATURES = 0;
+
+    /**
+     * Pixel delle immagini allocate.
+     */
+
+    static final int PIXELS = 1;
+
+    /**
+     * Quadranti codificati in PNG.
+     */
+
+    static final int TILES = 2;
+
+    /**
+     * Byte prodotti dalla codifica PNG.
+     */
+
+    static final int BYTES = 3;
+
+    /**
+     * Codifiche PNG fallite durante il rendering parallelo.
+     */
+
+    static final int ENCODE_FAILURES = 4;
+
+    /**
+     * Nome di ogni contatore.
+     */
+
+    private static final String[] COUNTERS = {"features", "pixels", "tiles", "bytes", "encodeFailures"};
+
+    /**
+     * Logger dei rendering lenti.
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(RenderMetrics.class);
+
+    /**
+     * Sorgente degli istanti, in nanosecondi.
+     */
+
+    interface Clock {
+
+        /**
+         * Restituisce l'istante corrente.
+         *
+         * @return Restituisce l'istante corrente in nanosecondi, rispetto a un'origine arbitraria.
+         */
+
+        long nanoTime();
+    }
+
+    /**
+     * Orologio basato su System.nanoTime().
+     */
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Orologio da cui vengono letti gli istanti; i test lo sostituiscono
+     * per attribuire tempi deterministici alle fasi.
+     */
+
+    static volatile Clock clock = SYSTEM_CLOCK;
+
+    /**
+     * Tempo complessivo di ogni fase, in nanosecondi.
+     */
+
+    private static AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+
+    /**
+     * Numero di ingressi in ogni fase.
+     */
+
+    private static AtomicLongArray calls = new AtomicLongArray(PHASES.length);
+
+    /**
+     * Valore complessivo di ogni contatore.
+     */
+
+    private static AtomicLongArray counts = new AtomicLongArray(COUNTERS.length);
+
+    /**
+     * Numero di rendering di quadranti e di rendering lenti.
+     */
+
+    private static AtomicLongArray renders = new AtomicLongArray(2);
+
+    /**
+     * Per ogni thread: fase in corso, istante dell'ultimo cambio di fase,
+     * inizio del rendering in corso, tempo e numero di ingressi di ogni
+     * fase e valore di ogni contatore dall'inizio del rendering.
+     */
+
+    private static final ThreadLocal<long[]> traces = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            long[] t = new long[3 + 2 * PHASES.length + COUNTERS.length];
+            t[1] = clock.nanoTime();
+            return t;
+        }
+    };
+
+    /**
+     * Entra in una fase, attribuendo il tempo trascorso alla fase in corso.
+     *
+     * @param phase Fase in cui entrare.
+     * @return Restituisce la fase in corso, da passare a exit().
+     */
+
+    static int enter(int phase) {
+        calls.incrementAndGet(phase);
+        long[] t = traces.get();
+        t[3 + PHASES.length + phase]++;
+        return (int)switchTo(t, phase);
+    }
+
+    /**
+     * Esce da una fase, attribuendole il tempo trascorso e tornando alla
+     * fase precedente.
+     *
+     * @param previous Fase restituita da enter().
+     */
+
+    static void exit(int previous) {
+        switchTo(traces.get(), previous);
+    }
+
+    /**
+     * Incrementa un contatore.
+     *
+     * @param counter Contatore da incrementare.
+     * @param n Incremento.
+     */
+
+    static void count(int counter, long n) {
+        counts.addAndGet(counter, n);
+        traces.get()[3 + 2 * PHASES.length + counter] += n;
+    }
+
+    /**
+     * Inizia il rendering di un quadrante, azzerando la traccia del thread.
+     */
+
+    static void begin() {
+        long[] t = traces.get();
+        switchTo(t, t[0]);
+        for (int i = 3; i < t.length; i++)
+            t[i] = 0;
+        t[2] = t[1];
+    }
+
+    /**
+     * Conclude il rendering di un quadrante, registrandolo nel log se la
+     * sua durata supera Utils.slowRenderMillis.
+     *
+     * @param id Identificativo dell'Esperienza.
+     * @param zoom Livello di zoom del rendering.
+     * @param extent Area coperta dal quadrante.
+     * @return Restituisce true se il rendering è stato registrato come lento.
+     */
+
+    static boolean end(String id, int zoom, Rect extent) {
+        long[] t = traces.get();
+        switchTo(t, t[0]);
+        renders.incrementAndGet(0);
+
+        long millis = (t[1] - t[2]) / 1000000;
+        if (millis < Utils.slowRenderMillis)
+            return false;
+
+        renders.incrementAndGet(1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PHASES.length; i++)
+            sb.append(' ').append(PHASES[i]).append('=').append(t[3 + i] / 1000000).append("ms");
+        for (int i = 0; i < COUNTERS.length; i++)
+            sb.append(' ').append(COUNTERS[i]).append('=').append(t[3 + 2 * PHASES.length + i]);
+        log.warn("slow render of experience {} at zoom {}, extent {},{} - {},{}: {}ms{}",
+                 new Object[] {id, zoom,
+                               extent.getNWPoint().getLatitude(), extent.getNWPoint().getLongitude(),
+                               extent.getSEPoint().getLatitude(), extent.getSEPoint().getLongitude(),
+                               millis, sb});
+        return true;
+    }
+
+    /**
+     * Attribuisce il tempo trascorso dall'ultimo cambio di fase alla fase
+     * in corso e cambia fase. Un orologio che torna indietro, ad esempio
+     * alla sostituzione di clock, non attribuisce tempi negativi.
+     *
+     * @param t Traccia del thread.
+     * @param phase Nuova fase.
+     * @return Restituisce la fase precedente.
+     */
+
+    private static long switchTo(long[] t, long phase) {
+        long now = Math.max(clock.nanoTime(), t[1]);
+        int current = (int)t[0];
+        nanos.addAndGet(current, now - t[1]);
+        t[3 + current] += now - t[1];
+        t[0] = phase;
+        t[1] = now;
+        return current;
+    }
+
+    /**
+     * Restituisce i totali: numero di rendering di quadranti e di
+     * rendering lenti, tempo in millisecondi e numero di ingressi di ogni
+     * fase e valore di ogni contatore.
+     *
+     * @return Restituisce una mappa dal nome di ogni metrica al suo valore.
+     */
+
+    static Map<String, Long> getMetrics() {
+        LinkedHashMap<String, Long> m = new LinkedHashMap<String, Long>();
+        m.put("renders", renders.get(0));
+        m.put("slowRenders", renders.get(1));
+        for (int i = 1; i < PHASES.length; i++) {
+            m.put(PHASES[i] + "Millis", nanos.get(i) / 1000000);
+            m.put(PHASES[i] + "Calls", calls.get(i));
+        }
+        for (int i = 0; i < COUNTERS.length; i++)
+            m.put(COUNTERS[i], counts.get(i));
+        return m;
+    }
+
+    /**
+     * Restituisce la traccia del thread corrente dall'ultimo begin(): tempo
+     * in nanosecondi e numero di ingressi di ogni fase e valore di ogni
+     * contatore. A differenza dei totali non è influenzata dai rendering
+     * degli altri thread.
+     *
+     * @return Restituisce una mappa dal nome di ogni metrica al suo valore.
+     */
+
+    static Map<String, Long> getTrace() {
+        long[] t = traces.get();
+        LinkedHashMap<String, Long> m = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < PHASES.length; i++) {
+            m.put(PHASES[i] + "Nanos", t[3 + i]);
+            m.put(PHASES[i] + "Calls", t[3 + PHASES.length + i]);
+        }
+        for (int i = 0; i < COUNTERS.length; i++)
+            m.put(COUNTERS[i], t[3 + 2 * PHASES.length + i]);
+        return m;
+    }
+}
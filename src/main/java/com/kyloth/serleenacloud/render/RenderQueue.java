@@ -0,0 +1,230 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RenderQueue.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.business.Experience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coda dei rendering in background delle Esperienze.
+ *
+ * @use Viene utilizzata dai controller REST quando un'Esperienza viene creata, modificata o aggiunta alla lista di sincronizzazione, in modo che i quadranti si trovino già nella cache di Renderer quando il dispositivo sincronizza. Le richieste per un'Esperienza già in coda vengono unite, renderizzando solo la versione più recente; i lavori vengono eseguiti da Utils.renderQueueThreads thread e al massimo Utils.renderQueueSize Esperienze possono essere in attesa, oltre le quali le richieste vengono scartate.
+ * @field pending : ConcurrentHashMap<String, Experience> Campo dati statico contenente le Esperienze in attesa di rendering, indicizzate per id
+ * @field executor : ThreadPoolExecutor Campo dati statico contenente il pool di thread che esegue i rendering
+ * @field rendered : long Campo dati statico rappresentante il numero di Esperienze renderizzate
+ * @field failed : long Campo dati statico rappresentante il numero di rendering falliti
+ * @field log : Logger Campo dati statico contenente il logger dei rendering falliti
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+public class RenderQueue {
+
+    /**
+     * Esperienze in attesa di rendering, indicizzate per id.
+     */
+
+    private static ConcurrentHashMap<String, Experience> pending = new ConcurrentHashMap<String, Experience>();
+
+    /**
+     * Pool di thread che esegue i rendering.
+     */
+
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * Numero di Esperienze renderizzate.
+     */
+
+    private static long rendered = 0;
+
+    /**
+     * Numero di rendering falliti.
+     */
+
+    private static long failed = 0;
+
+    /**
+     * Logger dei rendering falliti.
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(RenderQueue.class);
+
+    /**
+     * Accoda il rendering di un'Esperienza. Se l'Esperienza è già in
+     * attesa ne viene sostituita la versione, senza accodare un nuovo
+     * lavoro; se la coda è piena la richiesta viene scartata e i
+     * quadranti verranno renderizzati alla prima richiesta.
+     *
+     * @param e Esperienza da renderizzare.
+     */
+
+    public static void enqueue(Experience e) {
+        if (e == null)
+            return;
+
+        final String id = e.getId();
+        if (pending.put(id, e) != null)
+            return;
+
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    render(id);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.remove(id);
+        }
+    }
+
+    /**
+     * Accoda il rendering di un insieme di Esperienze.
+     *
+     * @param es Esperienze da renderizzare.
+     */
+
+    public static void enqueue(Iterable<Experience> es) {
+        for (Experience e : es)
+            enqueue(e);
+    }
+
+    /**
+     * Renderizza la versione più recente di un'Esperienza in attesa,
+     * disegnando e codificando tutti i suoi quadranti. Un'eccezione
+     * durante il rendering viene registrata e contata, ma non propagata:
+     * i quadranti mancanti verranno renderizzati alla prima richiesta.
+     * Gli Error, come OutOfMemoryError, non vengono intercettati.
+     *
+     * @param id Id dell'Esperienza da renderizzare.
+     */
+
+    static void render(String id) {
+        Experience e = pending.remove(id);
+        if (e == null)
+            return;
+
+        try {
+            for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants())
+                q.getPng();
+        } catch (Exception ex) {
+            log.warn("Background render of experience {} failed", id, ex);
+            synchronized (RenderQueue.class) {
+                failed++;
+            }
+            return;
+        }
+
+        synchronized (RenderQueue.class) {
+            rendered++;
+        }
+    }
+
+    /**
+     * Restituisce il pool di thread che esegue i rendering, creandolo
+     * alla prima richiesta. I thread sono daemon, in modo da non
+     * impedire l'arresto dell'applicazione.
+     *
+     * @return Restituisce un ThreadPoolExecutor con Utils.renderQueueThreads thread.
+     */
+
+    static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(Utils.renderQueueThreads, Utils.renderQueueThreads,
+                                              0L, TimeUnit.MILLISECONDS,
+                                              new LinkedBlockingQueue<Runnable>(Utils.renderQueueSize),
+                                              new ThreadFactory() {
+                                                  @Override
+                                                  public Thread newThread(Runnable r) {
+                                                      Thread t = new Thread(r, "render-queue");
+                                                      t.setDaemon(true);
+                                                      t.setPriority(Thread.MIN_PRIORITY);
+                                                      return t;
+                                                  }
+                                              });
+        }
+        return executor;
+    }
+
+    /**
+     * Restituisce il numero di Esperienze in attesa di rendering.
+     *
+     * @return Restituisce il numero di Esperienze in attesa.
+     */
+
+    public static int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Restituisce il numero di Esperienze renderizzate.
+     *
+     * @return Restituisce il numero di Esperienze renderizzate.
+     */
+
+    public static synchronized long getRendered() {
+        return rendered;
+    }
+
+    /**
+     * Restituisce il numero di rendering falliti.
+     *
+     * @return Restituisce il numero di rendering falliti.
+     */
+
+    public static synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Restituisce le metriche della coda: Esperienze in attesa,
+     * renderizzate e rendering falliti.
+     *
+     * @return Restituisce una mappa dal nome di ogni metrica al suo valore.
+     */
+
+    static Map<String, Long> getMetrics() {
+        LinkedHashMap<String, Long> m = new LinkedHashMap<String, Long>();
+        m.put("pending", (long)getPending());
+        synchronized (RenderQueue.class) {
+            m.put("rendered", rendered);
+            m.put("failed", failed);
+        }
+        return m;
+    }
+}
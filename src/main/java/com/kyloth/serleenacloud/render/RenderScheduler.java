@@ -0,0 +1,203 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RenderScheduler.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pianificatore dei rendering dei quadranti.
+ *
+ * @use Viene utilizzato da RasterQuadrant per disegnare i quadranti non presenti in cache. Al più Utils.renderParallelism rendering vengono eseguiti contemporaneamente e la memoria complessiva delle immagini in corso di disegno non supera Utils.renderMemoryBudget pixel; un rendering più grande dell'intero budget viene eseguito da solo. Le richieste contemporanee per la stessa chiave vengono unite in un unico rendering, il cui risultato viene restituito a tutti i richiedenti. Il rendering viene eseguito dal thread che lo richiede per primo, senza passare da un pool di thread dedicato.
+ * @field slots : Semaphore Campo dati statico contenente i permessi per il numero di rendering contemporanei
+ * @field pixels : Semaphore Campo dati statico contenente i permessi per i pixel in corso di disegno
+ * @field inFlight : ConcurrentHashMap<String, FutureTask<?>> Campo dati statico contenente i rendering in corso, indicizzati per chiave
+ * @field queued : AtomicLong Campo dati statico rappresentante il numero di rendering in attesa di essere eseguiti
+ * @field running : AtomicLong Campo dati statico rappresentante il numero di rendering in esecuzione
+ * @field renders : AtomicLong Campo dati statico rappresentante il numero di rendering eseguiti
+ * @field coalesced : AtomicLong Campo dati statico rappresentante il numero di richieste soddisfatte da un rendering già in corso
+ * @field waitNanos : AtomicLong Campo dati statico rappresentante il tempo complessivo di attesa prima dell'esecuzione, in nanosecondi
+ * @field maxWaitNanos : AtomicLong Campo dati statico rappresentante il tempo massimo di attesa prima dell'esecuzione, in nanosecondi
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class RenderScheduler {
+
+    /**
+     * Permessi per il numero di rendering contemporanei.
+     */
+
+    private static Semaphore slots = new Semaphore(Math.max(Utils.renderParallelism, 1), true);
+
+    /**
+     * Permessi per i pixel in corso di disegno.
+     */
+
+    private static Semaphore pixels = new Semaphore(Utils.renderMemoryBudget, true);
+
+    /**
+     * Rendering in corso, indicizzati per chiave.
+     */
+
+    private static ConcurrentHashMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    /**
+     * Numero di rendering in attesa di essere eseguiti.
+     */
+
+    private static AtomicLong queued = new AtomicLong();
+
+    /**
+     * Numero di rendering in esecuzione.
+     */
+
+    private static AtomicLong running = new AtomicLong();
+
+    /**
+     * Numero di rendering eseguiti.
+     */
+
+    private static AtomicLong renders = new AtomicLong();
+
+    /**
+     * Numero di richieste soddisfatte da un rendering già in corso.
+     */
+
+    private static AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Tempo complessivo di attesa prima dell'esecuzione, in nanosecondi.
+     */
+
+    private static AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Tempo massimo di attesa prima dell'esecuzione, in nanosecondi.
+     */
+
+    private static AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Esegue un rendering, oppure attende il risultato di quello già in
+     * corso per la stessa chiave.
+     *
+     * @param key Chiave del rendering; rendering con la stessa chiave producono lo stesso risultato.
+     * @param size Numero di pixel allocati dal rendering.
+     * @param job Rendering da eseguire.
+     * @return Restituisce il risultato del rendering.
+     */
+
+    @SuppressWarnings("unchecked")
+    static <T> T run(String key, long size, final Callable<T> job) {
+        final int permits = (int)Math.max(1, Math.min(size, Utils.renderMemoryBudget));
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                queued.incrementAndGet();
+                slots.acquireUninterruptibly();
+                pixels.acquireUninterruptibly(permits);
+                queued.decrementAndGet();
+
+                long wait = System.nanoTime() - start;
+                waitNanos.addAndGet(wait);
+                long max = maxWaitNanos.get();
+                while (wait > max && !maxWaitNanos.compareAndSet(max, wait))
+                    max = maxWaitNanos.get();
+
+                running.incrementAndGet();
+                try {
+                    return job.call();
+                } finally {
+                    running.decrementAndGet();
+                    renders.incrementAndGet();
+                    pixels.release(permits);
+                    slots.release();
+                }
+            }
+        });
+
+        FutureTask<T> current = (FutureTask<T>)inFlight.putIfAbsent(key, task);
+        if (current == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            coalesced.incrementAndGet();
+            task = current;
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Restituisce le metriche del pianificatore: rendering in attesa, in
+     * esecuzione, eseguiti e uniti a un rendering in corso, tempo di
+     * attesa complessivo e massimo in millisecondi e pixel disponibili.
+     *
+     * @return Restituisce una mappa dal nome di ogni metrica al suo valore.
+     */
+
+    static Map<String, Long> getMetrics() {
+        LinkedHashMap<String, Long> m = new LinkedHashMap<String, Long>();
+        m.put("queued", queued.get());
+        m.put("running", running.get());
+        m.put("renders", renders.get());
+        m.put("coalesced", coalesced.get());
+        m.put("waitMillis", waitNanos.get() / 1000000);
+        m.put("maxWaitMillis", maxWaitNanos.get() / 1000000);
+        m.put("availablePixels", (long)pixels.availablePermits());
+        return m;
+    }
+}
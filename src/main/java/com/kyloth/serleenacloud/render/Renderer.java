@@ -38,13 +38,29 @@ import com.kyloth.serleenacloud.datamodel.business.Track;
 import com.kyloth.serleenacloud.datamodel.geometry.Rect;
 import com.kyloth.serleenacloud.datamodel.geometry.ElevationRect;
 
+import java.io.UncheckedIOException;
+
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Classe per la creazione del rendering delle Esperienze da offrire all'applicativo android.
  *
  * @use Prendendo in input un oggetto Experience, interagisce con le classi DAO del package Persistence per ottenere i dati di mappa circoscritti dall'Esperienza e ritorna una collezione di RasterQuadrant.
  * @field ds : IDataSource Campo dati statico contenente un oggetto che permette di interfacciarsi con il database tramite oggetti DAO
+ * @field tileCache : TileCache Campo dati statico contenente la cache delle immagini PNG dei quadranti, indicizzate per impronta del raster
+ * @field tileIndex : TileCache Campo dati statico contenente l'impronta del raster di ogni quadrante già renderizzato
+ * @field tileStore : FileTileStore Campo dati statico contenente l'archivio su file delle immagini PNG e delle impronte dei quadranti
+ * @field pool : ForkJoinPool Campo dati statico contenente il pool di thread per il rendering parallelo dei quadranti
+ * @field log : Logger Campo dati statico contenente il logger degli errori del rendering parallelo
+ * @field id : String Identificativo dell'Esperienza
+ * @field zoom : int Livello di zoom del rendering: il fattore di conversione è Utils.factor / 2^zoom
+ * @field factor : int Fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom
  * @field rect : Rect Rettangolo di coordinate delimitanti l'Esperienza
  * @field elevations : Iterable<ElevationRect> Insieme di ElevationRect disponibili nell'area dell'Esperienza
  * @field lakes : Iterable<Lake> Insieme di laghi disponibili nell'area dell'Esperienza
@@ -66,6 +82,62 @@ public class Renderer {
 
     static IDataSource ds = DataSourceFactory.getDataSource();
 
+    /**
+     * Cache delle immagini PNG dei quadranti, indicizzate per impronta del
+     * raster: quadranti identici vengono codificati e conservati una sola volta.
+     */
+
+    static TileCache tileCache = new TileCache(Utils.tileCacheSize);
+
+    /**
+     * Impronta del raster di ogni quadrante già renderizzato, indicizzata
+     * per chiave di contenuto del quadrante. La dimensione di ogni voce
+     * comprende la chiave e l'occupazione della mappa, non solo i 20 byte
+     * dell'impronta.
+     */
+
+    static TileCache tileIndex = new TileCache(Utils.tileCacheSize / 64, true);
+
+    /**
+     * Archivio su file delle immagini PNG e delle impronte dei quadranti,
+     * che sopravvive al riavvio del servizio; null se Utils.tileStorePath
+     * non è configurato.
+     */
+
+    static FileTileStore tileStore = FileTileStore.open(Utils.tileStorePath, Utils.tileStoreSize);
+
+    /**
+     * Pool di thread per il rendering parallelo dei quadranti, creato
+     * alla prima richiesta.
+     */
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Logger degli errori del rendering parallelo.
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(Renderer.class);
+
+    /**
+     * Identificativo dell'Esperienza.
+     */
+
+    String id;
+
+    /**
+     * Livello di zoom del rendering: il fattore di conversione è
+     * Utils.factor / 2^zoom.
+     */
+
+    int zoom;
+
+    /**
+     * Fattore moltiplicativo per la conversione da gradi a pixel del livello di zoom.
+     */
+
+    int factor;
+
     /**
      * Rettangolo di coordinate delimitanti l'Esperienza.
      */
@@ -115,25 +187,56 @@ public class Renderer {
     Iterable<Track> tracks;
 
     /**
-     * Costruisce un nuovo Renderer a partire da un'Esperienza.
+     * Costruisce un nuovo Renderer a partire da un'Esperienza. Il livello
+     * di zoom è il più dettagliato tra quello richiesto e quelli che
+     * rispettano Utils.pixelBudget, e non supera maxLevel().
      *
      * @param e Esperienza a partire dalla quale si vuole ottenere un insieme di RasterQuadrant.
+     * @param zoom Livello di zoom richiesto; 0 indica il massimo dettaglio.
      */
 
-    Renderer(Experience e) {
+    Renderer(Experience e, int zoom) {
+        this.id = e.getId();
         this.rect = e.getBoundingRect();
-        this.lakes = ds.lakeDao().findAll(rect);
-        this.rivers = ds.riverDao().findAll(rect);
-        this.elevations = ds.elevationRectDao().findAll(rect);
-        this.paths = ds.pathDao().findAll(rect);
+        this.zoom = Math.min(Math.max(zoom, levelFor(rect)), maxLevel());
+        this.factor = Utils.factor >> this.zoom;
+        if (!Utils.tileRendering || !Utils.baseLayer)
+            loadMapData();
         this.pois = e.getPOIs();
         this.ups = e.getUserPoints();
         this.tracks = e.getTracks();
     }
 
+    /**
+     * Ottiene i dati di mappa nell'area dell'Esperienza, se non sono già
+     * stati ottenuti. Quando i quadranti vengono composti a partire da
+     * BaseLayer i dati di mappa non sono necessari.
+     */
+
+    synchronized void loadMapData() {
+        if (lakes != null)
+            return;
+
+        int phase = RenderMetrics.enter(RenderMetrics.LOAD);
+        try {
+            this.rivers = ds.riverDao().findAll(rect);
+            this.elevations = ds.elevationRectDao().findAll(rect);
+            this.paths = ds.pathDao().findAll(rect);
+            this.lakes = ds.lakeDao().findAll(rect);
+        } finally {
+            RenderMetrics.exit(phase);
+        }
+    }
+
     /**
      * Permette di ottenere un insieme di RasterQuadrant per
-     * l'Esperienza relativa al Renderer.
+     * l'Esperienza relativa al Renderer. Se Utils.renderParallelism è
+     * maggiore di uno e i quadranti vengono disegnati su richiesta,
+     * questi vengono renderizzati in parallelo prima di essere restituiti;
+     * l'ordine dei quadranti resta quello della visita verso nord ed est.
+     * Se la codifica di un quadrante fallisce l'errore viene registrato e
+     * i quadranti non codificati vengono restituiti comunque, per essere
+     * codificati alla richiesta dell'immagine.
      *
      * @return Restituisce l'insieme di RasterQuadrant per l'Esperienza relativa al Renderer.
      */
@@ -149,17 +252,144 @@ public class Renderer {
             }
             rq = rq.getNorth();
         }
+
+        if (Utils.tileRendering && Utils.renderParallelism > 1) {
+            quadrants.get(0).ir.computeOverlays();
+            try {
+                getPool().invoke(new QuadrantTask(quadrants, 0, quadrants.size()));
+            } catch (UncheckedIOException e) {
+                log.warn("Parallel encoding of experience {} failed", id, e.getCause());
+            }
+        }
+
         return quadrants;
     }
 
     /**
-     * Permette di ottenere un Renderer per una particolare Esperienza.
+     * Permette di ottenere un singolo RasterQuadrant per l'Esperienza
+     * relativa al Renderer, individuato dalla sua posizione nella griglia.
+     *
+     * @param column Colonna del quadrante, a partire da ovest.
+     * @param row Riga del quadrante, a partire da sud.
+     * @return Restituisce il RasterQuadrant richiesto, o null se la posizione è esterna alla griglia.
+     */
+
+    public RasterQuadrant getRasterQuadrant(int column, int row) {
+        ImageRenderer ir = new ImageRenderer(this);
+        int x = column * RasterQuadrant.quadrantWidth;
+        int y = (row + 1) * RasterQuadrant.quadrantHeight;
+        if (column < 0 || row < 0 || x >= ir.getImageWidth() || y > ir.getImageHeight())
+            return null;
+        return new RasterQuadrant(ir, x, y);
+    }
+
+    /**
+     * Restituisce le metriche del rendering: stato del pianificatore dei
+     * rendering, utilizzo della cache dei quadranti, fasi del rendering e
+     * stato della coda dei rendering in background.
+     *
+     * @return Restituisce una mappa dal nome di ogni gruppo di metriche ai suoi valori.
+     */
+
+    public static Map<String, Map<String, Long>> getMetrics() {
+        LinkedHashMap<String, Long> cache = new LinkedHashMap<String, Long>();
+        cache.put("hits", tileCache.getHits());
+        cache.put("misses", tileCache.getMisses());
+        cache.put("evictions", tileCache.getEvictions());
+        cache.put("bytes", tileCache.getSize());
+        cache.put("tiles", (long)tileCache.getCount());
+
+        LinkedHashMap<String, Map<String, Long>> m = new LinkedHashMap<String, Map<String, Long>>();
+        m.put("scheduler", RenderScheduler.getMetrics());
+        m.put("tileCache", cache);
+        m.put("render", RenderMetrics.getMetrics());
+        m.put("queue", RenderQueue.getMetrics());
+        return m;
+    }
+
+    /**
+     * Restituisce il pool di thread per il rendering parallelo dei quadranti.
+     *
+     * @return Restituisce un ForkJoinPool con parallelismo Utils.renderParallelism.
+     */
+
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(Utils.renderParallelism);
+        return pool;
+    }
+
+    /**
+     * Restituisce il livello di zoom più dettagliato al quale l'area
+     * indicata non supera Utils.pixelBudget pixel.
+     *
+     * @param rect Area di interesse.
+     * @return Restituisce il livello di zoom.
+     */
+
+    static int levelFor(Rect rect) {
+        double width = Math.abs(rect.getSEPoint().getLongitude() - rect.getNWPoint().getLongitude())*Utils.factor/180;
+        double height = Math.abs(Utils.projLatitude(rect.getNWPoint().getLatitude())
+                                 - Utils.projLatitude(rect.getSEPoint().getLatitude()))*Utils.factor/180;
+        int level = 0;
+        while ((width + 1) * (height + 1) > Utils.pixelBudget && (Utils.factor >> (level + 1)) > 0) {
+            width /= 2;
+            height /= 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Restituisce il livello di zoom meno dettagliato, l'ultimo al quale
+     * il fattore di conversione Utils.factor / 2^zoom è positivo.
+     *
+     * @return Restituisce il livello di zoom.
+     */
+
+    static int maxLevel() {
+        int level = 0;
+        while ((Utils.factor >> (level + 1)) > 0)
+            level++;
+        return level;
+    }
+
+    /**
+     * Restituisce il livello di zoom del rendering.
+     *
+     * @return Restituisce il livello di zoom; il fattore di conversione è Utils.factor / 2^zoom.
+     */
+
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Permette di ottenere un Renderer per una particolare Esperienza,
+     * al livello di zoom più dettagliato che rispetta Utils.pixelBudget.
      *
      * @param e Esperienza di interesse.
      * @return Restituisce un nuovo Renderer inizializzato a partire dall'Esperienza fornita.
      */
 
     public static Renderer fromExperience(Experience e) {
-        return new Renderer(e);
+        return new Renderer(e, 0);
+    }
+
+    /**
+     * Permette di ottenere un Renderer per una particolare Esperienza a
+     * un livello di zoom meno dettagliato, ad esempio per offrire ai
+     * dispositivi un'anteprima. Se il livello richiesto supera
+     * Utils.pixelBudget viene usato il primo livello che lo rispetta;
+     * un livello oltre maxLevel(), ad esempio fornito da un client, viene
+     * ridotto a maxLevel().
+     *
+     * @param e Esperienza di interesse.
+     * @param zoom Livello di zoom richiesto; 0 indica il massimo dettaglio.
+     * @return Restituisce un nuovo Renderer inizializzato a partire dall'Esperienza fornita.
+     */
+
+    public static Renderer fromExperience(Experience e, int zoom) {
+        return new Renderer(e, zoom);
     }
 }
@@ -0,0 +1,459 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: ScanlinePainter.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.WritableRaster;
+
+import java.util.Arrays;
+
+/**
+ * Painter che scrive direttamente nel raster di un'immagine a colori
+ * indicizzati.
+ *
+ * @use Viene utilizzato quando Utils.scanlineRendering è attivo per disegnare su immagini create da Utils.createImage. I rettangoli vengono riempiti riga per riga con Arrays.fill, le spezzate e i bordi dei poligoni vengono tracciati con l'algoritmo di Bresenham e i poligoni vengono riempiti con una tabella dei lati riutilizzata tra un poligono e l'altro, campionando i pixel con la stessa regola di Graphics2D. Le immagini con la stessa tavolozza vengono copiate riga per riga e le icone vengono disegnate tramite Sprite; le altre immagini vengono disegnate tramite Graphics2D.
+ * @field img : BufferedImage Campo dati contenente l'immagine su cui disegnare
+ * @field cm : IndexColorModel Campo dati contenente la tavolozza dell'immagine
+ * @field data : byte[] Campo dati contenente i pixel dell'immagine
+ * @field offset : int Campo dati rappresentante la posizione del primo pixel dell'immagine in data
+ * @field stride : int Campo dati rappresentante la distanza in byte tra due righe dell'immagine
+ * @field tx : int Campo dati rappresentante la traslazione orizzontale del sistema di riferimento
+ * @field ty : int Campo dati rappresentante la traslazione verticale del sistema di riferimento
+ * @field clipX0 : int Campo dati rappresentante la prima colonna disegnabile
+ * @field clipY0 : int Campo dati rappresentante la prima riga disegnabile
+ * @field clipX1 : int Campo dati rappresentante la colonna successiva all'ultima disegnabile
+ * @field clipY1 : int Campo dati rappresentante la riga successiva all'ultima disegnabile
+ * @field g : Graphics2D Campo dati contenente l'oggetto con cui disegnare le immagini con tavolozza diversa, creato alla prima richiesta
+ * @field edges : long[] Campo dati contenente i lati del poligono ordinati per prima riga, ciascuno con la prima riga nei 32 bit alti e l'indice nei 32 bit bassi
+ * @field edgeEnd : int[] Campo dati contenente la riga successiva all'ultima di ogni lato
+ * @field edgeX : double[] Campo dati contenente l'ascissa di ogni lato prolungato alla riga zero
+ * @field edgeSlope : double[] Campo dati contenente l'incremento dell'ascissa di ogni lato per riga
+ * @field active : int[] Campo dati contenente gli indici dei lati attivi
+ * @field crossings : double[] Campo dati contenente le intersezioni ordinate della riga con i lati attivi
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class ScanlinePainter extends Painter {
+
+    /**
+     * Immagine su cui disegnare.
+     */
+
+    private BufferedImage img;
+
+    /**
+     * Tavolozza dell'immagine.
+     */
+
+    private IndexColorModel cm;
+
+    /**
+     * Pixel dell'immagine.
+     */
+
+    private byte[] data;
+
+    /**
+     * Posizione del primo pixel dell'immagine in data.
+     */
+
+    private int offset;
+
+    /**
+     * Distanza in byte tra due righe dell'immagine.
+     */
+
+    private int stride;
+
+    /**
+     * Traslazione orizzontale del sistema di riferimento.
+     */
+
+    private int tx = 0;
+
+    /**
+     * Traslazione verticale del sistema di riferimento.
+     */
+
+    private int ty = 0;
+
+    /**
+     * Prima colonna disegnabile.
+     */
+
+    private int clipX0;
+
+    /**
+     * Prima riga disegnabile.
+     */
+
+    private int clipY0;
+
+    /**
+     * Colonna successiva all'ultima disegnabile.
+     */
+
+    private int clipX1;
+
+    /**
+     * Riga successiva all'ultima disegnabile.
+     */
+
+    private int clipY1;
+
+    /**
+     * Oggetto con cui disegnare le immagini con tavolozza diversa.
+     */
+
+    private Graphics2D g;
+
+    /**
+     * Lati del poligono ordinati per prima riga.
+     */
+
+    private long[] edges = new long[64];
+
+    /**
+     * Riga successiva all'ultima di ogni lato.
+     */
+
+    private int[] edgeEnd = new int[64];
+
+    /**
+     * Ascissa di ogni lato prolungato alla riga zero, campionata a un
+     * quarto di pixel.
+     */
+
+    private double[] edgeX = new double[64];
+
+    /**
+     * Incremento dell'ascissa di ogni lato per riga.
+     */
+
+    private double[] edgeSlope = new double[64];
+
+    /**
+     * Indici dei lati attivi.
+     */
+
+    private int[] active = new int[64];
+
+    /**
+     * Intersezioni della riga con i lati attivi.
+     */
+
+    private double[] crossings = new double[64];
+
+    /**
+     * Crea un nuovo ScanlinePainter.
+     *
+     * @param img Immagine su cui disegnare, per cui supports() restituisce true.
+     */
+
+    ScanlinePainter(BufferedImage img) {
+        WritableRaster raster = img.getRaster();
+        this.img = img;
+        this.cm = (IndexColorModel)img.getColorModel();
+        this.data = ((DataBufferByte)raster.getDataBuffer()).getData();
+        this.stride = ((PixelInterleavedSampleModel)raster.getSampleModel()).getScanlineStride();
+        this.offset = raster.getDataBuffer().getOffset()
+            - raster.getSampleModelTranslateY() * stride
+            - raster.getSampleModelTranslateX();
+        this.clipX0 = 0;
+        this.clipY0 = 0;
+        this.clipX1 = img.getWidth();
+        this.clipY1 = img.getHeight();
+    }
+
+    /**
+     * Indica se un'immagine può essere disegnata da uno ScanlinePainter.
+     *
+     * @param img Immagine da verificare.
+     * @return Restituisce true se l'immagine usa un byte per pixel e una tavolozza.
+     */
+
+    static boolean supports(BufferedImage img) {
+        return PngEncoder.isIndexed(img);
+    }
+
+    @Override
+    void translate(int dx, int dy) {
+        tx += dx;
+        ty += dy;
+        if (g != null)
+            g.translate(dx, dy);
+    }
+
+    @Override
+    void clip(int x, int y, int width, int height) {
+        clipX0 = Math.max(clipX0, x + tx);
+        clipY0 = Math.max(clipY0, y + ty);
+        clipX1 = Math.min(clipX1, x + tx + width);
+        clipY1 = Math.min(clipY1, y + ty + height);
+        if (g != null)
+            g.clipRect(x, y, width, height);
+    }
+
+    @Override
+    void fillRect(Color c, int x, int y, int width, int height) {
+        byte index = index(c);
+        int x0 = Math.max(x + tx, clipX0);
+        int x1 = Math.min(x + tx + width, clipX1);
+        int y0 = Math.max(y + ty, clipY0);
+        int y1 = Math.min(y + ty + height, clipY1);
+        if (x0 >= x1)
+            return;
+        for (int row = y0; row < y1; row++)
+            Arrays.fill(data, offset + row * stride + x0, offset + row * stride + x1, index);
+    }
+
+    @Override
+    void fillPolygon(Color c, int[] x, int[] y, int n) {
+        if (n <= 0)
+            return;
+        byte index = index(c);
+        outline(index, x, y, n, true);
+        fill(index, x, y, n);
+    }
+
+    @Override
+    void drawPolyline(Color c, int[] x, int[] y, int n) {
+        if (n <= 0)
+            return;
+        outline(index(c), x, y, n, false);
+    }
+
+    @Override
+    void drawImage(BufferedImage i, int x, int y) {
+        boolean indexed = supports(i) && cm.equals(i.getColorModel());
+        if (!indexed && cm == Utils.palette) {
+            Sprite.get(i).draw(data, offset, stride, x + tx, y + ty, clipX0, clipY0, clipX1, clipY1);
+            return;
+        }
+        if (!indexed) {
+            if (g == null) {
+                g = img.createGraphics();
+                g.clipRect(clipX0, clipY0, clipX1 - clipX0, clipY1 - clipY0);
+                g.translate(tx, ty);
+            }
+            g.drawImage(i, x, y, null);
+            return;
+        }
+
+        WritableRaster raster = i.getRaster();
+        byte[] src = ((DataBufferByte)raster.getDataBuffer()).getData();
+        int srcStride = ((PixelInterleavedSampleModel)raster.getSampleModel()).getScanlineStride();
+        int srcOffset = raster.getDataBuffer().getOffset()
+            - raster.getSampleModelTranslateY() * srcStride
+            - raster.getSampleModelTranslateX();
+
+        int x0 = Math.max(x + tx, clipX0);
+        int x1 = Math.min(x + tx + i.getWidth(), clipX1);
+        int y0 = Math.max(y + ty, clipY0);
+        int y1 = Math.min(y + ty + i.getHeight(), clipY1);
+        for (int row = y0; row < y1 && x0 < x1; row++)
+            System.arraycopy(src, srcOffset + (row - y - ty) * srcStride + x0 - x - tx,
+                             data, offset + row * stride + x0, x1 - x0);
+    }
+
+    @Override
+    boolean isVisible(int x, int y, int width, int height) {
+        return x + tx < clipX1 && x + tx + width > clipX0
+            && y + ty < clipY1 && y + ty + height > clipY0;
+    }
+
+    @Override
+    void dispose() {
+        if (g != null)
+            g.dispose();
+    }
+
+    /**
+     * Restituisce l'indice nella tavolozza di un colore, scelto come
+     * farebbe Graphics2D.
+     *
+     * @param c Colore.
+     * @return Restituisce l'indice del colore.
+     */
+
+    private byte index(Color c) {
+        return ((byte[])cm.getDataElements(c.getRGB(), null))[0];
+    }
+
+    /**
+     * Traccia i lati di una spezzata o di un poligono.
+     *
+     * @param index Indice del colore.
+     * @param x Coordinate x dei vertici.
+     * @param y Coordinate y dei vertici.
+     * @param n Numero di vertici.
+     * @param closed Indica se tracciare anche il lato tra l'ultimo e il primo vertice.
+     */
+
+    private void outline(byte index, int[] x, int[] y, int n, boolean closed) {
+        if (n == 1) {
+            line(index, x[0], y[0], x[0], y[0]);
+            return;
+        }
+        for (int i = 1; i < n; i++)
+            line(index, x[i-1], y[i-1], x[i], y[i]);
+        if (closed)
+            line(index, x[n-1], y[n-1], x[0], y[0]);
+    }
+
+    /**
+     * Traccia un segmento con l'algoritmo di Bresenham, estremi inclusi.
+     * A parità di errore il passo viene fatto verso il secondo estremo,
+     * come in Graphics2D.
+     *
+     * @param index Indice del colore.
+     * @param x0 Coordinata x del primo estremo.
+     * @param y0 Coordinata y del primo estremo.
+     * @param x1 Coordinata x del secondo estremo.
+     * @param y1 Coordinata y del secondo estremo.
+     */
+
+    private void line(byte index, int x0, int y0, int x1, int y1) {
+        x0 += tx;
+        y0 += ty;
+        x1 += tx;
+        y1 += ty;
+        if (Math.max(x0, x1) < clipX0 || Math.min(x0, x1) >= clipX1
+            || Math.max(y0, y1) < clipY0 || Math.min(y0, y1) >= clipY1)
+            return;
+
+        int dx = Math.abs(x1 - x0);
+        int dy = Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int err = dx - dy;
+        while (true) {
+            if (x0 >= clipX0 && x0 < clipX1 && y0 >= clipY0 && y0 < clipY1)
+                data[offset + y0 * stride + x0] = index;
+            if (x0 == x1 && y0 == y1)
+                return;
+            int e2 = 2 * err;
+            if (e2 >= -dy) {
+                err -= dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+    }
+
+    /**
+     * Riempie un poligono con la regola pari-dispari. Come in Graphics2D
+     * i vertici vengono spostati di un quarto di pixel verso sud-est e
+     * un pixel viene riempito se il suo centro è interno al poligono.
+     *
+     * @param index Indice del colore.
+     * @param x Coordinate x dei vertici.
+     * @param y Coordinate y dei vertici.
+     * @param n Numero di vertici.
+     */
+
+    private void fill(byte index, int[] x, int[] y, int n) {
+        if (edges.length < n) {
+            int length = Math.max(n, edges.length * 2);
+            edges = new long[length];
+            edgeEnd = new int[length];
+            edgeX = new double[length];
+            edgeSlope = new double[length];
+            active = new int[length];
+            crossings = new double[length];
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int j = i == 0 ? n - 1 : i - 1;
+            int xa = x[j] + tx, ya = y[j] + ty;
+            int xb = x[i] + tx, yb = y[i] + ty;
+            if (ya == yb)
+                continue;
+            if (ya > yb) {
+                int t = xa; xa = xb; xb = t;
+                t = ya; ya = yb; yb = t;
+            }
+            if (yb <= clipY0 || ya >= clipY1)
+                continue;
+            edgeSlope[i] = (double)(xb - xa) / (yb - ya);
+            edgeX[i] = xa - (ya - 0.25) * edgeSlope[i];
+            edgeEnd[i] = yb;
+            edges[count++] = ((long)ya << 32) | i;
+        }
+        if (count == 0)
+            return;
+        Arrays.sort(edges, 0, count);
+
+        int next = 0;
+        int activeCount = 0;
+        int row = (int)(edges[0] >> 32);
+        while (row < clipY1 && (next < count || activeCount > 0)) {
+            while (next < count && (int)(edges[next] >> 32) <= row)
+                active[activeCount++] = (int)edges[next++];
+
+            int crossingCount = 0;
+            for (int k = 0; k < activeCount; k++) {
+                int e = active[k];
+                if (edgeEnd[e] <= row) {
+                    active[k--] = active[--activeCount];
+                    continue;
+                }
+                double cx = edgeX[e] + row * edgeSlope[e];
+                int m = crossingCount++;
+                while (m > 0 && crossings[m-1] > cx) {
+                    crossings[m] = crossings[m-1];
+                    m--;
+                }
+                crossings[m] = cx;
+            }
+
+            if (row >= clipY0) {
+                int base = offset + row * stride;
+                for (int k = 0; k + 1 < crossingCount; k += 2) {
+                    int x0 = Math.max((int)Math.ceil(crossings[k] - 0.25), clipX0);
+                    int x1 = Math.min((int)Math.ceil(crossings[k+1] - 0.25), clipX1);
+                    if (x0 < x1)
+                        Arrays.fill(data, base + x0, base + x1, index);
+                }
+            }
+
+            if (activeCount == 0 && next < count)
+                row = (int)(edges[next] >> 32);
+            else
+                row++;
+        }
+    }
+}
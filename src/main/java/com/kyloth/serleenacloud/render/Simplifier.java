@@ -0,0 +1,143 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: Simplifier.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+/**
+ * Semplificazione delle geometrie in funzione della risoluzione.
+ *
+ * @use Viene utilizzato da Projection per ridurre i vertici di laghi, fiumi e sentieri già proiettati in pixel globali, per cui la tolleranza in pixel corrisponde a una tolleranza in gradi che dipende dal livello di zoom. I vertici vengono scelti con l'algoritmo di Douglas-Peucker, implementato con uno stack esplicito per non dipendere dalla profondità della ricorsione; le entità il cui ingombro è inferiore a una soglia in pixel vengono scartate.
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class Simplifier {
+
+    /**
+     * Semplifica una spezzata mantenendo i vertici che si discostano dalla
+     * spezzata semplificata più della tolleranza. Il primo e l'ultimo
+     * vertice vengono sempre mantenuti.
+     *
+     * @param xy Coordinate x e y dei vertici, alternate.
+     * @param tolerance Distanza massima in pixel tra la spezzata originale e quella semplificata; se non positiva la spezzata non viene semplificata.
+     * @return Restituisce le coordinate dei vertici mantenuti, alternate; l'array originale se nessun vertice viene scartato.
+     */
+
+    static double[] simplify(double[] xy, double tolerance) {
+        int n = xy.length / 2;
+        if (tolerance <= 0 || n <= 2)
+            return xy;
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n-1] = true;
+        int kept = 2;
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        double tolerance2 = tolerance * tolerance;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            double ax = xy[2*first];
+            double ay = xy[2*first+1];
+            double dx = xy[2*last] - ax;
+            double dy = xy[2*last+1] - ay;
+            double length2 = dx * dx + dy * dy;
+
+            int farthest = -1;
+            double max = tolerance2;
+            for (int i = first + 1; i < last; i++) {
+                double px = xy[2*i] - ax;
+                double py = xy[2*i+1] - ay;
+                double d;
+                if (length2 == 0) {
+                    d = px * px + py * py;
+                } else {
+                    double cross = px * dy - py * dx;
+                    d = cross * cross / length2;
+                }
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                kept++;
+                if (top + 4 > stack.length) {
+                    int[] s = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, s, 0, top);
+                    stack = s;
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        if (kept == n)
+            return xy;
+
+        double[] result = new double[2 * kept];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                result[j++] = xy[2*i];
+                result[j++] = xy[2*i+1];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Indica se l'ingombro di un'entità è inferiore a una soglia, sia in
+     * larghezza sia in altezza.
+     *
+     * @param xy Coordinate x e y dei vertici, alternate.
+     * @param size Soglia in pixel.
+     * @return Restituisce true se l'entità non ha vertici o se il rettangolo che la contiene ha entrambi i lati minori della soglia.
+     */
+
+    static boolean isSmallerThan(double[] xy, double size) {
+        if (xy.length == 0)
+            return true;
+
+        double minX = xy[0], maxX = xy[0];
+        double minY = xy[1], maxY = xy[1];
+        for (int i = 2; i < xy.length; i += 2) {
+            minX = Math.min(minX, xy[i]);
+            maxX = Math.max(maxX, xy[i]);
+            minY = Math.min(minY, xy[i+1]);
+            maxY = Math.max(maxY, xy[i+1]);
+        }
+        return maxX - minX < size && maxY - minY < size;
+    }
+}
@@ -0,0 +1,188 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: Sprite.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Icona convertita nella tavolozza Utils.palette.
+ *
+ * @use Viene utilizzata da ScanlinePainter per disegnare le icone di checkpoint, punti d'interesse e punti utente copiandone direttamente gli indici nel raster. Ogni icona viene convertita una sola volta: i pixel opachi vengono tradotti nell'indice del colore, quelli trasparenti vengono saltati e per quelli semitrasparenti viene precalcolata una tabella che associa a ogni colore sottostante l'indice del colore risultante dalla sovrapposizione. Il risultato non dipende dalla posizione dell'icona nell'immagine, per cui un'icona a cavallo tra due quadranti viene disegnata allo stesso modo in entrambi.
+ * @field atlas : IdentityHashMap<BufferedImage, Sprite> Campo dati statico contenente le icone già convertite
+ * @field width : int Campo dati rappresentante la larghezza in pixel dell'icona
+ * @field height : int Campo dati rappresentante l'altezza in pixel dell'icona
+ * @field pixels : byte[] Campo dati contenente l'indice del colore dei pixel opachi dell'icona
+ * @field blend : byte[][] Campo dati contenente per ogni pixel semitrasparente l'indice del colore risultante per ogni colore sottostante, null per i pixel opachi
+ * @field mask : boolean[] Campo dati che indica per ogni pixel se va disegnato
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class Sprite {
+
+    /**
+     * Icone già convertite.
+     */
+
+    private static IdentityHashMap<BufferedImage, Sprite> atlas = new IdentityHashMap<BufferedImage, Sprite>();
+
+    /**
+     * Larghezza in pixel dell'icona.
+     */
+
+    private int width;
+
+    /**
+     * Altezza in pixel dell'icona.
+     */
+
+    private int height;
+
+    /**
+     * Indice del colore dei pixel opachi dell'icona.
+     */
+
+    private byte[] pixels;
+
+    /**
+     * Indice del colore risultante per ogni colore sottostante, per i
+     * pixel semitrasparenti; null per i pixel opachi.
+     */
+
+    private byte[][] blend;
+
+    /**
+     * Indica per ogni pixel se va disegnato.
+     */
+
+    private boolean[] mask;
+
+    /**
+     * Converte un'icona nella tavolozza indicata.
+     *
+     * @param icon Icona da convertire.
+     * @param cm Tavolozza in cui convertire l'icona.
+     */
+
+    private Sprite(BufferedImage icon, IndexColorModel cm) {
+        width = icon.getWidth();
+        height = icon.getHeight();
+        pixels = new byte[width * height];
+        blend = new byte[width * height][];
+        mask = new boolean[width * height];
+
+        int[] argb = icon.getRGB(0, 0, width, height, null, 0, width);
+        HashMap<Integer, byte[]> tables = new HashMap<Integer, byte[]>();
+        for (int i = 0; i < argb.length; i++) {
+            int a = argb[i] >>> 24;
+            if (a == 0)
+                continue;
+            mask[i] = true;
+            if (a == 255) {
+                pixels[i] = index(cm, argb[i]);
+                continue;
+            }
+            byte[] table = tables.get(argb[i]);
+            if (table == null) {
+                table = new byte[256];
+                for (int d = 0; d < cm.getMapSize(); d++)
+                    table[d] = index(cm, Utils.over(argb[i], cm.getRGB(d)));
+                tables.put(argb[i], table);
+            }
+            blend[i] = table;
+        }
+    }
+
+    /**
+     * Restituisce un'icona convertita nella tavolozza Utils.palette,
+     * convertendola alla prima richiesta.
+     *
+     * @param icon Icona da convertire.
+     * @return Restituisce l'icona convertita.
+     */
+
+    static Sprite get(BufferedImage icon) {
+        synchronized (atlas) {
+            Sprite s = atlas.get(icon);
+            if (s == null) {
+                s = new Sprite(icon, Utils.palette);
+                atlas.put(icon, s);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Disegna l'icona in un raster a colori indicizzati con la tavolozza
+     * Utils.palette.
+     *
+     * @param data Pixel del raster.
+     * @param offset Posizione del primo pixel del raster in data.
+     * @param stride Distanza tra due righe del raster.
+     * @param x Colonna dell'angolo nord-ovest dell'icona.
+     * @param y Riga dell'angolo nord-ovest dell'icona.
+     * @param clipX0 Prima colonna disegnabile.
+     * @param clipY0 Prima riga disegnabile.
+     * @param clipX1 Colonna successiva all'ultima disegnabile.
+     * @param clipY1 Riga successiva all'ultima disegnabile.
+     */
+
+    void draw(byte[] data, int offset, int stride, int x, int y,
+              int clipX0, int clipY0, int clipX1, int clipY1) {
+        int x0 = Math.max(x, clipX0);
+        int x1 = Math.min(x + width, clipX1);
+        int y0 = Math.max(y, clipY0);
+        int y1 = Math.min(y + height, clipY1);
+
+        for (int row = y0; row < y1; row++) {
+            int src = (row - y) * width - x;
+            int dst = offset + row * stride;
+            for (int col = x0; col < x1; col++) {
+                int i = src + col;
+                if (!mask[i])
+                    continue;
+                byte[] table = blend[i];
+                data[dst + col] = table == null ? pixels[i] : table[data[dst + col] & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Restituisce l'indice nella tavolozza di un colore opaco.
+     *
+     * @param cm Tavolozza.
+     * @param rgb Colore.
+     * @return Restituisce l'indice del colore più vicino.
+     */
+
+    private static byte index(IndexColorModel cm, int rgb) {
+        return ((byte[])cm.getDataElements(rgb, null))[0];
+    }
+}
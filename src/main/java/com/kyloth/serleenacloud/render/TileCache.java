@@ -0,0 +1,228 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: TileCache.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache dei quadranti raster già codificati in PNG, o delle loro impronte.
+ *
+ * @use Viene utilizzata da Renderer in due modi. Come Renderer.tileCache conserva le immagini PNG dei quadranti, con chiave l'impronta del raster, in modo che raster identici vengano codificati una sola volta. Come Renderer.tileIndex conserva l'impronta del raster di ogni quadrante, con chiave la chiave di contenuto restituita da ImageRenderer.quadrantKey, in modo da non ridisegnare quadranti il cui contenuto non è cambiato; in questo caso i valori sono piccoli rispetto alle chiavi e alle voci della mappa, che vengono quindi conteggiate nella dimensione. Quando la dimensione complessiva supera il limite vengono scartate le voci usate meno di recente.
+ * @field ENTRY_OVERHEAD : int Campo dati statico rappresentante la stima in byte dell'occupazione di una voce della mappa, esclusi i caratteri della chiave e i byte del valore
+ * @field maxSize : long Campo dati rappresentante la dimensione massima in byte dei quadranti in cache
+ * @field countKeys : boolean Campo dati che indica se la dimensione delle voci comprende chiave e occupazione della mappa
+ * @field size : long Campo dati rappresentante la dimensione attuale in byte dei quadranti in cache
+ * @field tiles : LinkedHashMap<String, byte[]> Campo dati contenente i quadranti, in ordine di accesso
+ * @field hits : long Campo dati rappresentante il numero di richieste soddisfatte dalla cache
+ * @field misses : long Campo dati rappresentante il numero di richieste non soddisfatte dalla cache
+ * @field evictions : long Campo dati rappresentante il numero di quadranti scartati per mancanza di spazio
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class TileCache {
+
+    /**
+     * Stima in byte dell'occupazione di una voce della mappa, esclusi i
+     * caratteri della chiave e i byte del valore: voce della
+     * LinkedHashMap, oggetto String e intestazioni dei due array.
+     */
+
+    static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * Dimensione massima in byte dei quadranti in cache.
+     */
+
+    private long maxSize;
+
+    /**
+     * Indica se la dimensione delle voci comprende la chiave e
+     * l'occupazione della mappa, oltre al valore.
+     */
+
+    private boolean countKeys;
+
+    /**
+     * Dimensione attuale in byte dei quadranti in cache.
+     */
+
+    private long size = 0;
+
+    /**
+     * Quadranti in cache, in ordine di accesso.
+     */
+
+    private LinkedHashMap<String, byte[]> tiles = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    /**
+     * Numero di richieste soddisfatte dalla cache.
+     */
+
+    private long hits = 0;
+
+    /**
+     * Numero di richieste non soddisfatte dalla cache.
+     */
+
+    private long misses = 0;
+
+    /**
+     * Numero di quadranti scartati per mancanza di spazio.
+     */
+
+    private long evictions = 0;
+
+    /**
+     * Crea una nuova TileCache, in cui la dimensione di ogni voce è quella
+     * del valore.
+     *
+     * @param maxSize Dimensione massima in byte dei quadranti in cache.
+     */
+
+    TileCache(long maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * Crea una nuova TileCache.
+     *
+     * @param maxSize Dimensione massima in byte delle voci in cache.
+     * @param countKeys Indica se la dimensione di ogni voce comprende la chiave e l'occupazione della mappa, oltre al valore.
+     */
+
+    TileCache(long maxSize, boolean countKeys) {
+        this.maxSize = maxSize;
+        this.countKeys = countKeys;
+    }
+
+    /**
+     * Restituisce un quadrante presente in cache.
+     *
+     * @param key Chiave del quadrante.
+     * @return Restituisce il quadrante codificato, o null se non presente.
+     */
+
+    synchronized byte[] get(String key) {
+        byte[] tile = tiles.get(key);
+        if (tile == null)
+            misses++;
+        else
+            hits++;
+        return tile;
+    }
+
+    /**
+     * Inserisce un quadrante in cache, scartando i quadranti usati meno di
+     * recente se necessario. Un quadrante più grande dell'intera cache
+     * non viene inserito.
+     *
+     * @param key Chiave del quadrante.
+     * @param tile Quadrante codificato.
+     */
+
+    synchronized void put(String key, byte[] tile) {
+        if (sizeOf(key, tile) > maxSize)
+            return;
+
+        byte[] old = tiles.put(key, tile);
+        if (old != null)
+            size -= sizeOf(key, old);
+        size += sizeOf(key, tile);
+
+        Iterator<Map.Entry<String, byte[]>> i = tiles.entrySet().iterator();
+        while (size > maxSize && i.hasNext()) {
+            Map.Entry<String, byte[]> e = i.next();
+            size -= sizeOf(e.getKey(), e.getValue());
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Restituisce la dimensione di una voce della cache.
+     *
+     * @param key Chiave della voce.
+     * @param tile Valore della voce.
+     * @return Restituisce la dimensione in byte del valore, più quella della chiave e di ENTRY_OVERHEAD se countKeys è attivo.
+     */
+
+    private long sizeOf(String key, byte[] tile) {
+        return countKeys ? tile.length + 2L * key.length() + ENTRY_OVERHEAD : tile.length;
+    }
+
+    /**
+     * Restituisce il numero di richieste soddisfatte dalla cache.
+     *
+     * @return Restituisce il numero di richieste soddisfatte.
+     */
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Restituisce il numero di richieste non soddisfatte dalla cache.
+     *
+     * @return Restituisce il numero di richieste non soddisfatte.
+     */
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Restituisce il numero di quadranti scartati per mancanza di spazio.
+     *
+     * @return Restituisce il numero di quadranti scartati.
+     */
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Restituisce la dimensione attuale dei quadranti in cache.
+     *
+     * @return Restituisce la dimensione in byte.
+     */
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Restituisce il numero di quadranti in cache.
+     *
+     * @return Restituisce il numero di quadranti.
+     */
+
+    synchronized int getCount() {
+        return tiles.size();
+    }
+}
@@ -32,14 +32,43 @@ import java.net.URL;
 
 import javax.imageio.ImageIO;
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Classe di utilità generale per il package render.
  *
  * @field factor : int Campo dati statico rappresentante il fattore moltiplicativo per la conversione da gradi a pixel
+ * @field pixelBudget : int Campo dati statico rappresentante il numero massimo di pixel del rendering di un'Esperienza
+ * @field tileRendering : boolean Campo dati statico che indica se i quadranti vanno disegnati singolarmente su richiesta
+ * @field baseLayer : boolean Campo dati statico che indica se i dati di mappa vanno composti a partire dai quadranti condivisi di BaseLayer
+ * @field scanlineRendering : boolean Campo dati statico che indica se le immagini a colori indicizzati vanno disegnate con ScanlinePainter invece che con Graphics2D
+ * @field simplifyTolerance : double Campo dati statico rappresentante la tolleranza in pixel della semplificazione di laghi, fiumi e sentieri
+ * @field minFeatureSize : double Campo dati statico rappresentante l'ingombro minimo in pixel di laghi, fiumi e sentieri da disegnare
+ * @field baseLayerCacheSize : int Campo dati statico rappresentante il numero massimo di quadranti di BaseLayer in cache
+ * @field tileCacheSize : int Campo dati statico rappresentante la dimensione massima in byte della cache dei quadranti
+ * @field tileStorePath : String Campo dati statico rappresentante la directory dell'archivio su file dei quadranti
+ * @field tileStoreSize : long Campo dati statico rappresentante la dimensione massima in byte dell'archivio su file dei quadranti
+ * @field mapDataVersion : String Campo dati statico rappresentante la versione dei dati di mappa
+ * @field inlineTiles : boolean Campo dati statico che indica se le immagini dei quadranti vanno incluse nel JSON dell'Esperienza
+ * @field vectorTiles : boolean Campo dati statico che indica se il JSON dell'Esperienza contiene i dati vettoriali dei quadranti invece delle immagini
+ * @field renderParallelism : int Campo dati statico rappresentante il numero di thread per il rendering parallelo dei quadranti
+ * @field renderMemoryBudget : int Campo dati statico rappresentante il numero massimo di pixel in corso di disegno contemporaneamente
+ * @field renderQueueThreads : int Campo dati statico rappresentante il numero di thread per il rendering in background delle Esperienze
+ * @field renderQueueSize : int Campo dati statico rappresentante il numero massimo di Esperienze in attesa di rendering in background
+ * @field slowRenderMillis : int Campo dati statico rappresentante la durata in millisecondi oltre la quale il rendering di un quadrante viene registrato nel log
  * @field trackLineColor : Color Campo dati statico rappresentante il colore da utilizzare per i percorsi
  * @field checkPointColor : Color Campo dati statico rappresentante il colore da utilizzare per i checkpoint
  * @field lakeColor : Color Campo dati statico rappresentante il colore da utilizzare per i laghi
@@ -47,10 +76,17 @@ import java.io.IOException;
  * @field riverColor : Color Campo dati statico rappresentante il colore da utilizzare per i fiumi
  * @field backgroundColor : Color Campo dati statico rappresentante il colore da utilizzare per lo sfondo
  * @field elevationColor : Color Campo dati statico rappresentante il colore base per i quadranti di altitudine
+ * @field elevationShades : Color[] Campo dati statico contenente il colore dei quadranti di altitudine per ogni altezza
  * @field up : BufferedImage Campo dati statico contenente l'immagine da usare per un punto utente
  * @field food : BufferedImage Campo dati statico contenente l'immagine da usare per un punto d'interesse di tipo FOOD
  * @field info : BufferedImage Campo dati statico contenente l'immagine da usare per un punto d'interesse di tipo INFO
  * @field warning : BufferedImage Campo dati statico contenente l'immagine da usare per un punto d'interesse di tipo WARNING
+ * @field pngCompressionLevel : int Campo dati statico rappresentante il livello di compressione delle immagini PNG
+ * @field palette : IndexColorModel Campo dati statico contenente la tavolozza dei colori usati nel rendering
+ * @field emptyTile : byte[] Campo dati statico contenente l'immagine PNG di un quadrante vuoto
+ * @field emptyTileDigest : byte[] Campo dati statico contenente l'impronta del raster di un quadrante vuoto
+ * @field RENDER_FORMAT_VERSION : int Campo dati statico rappresentante la versione del codice di rendering e di codifica dei quadranti
+ * @field iconsDigest : String Campo dati statico contenente l'impronta dei pixel delle icone
  * @field r: Renderer Campo dati contenente un oggetto da cui ottenere le informazioni sulle entità dell'Esperienza da renderizzare
  * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
  * @version 1.0
@@ -64,6 +100,135 @@ class Utils {
 
     static int factor;
 
+    /**
+     * Numero massimo di pixel del rendering di un'Esperienza; le
+     * Esperienze più grandi vengono renderizzate a un livello di zoom
+     * meno dettagliato.
+     */
+
+    static int pixelBudget;
+
+    /**
+     * Indica se i quadranti vanno disegnati singolarmente su richiesta,
+     * invece di essere ritagliati da un'unica immagine dell'Esperienza.
+     */
+
+    static boolean tileRendering;
+
+    /**
+     * Indica se, disegnando i quadranti su richiesta, i dati di mappa
+     * vanno composti a partire dai quadranti condivisi di BaseLayer.
+     */
+
+    static boolean baseLayer;
+
+    /**
+     * Indica se le immagini create da createImage vanno disegnate
+     * scrivendo direttamente nel raster con ScanlinePainter; altrimenti
+     * vengono disegnate con Graphics2D tramite Java2DPainter.
+     */
+
+    static boolean scanlineRendering;
+
+    /**
+     * Tolleranza in pixel della semplificazione di laghi, fiumi e
+     * sentieri; con un valore non positivo vengono disegnati tutti i
+     * vertici.
+     */
+
+    static double simplifyTolerance;
+
+    /**
+     * Ingombro minimo in pixel di laghi, fiumi e sentieri: le entità più
+     * piccole in entrambe le dimensioni non vengono disegnate.
+     */
+
+    static double minFeatureSize;
+
+    /**
+     * Numero massimo di quadranti di BaseLayer in cache.
+     */
+
+    static int baseLayerCacheSize;
+
+    /**
+     * Dimensione massima in byte della cache dei quadranti.
+     */
+
+    static int tileCacheSize;
+
+    /**
+     * Directory dell'archivio su file dei quadranti; se vuota i quadranti
+     * vengono conservati solo in memoria.
+     */
+
+    static String tileStorePath;
+
+    /**
+     * Dimensione massima in byte dell'archivio su file dei quadranti.
+     */
+
+    static long tileStoreSize;
+
+    /**
+     * Versione dei dati di mappa; va cambiata quando i dati di mappa
+     * vengono aggiornati, in modo da invalidare i quadranti in cache.
+     */
+
+    static String mapDataVersion;
+
+    /**
+     * Indica se le immagini dei quadranti vanno incluse in base64 nel
+     * JSON dell'Esperienza; altrimenti il JSON contiene solo la griglia
+     * dei quadranti e le immagini vanno richieste singolarmente.
+     */
+
+    static boolean inlineTiles;
+
+    /**
+     * Indica se il JSON dell'Esperienza contiene i dati vettoriali dei
+     * quadranti, che il dispositivo disegna localmente, invece delle
+     * immagini PNG e delle impronte dei raster.
+     */
+
+    static boolean vectorTiles;
+
+    /**
+     * Numero di thread per il rendering parallelo dei quadranti; con un
+     * valore minore o uguale a uno i quadranti vengono renderizzati
+     * sequenzialmente.
+     */
+
+    static int renderParallelism;
+
+    /**
+     * Numero di thread per il rendering in background delle Esperienze
+     * modificate.
+     */
+
+    static int renderQueueThreads;
+
+    /**
+     * Numero massimo di pixel in corso di disegno contemporaneamente, tra
+     * tutti i rendering; limita la memoria occupata dalle immagini quando
+     * molti dispositivi sincronizzano insieme.
+     */
+
+    static int renderMemoryBudget;
+
+    /**
+     * Numero massimo di Esperienze in attesa di rendering in background.
+     */
+
+    static int renderQueueSize;
+
+    /**
+     * Durata in millisecondi oltre la quale il rendering di un quadrante
+     * viene registrato nel log, con i tempi delle singole fasi.
+     */
+
+    static int slowRenderMillis;
+
     /**
      * Colore da utilizzare per i percorsi.
      */
@@ -106,6 +271,14 @@ class Utils {
 
     static Color elevationColor;
 
+    /**
+     * Colore dei quadranti di altitudine per ogni altezza, ottenuto
+     * scurendo elevationColor una volta per ogni livello finché il colore
+     * non smette di cambiare.
+     */
+
+    private static Color[] elevationShades;
+
     /**
      * Immagine da usare per un checkpoint
      */
@@ -136,11 +309,71 @@ class Utils {
 
     static BufferedImage warning;
 
+    /**
+     * Livello di compressione delle immagini PNG, da 0 (nessuna
+     * compressione) a 9 (massima compressione).
+     */
+
+    static int pngCompressionLevel;
+
+    /**
+     * Tavolozza dei colori usati nel rendering: nero per le aree esterne
+     * all'Esperienza, i colori configurati, le sfumature di altitudine e
+     * i colori delle icone sovrapposte allo sfondo. I colori non presenti
+     * vengono sostituiti dal più vicino.
+     */
+
+    static IndexColorModel palette;
+
+    /**
+     * Immagine PNG di un quadrante vuoto, creata alla prima richiesta.
+     */
+
+    private static byte[] emptyTile;
+
+    /**
+     * Impronta del raster di un quadrante vuoto, creata alla prima richiesta.
+     */
+
+    private static byte[] emptyTileDigest;
+
+    /**
+     * Versione del codice di rendering e di codifica dei quadranti; va
+     * incrementata a ogni modifica che cambia i raster o le immagini PNG
+     * prodotte, in modo da invalidare i quadranti conservati su file.
+     */
+
+    static final int RENDER_FORMAT_VERSION = 1;
+
+    /**
+     * Impronta dei pixel delle icone, creata alla prima richiesta.
+     */
+
+    private static String iconsDigest;
+
     static {
 
         ApplicationContext context = new ClassPathXmlApplicationContext("Spring-Module.xml");
 
         factor = (Integer)context.getBean("factor");
+        pixelBudget = (Integer)context.getBean("pixelBudget");
+        tileRendering = (Boolean)context.getBean("tileRendering");
+        baseLayer = (Boolean)context.getBean("baseLayer");
+        scanlineRendering = (Boolean)context.getBean("scanlineRendering");
+        simplifyTolerance = (Double)context.getBean("simplifyTolerance");
+        minFeatureSize = (Double)context.getBean("minFeatureSize");
+        baseLayerCacheSize = (Integer)context.getBean("baseLayerCacheSize");
+        tileCacheSize = (Integer)context.getBean("tileCacheSize");
+        tileStorePath = (String)context.getBean("tileStorePath");
+        tileStoreSize = (Long)context.getBean("tileStoreSize");
+        mapDataVersion = (String)context.getBean("mapDataVersion");
+        inlineTiles = (Boolean)context.getBean("inlineTiles");
+        vectorTiles = (Boolean)context.getBean("vectorTiles");
+        renderParallelism = (Integer)context.getBean("renderParallelism");
+        renderQueueThreads = (Integer)context.getBean("renderQueueThreads");
+        renderMemoryBudget = (Integer)context.getBean("renderMemoryBudget");
+        renderQueueSize = (Integer)context.getBean("renderQueueSize");
+        slowRenderMillis = (Integer)context.getBean("slowRenderMillis");
 
         trackLineColor = colorFromString((String)context.getBean("trackLineColor"));
         checkPointColor = colorFromString((String)context.getBean("checkPointColor"));
@@ -149,12 +382,130 @@ class Utils {
         riverColor = colorFromString((String)context.getBean("riverColor"));
         backgroundColor = colorFromString((String)context.getBean("backgroundColor"));
         elevationColor = colorFromString((String)context.getBean("elevationColor"));
+        elevationShades = buildShades(elevationColor);
 
         up = imageFromFile("up.png");
         cp = imageFromFile("cp.png");
         food = imageFromFile("food.png");
         info = imageFromFile("info.png");
         warning = imageFromFile("warning.png");
+
+        pngCompressionLevel = (Integer)context.getBean("pngCompressionLevel");
+        palette = buildPalette();
+    }
+
+    /**
+     * Costruisce la tavolozza dei colori usati nel rendering.
+     *
+     * @return Restituisce un IndexColorModel con al più 256 colori, il primo dei quali è il nero.
+     */
+
+    static IndexColorModel buildPalette() {
+        LinkedHashSet<Integer> colors = new LinkedHashSet<Integer>();
+        colors.add(Color.BLACK.getRGB());
+        colors.add(backgroundColor.getRGB());
+        colors.add(lakeColor.getRGB());
+        colors.add(pathColor.getRGB());
+        colors.add(riverColor.getRGB());
+        colors.add(trackLineColor.getRGB());
+        colors.add(checkPointColor.getRGB());
+
+        for (Color c : elevationShades)
+            colors.add(c.getRGB());
+
+        for (BufferedImage i : new BufferedImage[] {cp, up, food, info, warning})
+            for (int y = 0; y < i.getHeight(); y++)
+                for (int x = 0; x < i.getWidth(); x++)
+                    colors.add(over(i.getRGB(x, y), backgroundColor.getRGB()));
+
+        int size = Math.min(colors.size(), 256);
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+        int n = 0;
+        for (int rgb : colors) {
+            if (n == size)
+                break;
+            r[n] = (byte)(rgb >> 16);
+            g[n] = (byte)(rgb >> 8);
+            b[n] = (byte)rgb;
+            n++;
+        }
+        return new IndexColorModel(8, size, r, g, b);
+    }
+
+    /**
+     * Costruisce la tabella dei colori dei quadranti di altitudine.
+     *
+     * @param c Colore dei quadranti di altezza nulla.
+     * @return Restituisce i colori ottenuti scurendo c zero o più volte, fino al primo colore che Color.darker() lascia invariato.
+     */
+
+    static Color[] buildShades(Color c) {
+        ArrayList<Color> shades = new ArrayList<Color>();
+        shades.add(c);
+        while (!c.equals(c.darker())) {
+            c = c.darker();
+            shades.add(c);
+        }
+        return shades.toArray(new Color[shades.size()]);
+    }
+
+    /**
+     * Restituisce il colore di un quadrante di altitudine, pari a
+     * elevationColor scurito una volta per ogni livello di altezza.
+     *
+     * @param height Altezza del quadrante.
+     * @return Restituisce il colore del quadrante.
+     */
+
+    static Color elevationShade(int height) {
+        return elevationShades[Math.max(0, Math.min(height, elevationShades.length - 1))];
+    }
+
+    /**
+     * Restituisce il colore risultante dalla sovrapposizione di un colore
+     * semitrasparente a un colore opaco.
+     *
+     * @param argb Colore da sovrapporre, con trasparenza.
+     * @param rgb Colore opaco sottostante.
+     * @return Restituisce il colore opaco risultante.
+     */
+
+    static int over(int argb, int rgb) {
+        int a = argb >>> 24;
+        int r = (((argb >> 16) & 0xff) * a + ((rgb >> 16) & 0xff) * (255 - a)) / 255;
+        int g = (((argb >> 8) & 0xff) * a + ((rgb >> 8) & 0xff) * (255 - a)) / 255;
+        int b = ((argb & 0xff) * a + (rgb & 0xff) * (255 - a)) / 255;
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Crea un'immagine su cui disegnare, con la tavolozza dei colori usati
+     * nel rendering. I pixel non disegnati sono neri.
+     *
+     * @param width Larghezza in pixel dell'immagine.
+     * @param height Altezza in pixel dell'immagine.
+     * @return Restituisce un'immagine a colori indicizzati.
+     */
+
+    static BufferedImage createImage(int width, int height) {
+        RenderMetrics.count(RenderMetrics.PIXELS, (long)width * height);
+        return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+    }
+
+    /**
+     * Crea il Painter con cui disegnare su un'immagine, secondo
+     * l'impostazione di scanlineRendering.
+     *
+     * @param img Immagine su cui disegnare.
+     * @return Restituisce un ScanlinePainter se scanlineRendering è attivo e l'immagine lo consente, altrimenti un Java2DPainter.
+     */
+
+    static Painter createPainter(BufferedImage img) {
+        if (scanlineRendering && ScanlinePainter.supports(img))
+            return new ScanlinePainter(img);
+        return new Java2DPainter(img);
     }
 
     /**
@@ -239,4 +590,159 @@ class Utils {
         return Math.ceil(a/b)*b;
     }
 
+    /**
+     * Restituisce l'impronta SHA-1 di un array di byte.
+     *
+     * @param data Dati di cui calcolare l'impronta.
+     * @return Restituisce l'impronta dei dati.
+     */
+
+    static byte[] sha1(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restituisce la rappresentazione esadecimale di un array di byte.
+     *
+     * @param data Dati da rappresentare.
+     * @return Restituisce una String esadecimale.
+     */
+
+    static String toHex(byte[] data) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            hex[2*i] = digits[(data[i] >> 4) & 0xf];
+            hex[2*i+1] = digits[data[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Restituisce l'impronta della configurazione del rendering: versione
+     * del codice di rendering, versione dei dati di mappa, Painter
+     * utilizzato, uso di BaseLayer, semplificazione, livello di
+     * compressione, colori e icone. Quadranti con la stessa chiave di
+     * contenuto ma impronte diverse possono avere raster o immagini PNG
+     * diversi, per cui l'impronta fa parte delle chiavi della cache e
+     * dell'archivio su file.
+     *
+     * @return Restituisce una String esadecimale rappresentante l'impronta SHA-1 della configurazione.
+     */
+
+    static String renderFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(RENDER_FORMAT_VERSION).append('|').append(mapDataVersion)
+            .append('|').append(scanlineRendering).append('|').append(baseLayer)
+            .append('|').append(simplifyTolerance).append('|').append(minFeatureSize)
+            .append('|').append(pngCompressionLevel);
+        for (Color c : new Color[] {trackLineColor, checkPointColor, lakeColor, pathColor,
+                                    riverColor, backgroundColor, elevationColor})
+            sb.append('|').append(Integer.toHexString(c.getRGB()));
+        sb.append('|').append(iconsDigest());
+
+        try {
+            return toHex(sha1(sb.toString().getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restituisce l'impronta dei pixel delle icone.
+     *
+     * @return Restituisce una String esadecimale rappresentante l'impronta SHA-1 delle icone.
+     */
+
+    private static synchronized String iconsDigest() {
+        if (iconsDigest == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (BufferedImage i : new BufferedImage[] {cp, up, food, info, warning}) {
+                int[] pixels = i.getRGB(0, 0, i.getWidth(), i.getHeight(), null, 0, i.getWidth());
+                for (int d : new int[] {i.getWidth(), i.getHeight()}) {
+                    out.write(d >> 8);
+                    out.write(d);
+                }
+                for (int p : pixels) {
+                    out.write(p >>> 24);
+                    out.write(p >> 16);
+                    out.write(p >> 8);
+                    out.write(p);
+                }
+            }
+            iconsDigest = toHex(sha1(out.toByteArray()));
+        }
+        return iconsDigest;
+    }
+
+    /**
+     * Restituisce l'impronta SHA-1 del raster di un quadrante.
+     *
+     * @param pixels Pixel del quadrante in formato RGB.
+     * @return Restituisce l'impronta del raster.
+     */
+
+    static byte[] rasterDigest(int[] pixels) {
+        byte[] data = new byte[pixels.length * 3];
+        for (int i = 0, j = 0; i < pixels.length; i++) {
+            data[j++] = (byte)(pixels[i] >> 16);
+            data[j++] = (byte)(pixels[i] >> 8);
+            data[j++] = (byte)pixels[i];
+        }
+        return sha1(data);
+    }
+
+    /**
+     * Indica se un quadrante contiene solo il colore di sfondo.
+     *
+     * @param pixels Pixel del quadrante in formato RGB.
+     * @return Restituisce true se tutti i pixel hanno il colore di sfondo.
+     */
+
+    static boolean isEmptyTile(int[] pixels) {
+        int bg = backgroundColor.getRGB() & 0xffffff;
+        for (int p : pixels)
+            if ((p & 0xffffff) != bg)
+                return false;
+        return true;
+    }
+
+    /**
+     * Restituisce l'impronta del raster di un quadrante vuoto.
+     *
+     * @return Restituisce l'impronta di un quadrante contenente solo il colore di sfondo.
+     */
+
+    static synchronized byte[] emptyTileDigest() {
+        if (emptyTileDigest == null) {
+            int[] pixels = new int[RasterQuadrant.quadrantWidth * RasterQuadrant.quadrantHeight];
+            Arrays.fill(pixels, backgroundColor.getRGB());
+            emptyTileDigest = rasterDigest(pixels);
+        }
+        return emptyTileDigest;
+    }
+
+    /**
+     * Restituisce l'immagine PNG di un quadrante vuoto.
+     *
+     * @return Restituisce l'immagine PNG di un quadrante contenente solo il colore di sfondo.
+     * @throws IOException
+     */
+
+    static synchronized byte[] emptyTile() throws IOException {
+        if (emptyTile == null) {
+            BufferedImage img = createImage(RasterQuadrant.quadrantWidth, RasterQuadrant.quadrantHeight);
+            Graphics2D g = img.createGraphics();
+            g.setBackground(backgroundColor);
+            g.clearRect(0, 0, img.getWidth(), img.getHeight());
+            g.dispose();
+
+            emptyTile = PngEncoder.encode(img);
+        }
+        return emptyTile;
+    }
 }
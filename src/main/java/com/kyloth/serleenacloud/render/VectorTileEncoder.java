@@ -0,0 +1,567 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: VectorTileEncoder.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer      Changes
+ * 1.0.0    Nicola Mometto  Creazione file, codice e javadoc iniziali
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import com.kyloth.serleenacloud.datamodel.business.River;
+import com.kyloth.serleenacloud.datamodel.business.Path;
+import com.kyloth.serleenacloud.datamodel.business.Lake;
+import com.kyloth.serleenacloud.datamodel.business.PointOfInterest;
+import com.kyloth.serleenacloud.datamodel.business.UserPoint;
+import com.kyloth.serleenacloud.datamodel.business.Track;
+
+import java.awt.Rectangle;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Codificatore dei dati vettoriali di un quadrante.
+ *
+ * @use Viene utilizzato da RasterQuadrant per produrre, in alternativa all'immagine PNG, le entità che intersecano il quadrante, che il dispositivo disegna localmente. Le entità sono raggruppate per livello (altitudini, laghi, fiumi, sentieri, percorsi, punti d'interesse e punti utente); ogni livello non vuoto è preceduto dal suo identificativo e dal numero di entità. Le coordinate sono in pixel del livello di zoom, relative all'angolo nord-ovest del quadrante, e i vertici di poligoni e spezzate sono codificati come differenze dal vertice precedente. Poligoni e spezzate vengono ritagliati sul quadrante allargato del margine del loro tratto, con l'algoritmo di Sutherland–Hodgman per i poligoni e ritagliando i singoli segmenti per le spezzate, che possono quindi essere divise in più entità; tutti gli interi sono codificati come varint, con codifica zigzag per quelli con segno. I dati iniziano con il byte VERSION.
+ * @field VERSION : int Campo dati statico rappresentante la versione del formato
+ * @field out : ByteArrayOutputStream Campo dati contenente i dati già codificati
+ * @field layer : ByteArrayOutputStream Campo dati contenente le entità del livello in corso
+ * @field layerId : int Campo dati rappresentante l'identificativo del livello in corso
+ * @field features : int Campo dati rappresentante il numero di entità del livello in corso
+ * @field area : Rectangle Campo dati rappresentante l'area del quadrante in pixel dell'immagine
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0
+ */
+
+class VectorTileEncoder {
+
+    /**
+     * Versione del formato.
+     */
+
+    static final int VERSION = 2;
+
+    /**
+     * Livello delle altitudini: per ogni rettangolo colonna, riga,
+     * larghezza, altezza e altezza del terreno.
+     */
+
+    static final int ELEVATION = 0;
+
+    /**
+     * Livello dei laghi: poligoni.
+     */
+
+    static final int LAKE = 1;
+
+    /**
+     * Livello dei fiumi: poligoni.
+     */
+
+    static final int RIVER = 2;
+
+    /**
+     * Livello dei sentieri: poligoni.
+     */
+
+    static final int PATH = 3;
+
+    /**
+     * Livello dei percorsi: spezzate, i cui vertici sono i checkpoint.
+     */
+
+    static final int TRACK = 4;
+
+    /**
+     * Livello dei punti d'interesse: tipo e posizione.
+     */
+
+    static final int POI = 5;
+
+    /**
+     * Livello dei punti utente: posizione.
+     */
+
+    static final int USER_POINT = 6;
+
+    /**
+     * Dati già codificati.
+     */
+
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /**
+     * Entità del livello in corso.
+     */
+
+    private ByteArrayOutputStream layer = new ByteArrayOutputStream();
+
+    /**
+     * Identificativo del livello in corso.
+     */
+
+    private int layerId = -1;
+
+    /**
+     * Numero di entità del livello in corso.
+     */
+
+    private int features = 0;
+
+    /**
+     * Area del quadrante in pixel dell'immagine.
+     */
+
+    private Rectangle area;
+
+    /**
+     * Crea un nuovo VectorTileEncoder.
+     *
+     * @param area Area del quadrante in pixel dell'immagine; le coordinate vengono codificate relativamente al suo angolo nord-ovest.
+     */
+
+    VectorTileEncoder(Rectangle area) {
+        this.area = area;
+        out.write(VERSION);
+    }
+
+    /**
+     * Codifica le entità che intersecano un quadrante dell'immagine di
+     * un'Esperienza.
+     *
+     * @param ir ImageRenderer relativo all'Esperienza.
+     * @param x Coordinata x in pixel dell'angolo nord-ovest del quadrante
+     * @param y Coordinata y in pixel dell'angolo nord-ovest del quadrante, misurata dal bordo sud
+     * @return Restituisce i dati vettoriali del quadrante.
+     */
+
+    static byte[] encode(ImageRenderer ir, int x, int y) {
+        Rectangle area = new Rectangle(x, ir.height - y, RasterQuadrant.quadrantWidth, RasterQuadrant.quadrantHeight)
+            .intersection(new Rectangle(0, 0, ir.width, ir.height));
+        VectorTileEncoder e = new VectorTileEncoder(area);
+        Renderer r = ir.r;
+        r.loadMapData();
+
+        e.beginLayer(ELEVATION);
+        ElevationLayer elevations = ir.elevationLayer(r.elevations);
+        int[] spans = elevations.getSpans();
+        for (int i = 0; i < elevations.getCount(); i++)
+            e.addRect(spans[5*i], spans[5*i+1], spans[5*i+2], spans[5*i+3], spans[5*i+4]);
+
+        e.beginLayer(LAKE);
+        for (Lake l : r.lakes)
+            e.addPoly(ir, ir.projection.projectSimplified(l, l.getPoints()), 1, true);
+
+        e.beginLayer(RIVER);
+        for (River t : r.rivers)
+            e.addPoly(ir, ir.projection.projectSimplified(t, t.getPoints()), 1, true);
+
+        e.beginLayer(PATH);
+        for (Path p : r.paths)
+            e.addPoly(ir, ir.projection.projectSimplified(p, p.getPoints()), 1, true);
+
+        e.beginLayer(TRACK);
+        for (Track t : r.tracks)
+            e.addPoly(ir, ir.projection.project(t, t.getCheckPoints()),
+                      Math.max(Utils.cp.getWidth(), Utils.cp.getHeight()), false);
+
+        e.beginLayer(POI);
+        for (PointOfInterest p : r.pois) {
+            double[] xy = ir.projection.project(p);
+            int px = ir.pixelX(xy[0]);
+            int py = ir.pixelY(xy[1]);
+            if (area.intersects(ir.imageBounds(ir.poiImage(p), px, py)))
+                e.addPoint(px, py, p.getPOIType().ordinal());
+        }
+
+        e.beginLayer(USER_POINT);
+        for (UserPoint p : r.ups) {
+            double[] xy = ir.projection.project(p);
+            int px = ir.pixelX(xy[0]);
+            int py = ir.pixelY(xy[1]);
+            if (area.intersects(ir.imageBounds(Utils.up, px, py)))
+                e.addPoint(px, py, -1);
+        }
+
+        return e.toByteArray();
+    }
+
+    /**
+     * Inizia un nuovo livello, concludendo quello in corso.
+     *
+     * @param id Identificativo del livello.
+     */
+
+    void beginLayer(int id) {
+        endLayer();
+        layerId = id;
+    }
+
+    /**
+     * Conclude il livello in corso, scrivendolo solo se contiene entità.
+     */
+
+    private void endLayer() {
+        if (features > 0) {
+            writeVarint(out, layerId);
+            writeVarint(out, features);
+            out.write(layer.toByteArray(), 0, layer.size());
+        }
+        layer.reset();
+        features = 0;
+    }
+
+    /**
+     * Aggiunge al livello in corso la porzione di un rettangolo che
+     * interseca il quadrante.
+     *
+     * @param x Colonna in pixel dell'immagine dell'angolo nord-ovest.
+     * @param y Riga in pixel dell'immagine dell'angolo nord-ovest.
+     * @param width Larghezza in pixel.
+     * @param height Altezza in pixel.
+     * @param value Valore associato al rettangolo.
+     */
+
+    void addRect(int x, int y, int width, int height, int value) {
+        Rectangle r = new Rectangle(x, y, width, height).intersection(area);
+        if (r.isEmpty())
+            return;
+        writeVarint(layer, r.x - area.x);
+        writeVarint(layer, r.y - area.y);
+        writeVarint(layer, r.width);
+        writeVarint(layer, r.height);
+        writeVarint(layer, value);
+        features++;
+    }
+
+    /**
+     * Aggiunge al livello in corso un poligono o una spezzata, ritagliati
+     * sul quadrante.
+     *
+     * @param ir ImageRenderer che converte le coordinate in pixel dell'immagine.
+     * @param xy Coordinate in pixel globali dei vertici, restituite da Projection.
+     * @param margin Margine in pixel di cui allargare il quadrante, pari all'ingombro del tratto o delle icone sui vertici.
+     * @param closed Indica se i vertici descrivono un poligono invece di una spezzata.
+     */
+
+    void addPoly(ImageRenderer ir, double[] xy, int margin, boolean closed) {
+        int n = xy.length / 2;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = ir.pixelX(xy[2*i]);
+            ys[i] = ir.pixelY(xy[2*i+1]);
+        }
+        addPoly(xs, ys, n, margin, closed);
+    }
+
+    /**
+     * Aggiunge al livello in corso un poligono o una spezzata, ritagliati
+     * sul quadrante allargato del margine. Le entità interamente contenute
+     * vengono aggiunte invariate e quelle esterne vengono omesse; un
+     * poligono viene ritagliato con l'algoritmo di Sutherland–Hodgman,
+     * mentre una spezzata viene ritagliata segmento per segmento e ogni
+     * tratto contiguo interno al quadrante diventa un'entità. Il margine
+     * fa sì che i lati e i vertici introdotti dal ritaglio cadano fuori
+     * dal quadrante, in modo che il disegno al suo interno non cambi.
+     *
+     * @param xs Colonne in pixel dell'immagine dei vertici.
+     * @param ys Righe in pixel dell'immagine dei vertici.
+     * @param n Numero di vertici.
+     * @param margin Margine in pixel di cui allargare il quadrante.
+     * @param closed Indica se i vertici descrivono un poligono invece di una spezzata.
+     */
+
+    void addPoly(int[] xs, int[] ys, int n, int margin, boolean closed) {
+        if (n == 0)
+            return;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+
+        int left = area.x - margin;
+        int top = area.y - margin;
+        int right = area.x + area.width + margin;
+        int bottom = area.y + area.height + margin;
+        if (maxX < left || maxY < top || minX > right || minY > bottom)
+            return;
+
+        if (minX >= left && minY >= top && maxX <= right && maxY <= bottom) {
+            writePoly(xs, ys, n);
+            return;
+        }
+
+        if (closed && n > 2) {
+            double[] p = new double[2 * n];
+            for (int i = 0; i < n; i++) {
+                p[2*i] = xs[i];
+                p[2*i+1] = ys[i];
+            }
+            p = clipEdge(p, 0, left);
+            p = clipEdge(p, 1, top);
+            p = clipEdge(p, 2, right);
+            p = clipEdge(p, 3, bottom);
+            writeClipped(p, p.length / 2);
+        } else {
+            double[] piece = new double[2 * (n + 1)];
+            int size = 0;
+            double[] seg = new double[4];
+            for (int i = 0; i < Math.max(n - 1, 1); i++) {
+                int j = Math.min(i + 1, n - 1);
+                seg[0] = xs[i];
+                seg[1] = ys[i];
+                seg[2] = xs[j];
+                seg[3] = ys[j];
+                if (!clipSegment(seg, left, top, right, bottom)) {
+                    writeClipped(piece, size);
+                    size = 0;
+                    continue;
+                }
+                if (size > 0 && (seg[0] != piece[2*size-2] || seg[1] != piece[2*size-1])) {
+                    writeClipped(piece, size);
+                    size = 0;
+                }
+                if (size == 0) {
+                    piece[0] = seg[0];
+                    piece[1] = seg[1];
+                    size = 1;
+                }
+                if (j != i) {
+                    piece[2*size] = seg[2];
+                    piece[2*size+1] = seg[3];
+                    size++;
+                }
+            }
+            writeClipped(piece, size);
+        }
+    }
+
+    /**
+     * Ritaglia un poligono rispetto a un lato del quadrante, secondo un
+     * passo dell'algoritmo di Sutherland–Hodgman.
+     *
+     * @param p Coordinate dei vertici del poligono, alternate x e y.
+     * @param edge Lato del quadrante: 0 ovest, 1 nord, 2 est, 3 sud.
+     * @param bound Coordinata del lato.
+     * @return Restituisce le coordinate dei vertici del poligono ritagliato.
+     */
+
+    private static double[] clipEdge(double[] p, int edge, double bound) {
+        int n = p.length / 2;
+        double[] q = new double[4 * n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + n - 1) % n;
+            double ax = p[2*j], ay = p[2*j+1];
+            double bx = p[2*i], by = p[2*i+1];
+            boolean aIn = inside(ax, ay, edge, bound);
+            boolean bIn = inside(bx, by, edge, bound);
+            if (aIn != bIn) {
+                double t = (edge % 2 == 0 ? bound - ax : bound - ay)
+                    / (edge % 2 == 0 ? bx - ax : by - ay);
+                q[2*size] = edge % 2 == 0 ? bound : ax + t * (bx - ax);
+                q[2*size+1] = edge % 2 == 0 ? ay + t * (by - ay) : bound;
+                size++;
+            }
+            if (bIn) {
+                q[2*size] = bx;
+                q[2*size+1] = by;
+                size++;
+            }
+        }
+        double[] r = new double[2 * size];
+        System.arraycopy(q, 0, r, 0, r.length);
+        return r;
+    }
+
+    /**
+     * Indica se un punto si trova dal lato interno di un lato del quadrante.
+     *
+     * @param x Coordinata x del punto.
+     * @param y Coordinata y del punto.
+     * @param edge Lato del quadrante: 0 ovest, 1 nord, 2 est, 3 sud.
+     * @param bound Coordinata del lato.
+     * @return Restituisce true se il punto è interno o sul lato.
+     */
+
+    private static boolean inside(double x, double y, int edge, double bound) {
+        switch (edge) {
+        case 0:
+            return x >= bound;
+        case 1:
+            return y >= bound;
+        case 2:
+            return x <= bound;
+        default:
+            return y <= bound;
+        }
+    }
+
+    /**
+     * Ritaglia un segmento su un rettangolo, con l'algoritmo di
+     * Liang–Barsky.
+     *
+     * @param seg Coordinate degli estremi del segmento, sostituite da quelle del segmento ritagliato.
+     * @param left Colonna del lato ovest.
+     * @param top Riga del lato nord.
+     * @param right Colonna del lato est.
+     * @param bottom Riga del lato sud.
+     * @return Restituisce false se il segmento è esterno al rettangolo.
+     */
+
+    private static boolean clipSegment(double[] seg, double left, double top, double right, double bottom) {
+        double dx = seg[2] - seg[0];
+        double dy = seg[3] - seg[1];
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {seg[0] - left, right - seg[0], seg[1] - top, bottom - seg[1]};
+        double t0 = 0;
+        double t1 = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0)
+                    return false;
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0)
+                    t0 = Math.max(t0, t);
+                else
+                    t1 = Math.min(t1, t);
+            }
+        }
+        if (t0 > t1)
+            return false;
+        double x0 = seg[0];
+        double y0 = seg[1];
+        seg[0] = x0 + t0 * dx;
+        seg[1] = y0 + t0 * dy;
+        seg[2] = x0 + t1 * dx;
+        seg[3] = y0 + t1 * dy;
+        return true;
+    }
+
+    /**
+     * Aggiunge al livello in corso un poligono o una spezzata ritagliati,
+     * arrotondandone i vertici ai pixel e omettendo i vertici ripetuti.
+     *
+     * @param p Coordinate dei vertici, alternate x e y.
+     * @param n Numero di vertici; se nullo non viene aggiunto nulla.
+     */
+
+    private void writeClipped(double[] p, int n) {
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int x = Utils.round(p[2*i]);
+            int y = Utils.round(p[2*i+1]);
+            if (size > 0 && xs[size-1] == x && ys[size-1] == y)
+                continue;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+        if (size > 0)
+            writePoly(xs, ys, size);
+    }
+
+    /**
+     * Scrive nel livello in corso un poligono o una spezzata, con i
+     * vertici codificati come differenze dal precedente.
+     *
+     * @param xs Colonne in pixel dell'immagine dei vertici.
+     * @param ys Righe in pixel dell'immagine dei vertici.
+     * @param n Numero di vertici.
+     */
+
+    private void writePoly(int[] xs, int[] ys, int n) {
+        writeVarint(layer, n);
+        int px = area.x;
+        int py = area.y;
+        for (int i = 0; i < n; i++) {
+            writeVarint(layer, zigzag(xs[i] - px));
+            writeVarint(layer, zigzag(ys[i] - py));
+            px = xs[i];
+            py = ys[i];
+        }
+        features++;
+    }
+
+    /**
+     * Aggiunge al livello in corso un punto.
+     *
+     * @param x Colonna in pixel dell'immagine.
+     * @param y Riga in pixel dell'immagine.
+     * @param value Valore associato al punto, o un valore negativo se assente.
+     */
+
+    void addPoint(int x, int y, int value) {
+        if (value >= 0)
+            writeVarint(layer, value);
+        writeVarint(layer, zigzag(x - area.x));
+        writeVarint(layer, zigzag(y - area.y));
+        features++;
+    }
+
+    /**
+     * Conclude la codifica.
+     *
+     * @return Restituisce i dati vettoriali del quadrante.
+     */
+
+    byte[] toByteArray() {
+        endLayer();
+        return out.toByteArray();
+    }
+
+    /**
+     * Scrive un intero non negativo come varint: sette bit per byte, a
+     * partire dai meno significativi, con il bit più significativo di ogni
+     * byte a indicare che ne seguono altri.
+     *
+     * @param out Stream su cui scrivere.
+     * @param v Intero da scrivere, interpretato senza segno.
+     */
+
+    static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /**
+     * Applica la codifica zigzag, che associa agli interi di modulo
+     * piccolo valori piccoli indipendentemente dal segno.
+     *
+     * @param v Intero con segno.
+     * @return Restituisce 2v per v non negativo, -2v-1 altrimenti.
+     */
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+}
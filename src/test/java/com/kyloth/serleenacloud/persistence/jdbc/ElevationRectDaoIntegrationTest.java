@@ -101,5 +101,16 @@ public class ElevationRectDaoIntegrationTest {
         assertFalse(i_el.hasNext());
     }
 
+    /**
+     * Verifica che il metodo findAll restituisca gli ElevationRect che
+     * contengono interamente la regione fornita come parametro.
+     */
 
+    @Test
+    public void testFindAllCovering() {
+        Rect region = new Rect(new Point(9, 6), new Point(8, 7));
+        Iterator<ElevationRect> i_el = ecd.findAll(region).iterator();
+        assertTrue(i_el.next().getHeight() == 2);
+        assertFalse(i_el.hasNext());
+    }
 }
@@ -31,17 +31,24 @@ import org.junit.Test;
 import org.junit.BeforeClass;
 import org.junit.AfterClass;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import com.kyloth.serleenacloud.persistence.jdbc.JDBCDataSource;
 import com.kyloth.serleenacloud.persistence.IExperienceDao;
 
 import com.kyloth.serleenacloud.datamodel.business.Experience;
+import com.kyloth.serleenacloud.datamodel.business.Track;
+import com.kyloth.serleenacloud.datamodel.business.Telemetry;
+import com.kyloth.serleenacloud.datamodel.business.CheckPoint;
 import com.kyloth.serleenacloud.datamodel.business.UserPoint;
 import com.kyloth.serleenacloud.datamodel.business.PointOfInterest;
 import com.kyloth.serleenacloud.datamodel.geometry.Rect;
@@ -86,6 +93,11 @@ public class ExperienceDaoIntegrationTest {
         tpl.update(expUPInsert);
         tpl.update(insertPOIs);
         tpl.update(insertExperiencePOIs);
+        tpl.update("INSERT INTO Tracks (Id, Name) VALUES ('t1', 'Track');");
+        tpl.update("INSERT INTO ExperienceTracks (ExperienceId, TrackId) VALUES ('id1', 't1');");
+        tpl.update("INSERT INTO Checkpoints (TrackId, Longitude, Latitude, Idx) VALUES ('t1', 4.0, 4.0, 1), ('t1', 3.0, 3.0, 0);");
+        tpl.update("INSERT INTO Telemetries (Id, TrackId) VALUES (100, 't1');");
+        tpl.update("INSERT INTO TelemetryEvents (TelemetryId, Date) VALUES (100, '2015-05-01 10:05:00'), (100, '2015-05-01 10:00:00');");
         ed = ds_user.experienceDao();
     }
 
@@ -118,6 +130,77 @@ public class ExperienceDaoIntegrationTest {
         assertFalse(i_POIs.hasNext());
     }
 
+    /**
+     * Verifica che il metodo findAll restituisca i percorsi con i relativi
+     * checkpoint e tracciamenti ordinati, con un numero di query che non
+     * dipende dal numero di entità, e che percorsi, tracciamenti ed eventi
+     * vengano letti dal database solo alla prima iterazione.
+     */
+
+    @Test
+    public void testFindAllTracks() {
+        long before = ds.getMetrics().get("borrowed");
+        Experience exp = ed.findAll().iterator().next();
+        assertEquals(3, ds.getMetrics().get("borrowed") - before);
+
+        Track t = exp.getTracks().iterator().next();
+        assertEquals(5, ds.getMetrics().get("borrowed") - before);
+        assertSame(t, exp.getTracks().iterator().next());
+        t.getTelemetries().iterator().next();
+        assertEquals(6, ds.getMetrics().get("borrowed") - before);
+        t.getTelemetries().iterator().next().getEvents().iterator();
+        assertEquals(7, ds.getMetrics().get("borrowed") - before);
+
+        assertEquals("t1", t.getId());
+        assertEquals("Track", t.getName());
+        Iterator<CheckPoint> cps = t.getCheckPoints().iterator();
+        assertEquals(0, cps.next().getId());
+        assertEquals(1, cps.next().getId());
+        assertFalse(cps.hasNext());
+
+        Iterator<Telemetry> telemetries = t.getTelemetries().iterator();
+        Iterator<Date> events = telemetries.next().getEvents().iterator();
+        assertTrue(events.next().before(events.next()));
+        assertFalse(events.hasNext());
+        assertFalse(telemetries.hasNext());
+
+        Iterator<UserPoint> ups = exp.getUserPoints().iterator();
+        assertEquals(3.0, ups.next().getLatitude(), 0);
+        assertEquals(5.0, ups.next().getLatitude(), 0);
+        assertFalse(ups.hasNext());
+    }
+
+    /**
+     * Verifica che il metodo find carichi la sola esperienza richiesta con
+     * un numero costante di query, e restituisca null per un id assente.
+     */
+
+    @Test
+    public void testFind() {
+        long before = ds.getMetrics().get("borrowed");
+        Experience exp = ed.find("id1");
+        assertEquals(3, ds.getMetrics().get("borrowed") - before);
+        assertEquals("id1", exp.getId());
+        assertEquals("t1", exp.getTracks().iterator().next().getId());
+        assertNull(ed.find("missing"));
+    }
+
+    /**
+     * Verifica che il metodo findAll(Iterable<String>) restituisca le sole
+     * esperienze presenti, nell'ordine degli id, con un numero costante di
+     * query.
+     */
+
+    @Test
+    public void testFindAllIds() {
+        long before = ds.getMetrics().get("borrowed");
+        Iterator<Experience> i = ed.findAll(Arrays.asList("missing", "id1")).iterator();
+        assertEquals(3, ds.getMetrics().get("borrowed") - before);
+        assertEquals("id1", i.next().getId());
+        assertFalse(i.hasNext());
+        assertFalse(ed.findAll(new ArrayList<String>()).iterator().hasNext());
+    }
+
     /**
      * Verifica che il metodo persist aggiorni l'esperienza
      */
@@ -128,4 +211,62 @@ public class ExperienceDaoIntegrationTest {
         ed.persist(new Experience("Experience modificata", "id1", exp.getBoundingRect(), exp.getTracks(), exp.getUserPoints(), exp.getPOIs()));
         assertEquals("Experience modificata", ed.find("id1").getName());
     }
+
+    /**
+     * Verifica che il metodo persist inserisca un'esperienza con percorsi,
+     * tracciamenti, punti utente e punti di interesse utilizzando una sola
+     * connessione.
+     */
+
+    @Test
+    public void testPersistSingleConnection() {
+        tpl.update("INSERT INTO Users (Email, Password, DeviceId) VALUES ('bar@foo.com', 'psw', 'Kyloth-2');");
+        IExperienceDao ed2 = ds.forUser(new User("bar@foo.com", "psw", "Kyloth-2")).experienceDao();
+        CheckPoint[] cps = new CheckPoint[20];
+        for (int i = 0; i < cps.length; i++)
+            cps[i] = new CheckPoint(3.0 + i * 0.1, 3.0, i);
+        Date[] events = new Date[50];
+        for (int i = 0; i < events.length; i++)
+            events[i] = new Date(i * 1000L);
+        Track t = new Track("Track", "t2", cps, new Telemetry[] {new Telemetry(events, "t2")});
+        Experience exp = new Experience("Experience", "id2", new Rect(new Point(10.0, 2.0), new Point(2.0, 7.0)),
+                                        new Track[] {t},
+                                        new UserPoint[] {new UserPoint(3.0, 3.0)},
+                                        new PointOfInterest[] {new PointOfInterest(4.0, 4.0, "POI1", PointOfInterest.POIType.INFO)});
+
+        long before = ds.getMetrics().get("borrowed");
+        ed2.persist(exp);
+        assertEquals(1, ds.getMetrics().get("borrowed") - before);
+
+        assertEquals(20, tpl.queryForObject("SELECT COUNT(*) FROM Checkpoints WHERE TrackId = 't2'", Integer.class).intValue());
+        assertEquals(50, tpl.queryForObject("SELECT COUNT(*) FROM TelemetryEvents te, Telemetries tl " +
+                                            "WHERE te.TelemetryId = tl.Id AND tl.TrackId = 't2'", Integer.class).intValue());
+        Experience found = ed2.find("id2");
+        assertEquals("t2", found.getTracks().iterator().next().getId());
+        assertEquals("POI1", found.getPOIs().iterator().next().getName());
+        assertEquals(3.0, found.getUserPoints().iterator().next().getLatitude(), 0);
+    }
+
+    /**
+     * Verifica che il metodo persist non lasci dati parziali nel db se
+     * un inserimento fallisce.
+     */
+
+    @Test
+    public void testPersistRollback() {
+        CheckPoint[] cps = {new CheckPoint(3.0, 3.0, 0)};
+        Track t = new Track("Track", "t3", cps, new Telemetry[] {new Telemetry(new Date[] {new Date()}, "t3")});
+        Experience exp = new Experience("Experience", "id3", new Rect(new Point(10.0, 2.0), new Point(2.0, 7.0)),
+                                        new Track[] {t},
+                                        new UserPoint[0],
+                                        new PointOfInterest[] {new PointOfInterest(4.0, 4.0, "missing", PointOfInterest.POIType.INFO)});
+        try {
+            ed.persist(exp);
+            fail();
+        } catch (DataAccessException e) {
+        }
+        assertEquals(0, tpl.queryForObject("SELECT COUNT(*) FROM Experiences WHERE Id = 'id3'", Integer.class).intValue());
+        assertEquals(0, tpl.queryForObject("SELECT COUNT(*) FROM Tracks WHERE Id = 't3'", Integer.class).intValue());
+        assertEquals(0, tpl.queryForObject("SELECT COUNT(*) FROM Telemetries WHERE TrackId = 't3'", Integer.class).intValue());
+    }
 }
@@ -114,4 +114,17 @@ public class LakeDaoIntegrationTest {
         assertTrue(p3.getLongitude() == 12);
         assertFalse(i_points.hasNext());
     }
+
+    /**
+     * Verifica che il metodo findAll restituisca i laghi che coprono la
+     * regione fornita come parametro senza avere punti al suo interno.
+     */
+
+    @Test
+    public void testFindAllCovering() {
+        Rect region = new Rect(new Point(6, 9), new Point(5, 10));
+        Iterator<Lake> i_lakes = ld.findAll(region).iterator();
+        assertTrue(i_lakes.next().getName().equals("Lake1"));
+        assertFalse(i_lakes.hasNext());
+    }
 }
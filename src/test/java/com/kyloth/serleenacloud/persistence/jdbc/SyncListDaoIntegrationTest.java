@@ -75,8 +75,8 @@ public class SyncListDaoIntegrationTest {
         user = new User("foo@bar.com", "psw", "Kyloth-1");
         ds_user = (JDBCDataSource) ds.forUser(user);
         tpl = ds_user.getTpl();
-        String insertUser = "INSERT INTO Users (Email, Password, DeviceId) VALUES ('foo@bar.com', 'psw' 'Kyloth-1')";
-        String insertExperiences = "INSERT INTO Experiences (Id, Name, User, NWLongitude, NWLatitude, SELongitude, SWLatitude) VALUES ('id1', 'Experience_1', 'foo@bar.com', 1, 10, 10, 1), ('id2', 'Experience_2', 'foo@bar.com', 1, 10, 10, 1)";
+        String insertUser = "INSERT INTO Users (Email, Password, DeviceId) VALUES ('foo@bar.com', 'psw', 'Kyloth-1')";
+        String insertExperiences = "INSERT INTO Experiences (Id, Name, User, NWLongitude, NWLatitude, SELongitude, SELatitude) VALUES ('id1', 'Experience_1', 'foo@bar.com', 1, 10, 10, 1), ('id2', 'Experience_2', 'foo@bar.com', 1, 10, 10, 1)";
         tpl.update(insertUser);
         tpl.update(insertExperiences);
         sld = ds_user.syncListDao();
@@ -93,8 +93,10 @@ public class SyncListDaoIntegrationTest {
     /**
      * Verifica che il metodo persist inserisca le esperienze
      * in lista di sincronizzazione e che il metodo findAll le
-     * recuperi.
+     * recuperi, nell'ordine di inserimento e con un numero costante di
+     * query.
      */
+    @Test
     public void testPersistAndFindAll() {
         Experience exp_1 = new Experience("Experience_1", "id1",
                                           new Rect(new Point(10, 1),
@@ -109,9 +111,12 @@ public class SyncListDaoIntegrationTest {
                                           Arrays.asList(new UserPoint[] {}),
                                           Arrays.asList(new PointOfInterest[] {}));
         sld.persist(Arrays.asList(new Experience[] {exp_1, exp_2}));
+        long before = ds.getMetrics().get("borrowed");
         Iterable<Experience> exp_list = sld.findAll();
+        assertEquals(4, ds.getMetrics().get("borrowed") - before);
         Iterator<Experience> i_exp_list = exp_list.iterator();
         assertTrue(i_exp_list.next().getName().equals("Experience_1"));
         assertTrue(i_exp_list.next().getName().equals("Experience_2"));
+        assertFalse(i_exp_list.hasNext());
     }
 }
@@ -0,0 +1,108 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: ElevationLayerTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import com.kyloth.serleenacloud.datamodel.geometry.ElevationRect;
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Contiene test per la classe ElevationLayer.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class ElevationLayerTest {
+
+    /**
+     * Crea un ElevationRect corrispondente a un rettangolo in pixel.
+     */
+
+    private static ElevationRect rect(ImageRenderer ir, int x0, int y0, int x1, int y1, int height) {
+        return new ElevationRect(new Point(ir.YtoLat(ir.height - y0), ir.XtoLon(x0)),
+                                 new Point(ir.YtoLat(ir.height - y1), ir.XtoLon(x1)), height);
+    }
+
+    /**
+     * Testa che una griglia di ElevationRect di uguale altezza venga
+     * compattata e che il disegno coincida con quello dei singoli
+     * ElevationRect, anche in presenza di sovrapposizioni.
+     */
+
+    @Test
+    public void compactTest() {
+        ImageRenderer ir = new ImageRenderer(Utils.factor, 10000, 20000, 100, 80, 20);
+        ArrayList<ElevationRect> rects = new ArrayList<ElevationRect>();
+        for (int y = 0; y < 60; y += 10)
+            for (int x = 0; x < 60; x += 10)
+                rects.add(rect(ir, x, y, x + 10, y + 10, 2));
+        rects.add(rect(ir, 25, 25, 45, 35, 5));
+        rects.add(rect(ir, 90, 70, 130, 110, 1));
+
+        ElevationLayer layer = new ElevationLayer(ir, rects);
+        assertEquals(38, layer.getRects());
+        assertEquals(6, layer.getCount());
+        assertTrue(layer.isFor(rects));
+
+        BufferedImage expected = Utils.createImage(ir.width, ir.height);
+        BufferedImage actual = Utils.createImage(ir.width, ir.height);
+        Painter p = new ScanlinePainter(expected);
+        for (ElevationRect er : rects)
+            ir.drawElevation(p, er);
+        p.dispose();
+        p = new ScanlinePainter(actual);
+        layer.draw(p);
+        p.dispose();
+
+        assertTrue(Arrays.equals(((DataBufferByte)expected.getRaster().getDataBuffer()).getData(),
+                                 ((DataBufferByte)actual.getRaster().getDataBuffer()).getData()));
+    }
+
+    /**
+     * Testa che il colore di ogni altezza corrisponda a quello ottenuto
+     * scurendo il colore base.
+     */
+
+    @Test
+    public void shadeTest() {
+        Color c = Utils.elevationColor;
+        for (int h = 0; h < 40; h++) {
+            assertEquals(c, Utils.elevationShade(h));
+            c = c.darker();
+        }
+        assertEquals(Utils.elevationColor, Utils.elevationShade(-1));
+    }
+}
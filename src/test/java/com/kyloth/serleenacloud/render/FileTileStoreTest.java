@@ -0,0 +1,249 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: FileTileStoreTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contiene test per la classe FileTileStore.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class FileTileStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Restituisce un valore di prova.
+     */
+
+    static byte[] value(int length, int seed) {
+        byte[] v = new byte[length];
+        for (int i = 0; i < length; i++)
+            v[i] = (byte)(seed + i);
+        return v;
+    }
+
+    /**
+     * Testa che i valori inseriti vengano restituiti, anche dopo la
+     * riapertura dell'archivio.
+     */
+
+    @Test
+    public void persistenceTest() throws Exception {
+        File dir = folder.newFolder();
+        FileTileStore s = new FileTileStore(dir, 1 << 20);
+        assertNull(s.get("a"));
+        s.put("a", value(100, 1));
+        s.put("b", value(200, 2));
+        s.put("a", value(100, 3));
+        assertArrayEquals(value(100, 1), s.get("a"));
+        assertEquals(1, s.getMisses());
+        assertEquals(1, s.getHits());
+        s.close();
+
+        s = new FileTileStore(dir, 1 << 20);
+        assertEquals(2, s.getCount());
+        assertArrayEquals(value(100, 1), s.get("a"));
+        assertArrayEquals(value(200, 2), s.get("b"));
+        s.close();
+    }
+
+    /**
+     * Testa che un record incompleto in coda al file venga scartato
+     * alla riapertura, mantenendo i record precedenti.
+     */
+
+    @Test
+    public void truncatedTest() throws Exception {
+        File dir = folder.newFolder();
+        FileTileStore s = new FileTileStore(dir, 1 << 20);
+        s.put("a", value(100, 1));
+        long size = s.getSize();
+        s.put("b", value(100, 2));
+        s.close();
+
+        RandomAccessFile raf = new RandomAccessFile(new File(dir, "tiles.dat"), "rw");
+        raf.setLength(size + 50);
+        raf.close();
+
+        s = new FileTileStore(dir, 1 << 20);
+        assertEquals(1, s.getCount());
+        assertEquals(size, s.getSize());
+        assertArrayEquals(value(100, 1), s.get("a"));
+        s.put("b", value(100, 2));
+        assertArrayEquals(value(100, 2), s.get("b"));
+        s.close();
+    }
+
+    /**
+     * Testa che al superamento della dimensione massima l'archivio venga
+     * compattato mantenendo i valori usati più di recente.
+     */
+
+    @Test
+    public void compactTest() throws Exception {
+        File dir = folder.newFolder();
+        FileTileStore s = new FileTileStore(dir, 5000);
+        for (int i = 0; i < 4; i++)
+            s.put("k" + i, value(1000, i));
+        s.get("k0");
+        s.put("k4", value(1000, 4));
+
+        assertTrue(s.getSize() <= 2500);
+        assertEquals(s.getSize() - 4, s.getLive());
+        assertArrayEquals(value(1000, 0), s.get("k0"));
+        assertArrayEquals(value(1000, 4), s.get("k4"));
+        assertNull(s.get("k1"));
+        assertNull(s.get("k2"));
+        s.close();
+
+        s = new FileTileStore(dir, 5000);
+        assertEquals(2, s.getCount());
+        assertArrayEquals(value(1000, 0), s.get("k0"));
+        s.close();
+    }
+
+    /**
+     * Testa che un valore venga scritto su uno stream.
+     */
+
+    @Test
+    public void writeToTest() throws Exception {
+        FileTileStore s = new FileTileStore(folder.newFolder(), 1 << 20);
+        s.put("a", value(3000, 7));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(s.writeTo("a", out));
+        assertArrayEquals(value(3000, 7), out.toByteArray());
+        assertFalse(s.writeTo("b", out));
+        s.close();
+    }
+
+    /**
+     * Testa che uno stream bloccato durante la scrittura di un valore non
+     * impedisca la compattazione né le letture e scritture successive.
+     */
+
+    @Test(timeout = 30000)
+    public void stalledWriteTest() throws Exception {
+        final FileTileStore s = new FileTileStore(folder.newFolder(), 5000);
+        s.put("a", value(1000, 1));
+
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread client = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    s.writeTo("a", new OutputStream() {
+                        @Override
+                        public void write(int b) {
+                            write(new byte[] {(byte)b}, 0, 1);
+                        }
+
+                        @Override
+                        public void write(byte[] b, int off, int len) {
+                            writing.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        client.start();
+        try {
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 6; i++)
+                s.put("k" + i, value(1000, i));
+            assertTrue(s.getCount() < 7);
+            assertNull(s.get("a"));
+            assertArrayEquals(value(1000, 5), s.get("k5"));
+        } finally {
+            release.countDown();
+            client.join();
+            s.close();
+        }
+    }
+
+    /**
+     * Testa che un percorso che non può essere aperto disattivi
+     * l'archivio.
+     */
+
+    @Test
+    public void openFailureTest() throws Exception {
+        File file = folder.newFile();
+        assertNull(FileTileStore.open(file.getPath(), 1 << 20));
+        assertNull(FileTileStore.open("", 1 << 20));
+    }
+
+    /**
+     * Testa che un errore durante la compattazione disattivi l'archivio,
+     * che in seguito non restituisce né inserisce valori senza sollevare
+     * eccezioni.
+     */
+
+    @Test
+    public void disableTest() throws Exception {
+        File dir = folder.newFolder();
+        assertTrue(new File(dir, "tiles.dat.tmp").mkdir());
+        FileTileStore s = new FileTileStore(dir, 5000);
+        s.put("a", value(1000, 1));
+        assertFalse(s.isDisabled());
+        for (int i = 0; i < 5; i++)
+            s.put("k" + i, value(1000, i));
+
+        assertTrue(s.isDisabled());
+        assertEquals(0, s.getCount());
+        assertNull(s.get("a"));
+        s.put("b", value(100, 2));
+        assertNull(s.get("b"));
+        assertFalse(s.writeTo("a", new ByteArrayOutputStream()));
+        s.close();
+    }
+}
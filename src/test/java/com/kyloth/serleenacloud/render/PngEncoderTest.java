@@ -0,0 +1,111 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: PngEncoderTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Contiene test per la classe PngEncoder.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class PngEncoderTest {
+
+    /**
+     * Codifica e decodifica un'immagine, verificando che i pixel siano invariati.
+     */
+
+    static void assertRoundTrip(BufferedImage img) throws Exception {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(PngEncoder.encode(img)));
+        assertEquals(img.getWidth(), decoded.getWidth());
+        assertEquals(img.getHeight(), decoded.getHeight());
+        for (int y = 0; y < img.getHeight(); y++)
+            for (int x = 0; x < img.getWidth(); x++)
+                assertEquals(img.getRGB(x, y), decoded.getRGB(x, y));
+    }
+
+    /**
+     * Disegna un'immagine con il numero di colori richiesto, presi dalla tavolozza.
+     */
+
+    static BufferedImage image(int width, int height, int colors) {
+        BufferedImage img = Utils.createImage(width, height);
+        Graphics2D g = img.createGraphics();
+        for (int i = 0; i < colors; i++) {
+            g.setColor(new Color(Utils.palette.getRGB(i)));
+            g.fillRect(i * width / colors, 0, width / colors + 1, height - i);
+        }
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Testa che le immagini a colori indicizzati vengano codificate
+     * correttamente con ogni profondità di colore.
+     */
+
+    @Test
+    public void indexedTest() throws Exception {
+        assertTrue(PngEncoder.isIndexed(Utils.createImage(1, 1)));
+        assertRoundTrip(image(13, 7, 1));
+        assertRoundTrip(image(13, 7, 2));
+        assertRoundTrip(image(13, 7, 4));
+        assertRoundTrip(image(37, 11, 16));
+        assertRoundTrip(image(37, 11, 40));
+    }
+
+    /**
+     * Testa che una porzione di un'immagine venga codificata correttamente.
+     */
+
+    @Test
+    public void subimageTest() throws Exception {
+        assertRoundTrip(image(64, 32, 20).getSubimage(5, 3, 41, 17));
+    }
+
+    /**
+     * Testa che le immagini non indicizzate vengano comunque codificate.
+     */
+
+    @Test
+    public void rgbTest() throws Exception {
+        BufferedImage img = new BufferedImage(5, 5, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(2, 2, Color.RED.getRGB());
+        assertFalse(PngEncoder.isIndexed(img));
+        assertRoundTrip(img);
+    }
+}
@@ -0,0 +1,79 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: ProjectionTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+
+import java.util.Arrays;
+
+/**
+ * Contiene test per la classe Projection.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class ProjectionTest {
+
+    /**
+     * Testa che le coordinate proiettate coincidano con quelle calcolate
+     * punto per punto da ImageRenderer.
+     */
+
+    @Test
+    public void projectTest() {
+        ImageRenderer ir = new ImageRenderer(Utils.factor, 0, 0, 1, 1, 0);
+        Point[] points = {new Point(45.28, 11.65), new Point(-33.9, 151.2), new Point(0, 0)};
+        double[] xy = new Projection(Utils.factor).project(new Object(), Arrays.asList(points));
+        assertEquals(6, xy.length);
+        for (int i = 0; i < points.length; i++) {
+            assertEquals(ir.globalX(points[i].getLongitude()), xy[2*i], 0);
+            assertEquals(ir.globalY(points[i].getLatitude()), xy[2*i+1], 0);
+        }
+    }
+
+    /**
+     * Testa che le coordinate di un'entità vengano proiettate una sola
+     * volta e che entità distinte non condividano le coordinate.
+     */
+
+    @Test
+    public void memoizationTest() {
+        Projection p = new Projection(Utils.factor);
+        Point a = new Point(45.28, 11.65);
+        Point b = new Point(45.28, 11.65);
+        assertSame(p.project(a), p.project(a));
+        assertNotSame(p.project(a), p.project(b));
+        Object key = new Object();
+        double[] xy = p.project(key, Arrays.asList(a, b));
+        assertSame(xy, p.project(key, Arrays.asList(a)));
+        assertEquals(4, xy.length);
+    }
+}
@@ -0,0 +1,107 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: QuadrantTaskTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Contiene test per la classe QuadrantTask.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class QuadrantTaskTest {
+
+    /**
+     * Testa che ogni quadrante venga renderizzato
+     * e che l'ordine della lista non venga modificato.
+     */
+
+    @Test
+    public void renderAllTest() {
+        List<RasterQuadrant> quadrants = new ArrayList<RasterQuadrant>();
+        for (int i = 0; i < 37; i++) {
+            quadrants.add(new RasterQuadrant(null, i, 0) {
+                @Override
+                public byte[] getPng() {
+                    png = new byte[] {(byte)x};
+                    return png;
+                }
+            });
+        }
+
+        new ForkJoinPool(4).invoke(new QuadrantTask(quadrants, 0, quadrants.size()));
+
+        for (int i = 0; i < quadrants.size(); i++) {
+            assertEquals(i, quadrants.get(i).x);
+            assertArrayEquals(new byte[] {(byte)i}, quadrants.get(i).png);
+        }
+    }
+
+    /**
+     * Testa che un insieme vuoto di quadranti non causi errori.
+     */
+
+    @Test
+    public void emptyTest() {
+        new ForkJoinPool(2).invoke(new QuadrantTask(new ArrayList<RasterQuadrant>(), 0, 0));
+    }
+
+    /**
+     * Testa che la codifica fallita di un quadrante venga contata nelle
+     * metriche e sollevata all'invocazione del task.
+     */
+
+    @Test
+    public void failureTest() {
+        List<RasterQuadrant> quadrants = new ArrayList<RasterQuadrant>();
+        quadrants.add(new RasterQuadrant(null, 0, 0) {
+            @Override
+            public byte[] getPng() throws IOException {
+                throw new IOException("encode");
+            }
+        });
+
+        long failures = RenderMetrics.getMetrics().get("encodeFailures");
+        try {
+            new ForkJoinPool(2).invoke(new QuadrantTask(quadrants, 0, quadrants.size()));
+            fail();
+        } catch (UncheckedIOException e) {
+            assertEquals("encode", e.getCause().getMessage());
+        }
+        assertEquals(failures + 1, (long)RenderMetrics.getMetrics().get("encodeFailures"));
+    }
+}
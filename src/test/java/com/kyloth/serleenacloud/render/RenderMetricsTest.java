@@ -0,0 +1,160 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RenderMetricsTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+
+import java.util.Map;
+
+/**
+ * Contiene test per la classe RenderMetrics.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class RenderMetricsTest {
+
+    /**
+     * Istante restituito dall'orologio dei test, in nanosecondi. Non
+     * arretra mai e non precede l'istante di sistema all'inizio del test,
+     * in modo da non precedere l'ultimo cambio di fase registrato nella
+     * traccia del thread.
+     */
+
+    private static long now;
+
+    /**
+     * Orologio sostituito durante i test.
+     */
+
+    private RenderMetrics.Clock previous;
+
+    /**
+     * Sostituisce l'orologio di RenderMetrics con uno controllato dai test.
+     */
+
+    @Before
+    public void setUp() {
+        previous = RenderMetrics.clock;
+        now = Math.max(now, System.nanoTime());
+        RenderMetrics.clock = new RenderMetrics.Clock() {
+            @Override
+            public long nanoTime() {
+                return now;
+            }
+        };
+    }
+
+    /**
+     * Ripristina l'orologio di RenderMetrics.
+     */
+
+    @After
+    public void tearDown() {
+        RenderMetrics.clock = previous;
+    }
+
+    /**
+     * Avanza l'orologio dei test.
+     *
+     * @param millis Millisecondi di cui avanzare.
+     */
+
+    private static void advance(long millis) {
+        now += millis * 1000000;
+    }
+
+    /**
+     * Testa che il tempo venga attribuito alla fase in corso, che le fasi
+     * annidate non vengano contate due volte e che ingressi e contatori
+     * vengano registrati nella traccia e nei totali.
+     */
+
+    @Test
+    public void phaseTest() {
+        Map<String, Long> before = RenderMetrics.getMetrics();
+        RenderMetrics.begin();
+
+        advance(5);
+        int outer = RenderMetrics.enter(RenderMetrics.DRAW);
+        assertEquals(RenderMetrics.OTHER, outer);
+        advance(20);
+        int inner = RenderMetrics.enter(RenderMetrics.LOAD);
+        assertEquals(RenderMetrics.DRAW, inner);
+        advance(30);
+        RenderMetrics.exit(inner);
+        RenderMetrics.count(RenderMetrics.FEATURES, 3);
+        advance(5);
+        RenderMetrics.exit(outer);
+        advance(1);
+        RenderMetrics.enter(RenderMetrics.OTHER);
+
+        Map<String, Long> trace = RenderMetrics.getTrace();
+        assertEquals(25000000L, (long)trace.get("drawNanos"));
+        assertEquals(30000000L, (long)trace.get("loadNanos"));
+        assertEquals(6000000L, (long)trace.get("otherNanos"));
+        assertEquals(1L, (long)trace.get("drawCalls"));
+        assertEquals(1L, (long)trace.get("loadCalls"));
+        assertEquals(3L, (long)trace.get("features"));
+        assertEquals(0L, (long)trace.get("pixels"));
+
+        Map<String, Long> after = RenderMetrics.getMetrics();
+        assertTrue(after.get("drawMillis") - before.get("drawMillis") >= 25);
+        assertTrue(after.get("loadMillis") - before.get("loadMillis") >= 30);
+        assertTrue(after.get("features") - before.get("features") >= 3);
+    }
+
+    /**
+     * Testa che begin() azzeri la traccia e che end() registri come lenti
+     * i soli rendering di durata almeno pari a Utils.slowRenderMillis.
+     */
+
+    @Test
+    public void slowRenderTest() {
+        Rect extent = new Rect(new Point(45.2830, 11.6490), new Point(45.2750, 11.6570));
+
+        RenderMetrics.begin();
+        RenderMetrics.count(RenderMetrics.TILES, 1);
+        advance(Utils.slowRenderMillis - 1);
+        assertFalse(RenderMetrics.end("e1", 0, extent));
+
+        RenderMetrics.begin();
+        assertEquals(0L, (long)RenderMetrics.getTrace().get("tiles"));
+        int phase = RenderMetrics.enter(RenderMetrics.ENCODE);
+        advance(Utils.slowRenderMillis);
+        RenderMetrics.exit(phase);
+        assertTrue(RenderMetrics.end("e1", 0, extent));
+        assertEquals(Utils.slowRenderMillis * 1000000L, (long)RenderMetrics.getTrace().get("encodeNanos"));
+    }
+}
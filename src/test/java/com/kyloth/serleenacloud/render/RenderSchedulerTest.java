@@ -0,0 +1,158 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RenderSchedulerTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contiene test per la classe RenderScheduler.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class RenderSchedulerTest {
+
+    /**
+     * Testa che richieste contemporanee per la stessa chiave vengano
+     * unite in un unico rendering, il cui risultato viene restituito a
+     * tutti i richiedenti.
+     */
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> job = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "result";
+            }
+        };
+        final String[] results = new String[4];
+        long coalesced = RenderScheduler.getMetrics().get("coalesced");
+
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < results.length; i++) {
+            final int n = i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    results[n] = RenderScheduler.run("single-flight", 1, job);
+                }
+            });
+        }
+        threads.get(0).start();
+        started.await();
+        for (int i = 1; i < threads.size(); i++)
+            threads.get(i).start();
+        while (RenderScheduler.getMetrics().get("coalesced") < coalesced + threads.size() - 1)
+            Thread.sleep(10);
+        release.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(1, calls.get());
+        for (String r : results)
+            assertEquals("result", r);
+    }
+
+    /**
+     * Testa che rendering che occupano l'intero budget di pixel vengano
+     * eseguiti uno alla volta.
+     */
+
+    @Test
+    public void pixelBudgetTest() throws Exception {
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final String key = "budget-" + i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    RenderScheduler.run(key, Long.MAX_VALUE, new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            int c = current.incrementAndGet();
+                            synchronized (max) {
+                                max.set(Math.max(max.get(), c));
+                            }
+                            Thread.sleep(20);
+                            current.decrementAndGet();
+                            return null;
+                        }
+                    });
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(1, max.get());
+        assertEquals(0L, (long)RenderScheduler.getMetrics().get("running"));
+    }
+
+    /**
+     * Testa che le eccezioni del rendering vengano propagate e che la
+     * chiave venga liberata.
+     */
+
+    @Test
+    public void failureTest() {
+        try {
+            RenderScheduler.run("failure", 1, new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+        }
+
+        assertEquals("ok", RenderScheduler.run("failure", 1, new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }));
+    }
+}
@@ -0,0 +1,547 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RendererIntegrationTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.BeforeClass;
+import org.junit.AfterClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+import javax.sql.DataSource;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.kyloth.serleenacloud.datamodel.business.*;
+import com.kyloth.serleenacloud.datamodel.geometry.*;
+import com.kyloth.serleenacloud.persistence.IDataSource;
+
+/**
+ * Contiene test di integrazione per la classe Renderer, che ottiene
+ * i dati di mappa da un database in memoria.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class RendererIntegrationTest {
+    private static ConfigurableApplicationContext context;
+    private static IDataSource previous;
+
+    /**
+     * Inizializza il database da cui il Renderer ottiene i dati di mappa.
+     */
+
+    @BeforeClass
+    public static void initialize() {
+        context = new ClassPathXmlApplicationContext("Spring-ModuleControllerTest.xml");
+        previous = Renderer.ds;
+        Renderer.ds = (IDataSource) context.getBean("dataSource");
+    }
+
+    /**
+     * Libera il contesto per successivi test.
+     */
+
+    @AfterClass
+    public static void cleanUp() {
+        Renderer.ds = previous;
+        context.close();
+    }
+
+    /**
+     * Restituisce un'Esperienza di prova, grande poco più di quattro quadranti.
+     */
+
+    static Experience experience() {
+        CheckPoint[] cps = new CheckPoint[] {new CheckPoint(45.2765, 11.6510, 0),
+                                             new CheckPoint(45.2790, 11.6540, 1)};
+        Track t = new Track("Track", "t1", cps, new Telemetry[0]);
+        UserPoint[] ups = new UserPoint[] {new UserPoint(45.2770, 11.6530)};
+        PointOfInterest[] pois = new PointOfInterest[] {new PointOfInterest(45.2800, 11.6520, "Info", PointOfInterest.POIType.INFO)};
+        return new Experience("Experience", "e1",
+                              new Rect(new Point(45.2830, 11.6490), new Point(45.2750, 11.6570)),
+                              new Track[] {t}, ups, pois);
+    }
+
+    /**
+     * Testa che ogni quadrante della griglia possa essere ottenuto
+     * singolarmente dalla sua colonna e riga, con la stessa immagine.
+     * Ogni quadrante singolo viene renderizzato con cache vuote, in modo
+     * da non riutilizzare l'immagine del quadrante della griglia.
+     */
+
+    @Test
+    public void rasterQuadrantTest() throws Exception {
+        Renderer r = Renderer.fromExperience(experience());
+        ArrayList<RasterQuadrant> quadrants = new ArrayList<RasterQuadrant>();
+        for (RasterQuadrant q : r.getRasterQuadrants())
+            quadrants.add(q);
+
+        assertTrue(quadrants.size() > 1);
+        assertEquals(0, quadrants.get(0).getColumn());
+        assertEquals(0, quadrants.get(0).getRow());
+
+        int columns = 0;
+        int rows = 0;
+        TileCache cache = Renderer.tileCache;
+        TileCache index = Renderer.tileIndex;
+        FileTileStore store = Renderer.tileStore;
+        for (RasterQuadrant q : quadrants) {
+            BufferedImage expected = ImageIO.read(new ByteArrayInputStream(q.getPng()));
+            try {
+                Renderer.tileCache = new TileCache(1 << 24);
+                Renderer.tileIndex = new TileCache(1 << 20, true);
+                Renderer.tileStore = null;
+                RasterQuadrant single = Renderer.fromExperience(experience()).getRasterQuadrant(q.getColumn(), q.getRow());
+                assertNotNull(single);
+                BufferedImage drawn = single.currentQuadrant();
+                BufferedImage actual = ImageIO.read(new ByteArrayInputStream(single.getPng()));
+                assertTrue(Renderer.tileIndex.getMisses() > 0);
+                assertEquals(expected.getWidth(), drawn.getWidth());
+                assertEquals(expected.getHeight(), drawn.getHeight());
+                for (int y = 0; y < drawn.getHeight(); y++)
+                    for (int x = 0; x < drawn.getWidth(); x++) {
+                        assertEquals(drawn.getRGB(x, y), expected.getRGB(x, y));
+                        assertEquals(drawn.getRGB(x, y), actual.getRGB(x, y));
+                    }
+            } finally {
+                Renderer.tileCache = cache;
+                Renderer.tileIndex = index;
+                Renderer.tileStore = store;
+            }
+            columns = Math.max(columns, q.getColumn() + 1);
+            rows = Math.max(rows, q.getRow() + 1);
+        }
+        assertEquals(columns * rows, quadrants.size());
+
+        assertNull(r.getRasterQuadrant(columns, 0));
+        assertNull(r.getRasterQuadrant(0, rows));
+        assertNull(r.getRasterQuadrant(-1, 0));
+    }
+
+    /**
+     * Testa che l'immagine venga omessa dal JSON se Utils.inlineTiles
+     * non è attivo.
+     */
+
+    @Test
+    public void inlineTilesTest() {
+        boolean inline = Utils.inlineTiles;
+        try {
+            Utils.inlineTiles = false;
+            assertNull(Renderer.fromExperience(experience()).getRasterQuadrant(0, 0).getImage());
+            Utils.inlineTiles = true;
+            assertNotNull(Renderer.fromExperience(experience()).getRasterQuadrant(0, 0).getImage());
+        } finally {
+            Utils.inlineTiles = inline;
+        }
+    }
+
+    /**
+     * Testa che, se Utils.tileRendering non è attivo, l'immagine
+     * complessiva non venga disegnata alla costruzione del quadrante ma
+     * solo alla richiesta dell'impronta, all'interno del rendering
+     * ammesso da RenderScheduler.
+     */
+
+    @Test
+    public void lazyImageTest() {
+        boolean tiles = Utils.tileRendering;
+        TileCache index = Renderer.tileIndex;
+        FileTileStore store = Renderer.tileStore;
+        try {
+            Utils.tileRendering = false;
+            Renderer.tileIndex = new TileCache(1 << 20, true);
+            Renderer.tileStore = null;
+            RasterQuadrant q = Renderer.fromExperience(experience()).getRasterQuadrant(0, 0);
+            assertNull(q.ir.img);
+            assertNull(q.ir._img);
+
+            long renders = RenderScheduler.getMetrics().get("renders");
+            q.getHash();
+            assertNotNull(q.ir._img);
+            assertTrue(RenderScheduler.getMetrics().get("renders") > renders);
+        } finally {
+            Utils.tileRendering = tiles;
+            Renderer.tileIndex = index;
+            Renderer.tileStore = store;
+        }
+    }
+
+    /**
+     * Testa che i quadranti contenenti solo lo sfondo condividano la
+     * stessa impronta e la stessa immagine, e che quadranti diversi
+     * abbiano impronte diverse.
+     */
+
+    @Test
+    public void emptyTileTest() throws Exception {
+        UserPoint[] ups = new UserPoint[] {new UserPoint(45.2745, 11.6495)};
+        Experience e = new Experience("Empty", "e2",
+                                      new Rect(new Point(45.2900, 11.6490), new Point(45.2740, 11.6650)),
+                                      new Track[0], ups, new PointOfInterest[0]);
+        String empty = Utils.toHex(Utils.emptyTileDigest());
+
+        int emptyTiles = 0;
+        String first = null;
+        for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants()) {
+            if (first == null)
+                first = q.getHash();
+            if (q.getHash().equals(empty)) {
+                emptyTiles++;
+                assertSame(Utils.emptyTile(), q.getPng());
+            }
+        }
+
+        assertTrue(emptyTiles > 1);
+        assertFalse(empty.equals(first));
+    }
+
+    /**
+     * Testa che i quadranti composti a partire da BaseLayer coincidano
+     * con quelli in cui i dati di mappa vengono disegnati direttamente.
+     */
+
+    @Test
+    public void baseLayerTest() {
+        Experience e = new Experience("Map", "e3",
+                                      new Rect(new Point(45.2830, 11.6490), new Point(45.2750, 11.6570)),
+                                      new Track[0], new UserPoint[0], new PointOfInterest[0]);
+        boolean base = Utils.baseLayer;
+        try {
+            ArrayList<BufferedImage> composed = new ArrayList<BufferedImage>();
+            Utils.baseLayer = true;
+            BaseLayer.invalidate();
+            for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants())
+                composed.add(q.currentQuadrant());
+            assertTrue(BaseLayer.getCount() > 0);
+
+            Utils.baseLayer = false;
+            int i = 0;
+            for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants()) {
+                BufferedImage drawn = q.currentQuadrant();
+                for (int y = 0; y < drawn.getHeight(); y++)
+                    for (int x = 0; x < drawn.getWidth(); x++)
+                        assertEquals(drawn.getRGB(x, y), composed.get(i).getRGB(x, y));
+                i++;
+            }
+            assertEquals(composed.size(), i);
+        } finally {
+            Utils.baseLayer = base;
+        }
+    }
+
+    /**
+     * Testa che un lago e un ElevationRect molto più grandi dei quadranti
+     * di BaseLayer, privi di vertici vicini all'Esperienza, vengano
+     * disegnati in ogni quadrante composto come in quelli disegnati
+     * direttamente.
+     */
+
+    @Test
+    public void baseLayerLargeFeatureTest() {
+        JdbcTemplate tpl = new JdbcTemplate((DataSource) context.getBean("inMemoryDataSource"));
+        tpl.update("INSERT INTO ElevationRect (Height, NWLongitude, NWLatitude, SELongitude, SELatitude) VALUES (500, 11.5, 46.5, 12.5, 45.5)");
+        tpl.update("INSERT INTO Lakes (Name) VALUES ('big')");
+        tpl.update("INSERT INTO LakePoints (LakeName, Latitude, Longitude, Idx) VALUES " +
+                   "('big', 46.2, 12.005, 0), ('big', 46.2, 12.3, 1), ('big', 45.8, 12.3, 2), ('big', 45.8, 12.005, 3)");
+        Experience e = new Experience("Big", "e4",
+                                      new Rect(new Point(46.005, 12.0), new Point(45.995, 12.01)),
+                                      new Track[0], new UserPoint[0], new PointOfInterest[0]);
+        boolean base = Utils.baseLayer;
+        try {
+            ArrayList<BufferedImage> composed = new ArrayList<BufferedImage>();
+            Utils.baseLayer = true;
+            BaseLayer.invalidate();
+            for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants())
+                composed.add(q.currentQuadrant());
+            assertTrue(composed.size() > 1);
+
+            Utils.baseLayer = false;
+            int i = 0;
+            int lake = 0;
+            int elevation = 0;
+            for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants()) {
+                BufferedImage drawn = q.currentQuadrant();
+                for (int y = 0; y < drawn.getHeight(); y++)
+                    for (int x = 0; x < drawn.getWidth(); x++) {
+                        int rgb = composed.get(i).getRGB(x, y);
+                        assertEquals(drawn.getRGB(x, y), rgb);
+                        if (rgb == Utils.lakeColor.getRGB())
+                            lake++;
+                        else if (rgb == Utils.elevationShade(500).getRGB())
+                            elevation++;
+                    }
+                i++;
+            }
+            assertEquals(composed.size(), i);
+            assertTrue(lake > 0);
+            assertTrue(elevation > 0);
+        } finally {
+            Utils.baseLayer = base;
+            tpl.update("DELETE FROM LakePoints WHERE LakeName = 'big'");
+            tpl.update("DELETE FROM Lakes WHERE Name = 'big'");
+            tpl.update("DELETE FROM ElevationRect WHERE Height = 500");
+            BaseLayer.invalidate();
+        }
+    }
+
+    /**
+     * Testa che un livello di zoom meno dettagliato produca una griglia
+     * più piccola e che i quadranti riportino il livello effettivo.
+     */
+
+    @Test
+    public void zoomTest() {
+        int detailed = 0;
+        for (RasterQuadrant q : Renderer.fromExperience(experience()).getRasterQuadrants()) {
+            assertEquals(0, q.getZoom());
+            detailed++;
+        }
+
+        Renderer r = Renderer.fromExperience(experience(), 2);
+        assertEquals(2, r.getZoom());
+        int coarse = 0;
+        for (RasterQuadrant q : r.getRasterQuadrants()) {
+            assertEquals(2, q.getZoom());
+            coarse++;
+        }
+        assertTrue(coarse < detailed);
+        assertNotNull(r.getRasterQuadrant(0, 0).getImage());
+    }
+
+    /**
+     * Testa che un livello di zoom oltre maxLevel() venga ridotto a
+     * maxLevel(), anche per zoom=32 che come scorrimento equivarrebbe al
+     * massimo dettaglio, e che la griglia risultante sia valida.
+     */
+
+    @Test
+    public void zoomClampTest() {
+        for (int zoom : new int[] {24, 31, 32, Integer.MAX_VALUE}) {
+            Renderer r = Renderer.fromExperience(experience(), zoom);
+            assertEquals(Renderer.maxLevel(), r.getZoom());
+            assertTrue(r.factor > 0);
+            int count = 0;
+            for (RasterQuadrant q : r.getRasterQuadrants()) {
+                assertEquals(Renderer.maxLevel(), q.getZoom());
+                count++;
+            }
+            assertEquals(1, count);
+            assertNotNull(r.getRasterQuadrant(0, 0).getImage());
+        }
+    }
+
+    /**
+     * Testa che un rendering in background fallito venga contato, senza
+     * essere conteggiato tra quelli riusciti.
+     */
+
+    @Test
+    public void renderQueueFailureTest() throws Exception {
+        Experience e = experience();
+        Experience broken = new Experience(e.getName(), "e-broken", null,
+                                           e.getTracks(), e.getUserPoints(), e.getPOIs());
+        long rendered = RenderQueue.getRendered();
+        long failed = RenderQueue.getFailed();
+        RenderQueue.enqueue(broken);
+
+        for (int i = 0; i < 200 && RenderQueue.getFailed() == failed; i++)
+            Thread.sleep(50);
+        assertEquals(failed + 1, RenderQueue.getFailed());
+        assertEquals(rendered, RenderQueue.getRendered());
+        assertEquals(failed + 1, (long)Renderer.getMetrics().get("queue").get("failed"));
+    }
+
+    /**
+     * Testa che un'Esperienza accodata in RenderQueue venga renderizzata
+     * in background, in modo che i quadranti richiesti in seguito siano
+     * già in cache.
+     */
+
+    @Test
+    public void renderQueueTest() throws Exception {
+        Experience e = experience();
+        Experience queued = new Experience(e.getName(), "e-queued", e.getBoundingRect(),
+                                           e.getTracks(), e.getUserPoints(), e.getPOIs());
+        long rendered = RenderQueue.getRendered();
+        RenderQueue.enqueue(queued);
+
+        for (int i = 0; i < 200 && RenderQueue.getRendered() == rendered; i++)
+            Thread.sleep(50);
+        assertEquals(rendered + 1, RenderQueue.getRendered());
+        assertEquals(0, RenderQueue.getPending());
+
+        long hits = Renderer.tileIndex.getHits();
+        long misses = Renderer.tileIndex.getMisses();
+        for (RasterQuadrant q : Renderer.fromExperience(queued).getRasterQuadrants())
+            q.getHash();
+        assertTrue(Renderer.tileIndex.getHits() > hits);
+        assertEquals(misses, Renderer.tileIndex.getMisses());
+    }
+
+    /**
+     * Testa che i quadranti conservati nell'archivio su file vengano
+     * serviti dopo la perdita delle cache in memoria, come dopo un
+     * riavvio, senza essere ridisegnati.
+     */
+
+    @Test
+    public void tileStoreTest() throws Exception {
+        File dir = File.createTempFile("tiles", "");
+        dir.delete();
+        TileCache cache = Renderer.tileCache;
+        TileCache index = Renderer.tileIndex;
+        FileTileStore store = Renderer.tileStore;
+        try {
+            Renderer.tileStore = new FileTileStore(dir, 1 << 24);
+            Renderer.tileCache = new TileCache(1 << 24);
+            Renderer.tileIndex = new TileCache(1 << 20, true);
+            ArrayList<byte[]> pngs = new ArrayList<byte[]>();
+            for (RasterQuadrant q : Renderer.fromExperience(experience()).getRasterQuadrants())
+                pngs.add(q.getPng());
+            Renderer.tileStore.close();
+
+            Renderer.tileStore = new FileTileStore(dir, 1 << 24);
+            Renderer.tileCache = new TileCache(1 << 24);
+            Renderer.tileIndex = new TileCache(1 << 20, true);
+            int i = 0;
+            for (RasterQuadrant q : Renderer.fromExperience(experience()).getRasterQuadrants()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                q.writePng(out);
+                assertArrayEquals(pngs.get(i), out.toByteArray());
+                assertArrayEquals(pngs.get(i++), q.getPng());
+            }
+            assertEquals(0, Renderer.tileStore.getMisses());
+            assertTrue(Renderer.tileStore.getHits() >= pngs.size());
+            Renderer.tileStore.close();
+        } finally {
+            Renderer.tileStore = store;
+            Renderer.tileCache = cache;
+            Renderer.tileIndex = index;
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Testa che dopo un riavvio con una configurazione del rendering
+     * diversa i quadranti conservati nell'archivio su file non vengano
+     * serviti, ma ridisegnati.
+     */
+
+    @Test
+    public void tileStoreFingerprintTest() throws Exception {
+        File dir = File.createTempFile("tiles", "");
+        dir.delete();
+        TileCache cache = Renderer.tileCache;
+        TileCache index = Renderer.tileIndex;
+        FileTileStore store = Renderer.tileStore;
+        double tolerance = Utils.simplifyTolerance;
+        try {
+            Renderer.tileStore = new FileTileStore(dir, 1 << 24);
+            Renderer.tileCache = new TileCache(1 << 24);
+            Renderer.tileIndex = new TileCache(1 << 20, true);
+            for (RasterQuadrant q : Renderer.fromExperience(experience()).getRasterQuadrants())
+                q.getPng();
+            Renderer.tileStore.close();
+
+            Utils.simplifyTolerance = tolerance + 1;
+            Renderer.tileStore = new FileTileStore(dir, 1 << 24);
+            Renderer.tileCache = new TileCache(1 << 24);
+            Renderer.tileIndex = new TileCache(1 << 20, true);
+            for (RasterQuadrant q : Renderer.fromExperience(experience()).getRasterQuadrants())
+                q.getPng();
+            assertEquals(0, Renderer.tileStore.getHits());
+            assertTrue(Renderer.tileStore.getMisses() > 0);
+            Renderer.tileStore.close();
+        } finally {
+            Utils.simplifyTolerance = tolerance;
+            Renderer.tileStore = store;
+            Renderer.tileCache = cache;
+            Renderer.tileIndex = index;
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Testa che aggiungendo un punto utente a un'Esperienza cambi la
+     * chiave dei soli quadranti da esso toccati, e che i quadranti con
+     * la stessa chiave abbiano lo stesso raster.
+     */
+
+    @Test
+    public void dirtyRegionTest() {
+        Experience e = experience();
+        ArrayList<UserPoint> ups = new ArrayList<UserPoint>();
+        for (UserPoint u : e.getUserPoints())
+            ups.add(u);
+        ups.add(new UserPoint(45.2815, 11.6555));
+        Experience synced = new Experience(e.getName(), e.getId(), e.getBoundingRect(),
+                                           e.getTracks(), ups, e.getPOIs());
+
+        ArrayList<RasterQuadrant> before = new ArrayList<RasterQuadrant>();
+        for (RasterQuadrant q : Renderer.fromExperience(e).getRasterQuadrants())
+            before.add(q);
+        ArrayList<RasterQuadrant> after = new ArrayList<RasterQuadrant>();
+        for (RasterQuadrant q : Renderer.fromExperience(synced).getRasterQuadrants())
+            after.add(q);
+        assertEquals(before.size(), after.size());
+
+        int dirty = 0;
+        for (int i = 0; i < before.size(); i++) {
+            RasterQuadrant a = before.get(i);
+            RasterQuadrant b = after.get(i);
+            boolean same = a.ir.quadrantKey(a.x, a.y).equals(b.ir.quadrantKey(b.x, b.y));
+            BufferedImage ia = a.currentQuadrant();
+            BufferedImage ib = b.currentQuadrant();
+            boolean sameRaster = Arrays.equals(
+                Utils.rasterDigest(ia.getRGB(0, 0, ia.getWidth(), ia.getHeight(), null, 0, ia.getWidth())),
+                Utils.rasterDigest(ib.getRGB(0, 0, ib.getWidth(), ib.getHeight(), null, 0, ib.getWidth())));
+            if (same)
+                assertTrue(sameRaster);
+            else
+                dirty++;
+        }
+        assertTrue(dirty > 0);
+        assertTrue(dirty < before.size());
+    }
+}
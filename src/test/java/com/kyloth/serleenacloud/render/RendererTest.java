@@ -0,0 +1,79 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: RendererTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import com.kyloth.serleenacloud.datamodel.geometry.Point;
+import com.kyloth.serleenacloud.datamodel.geometry.Rect;
+
+/**
+ * Contiene test per la classe Renderer.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class RendererTest {
+
+    /**
+     * Testa che un'area piccola venga renderizzata al massimo dettaglio
+     * e che un'area grande venga renderizzata al livello di zoom più
+     * dettagliato che rispetta Utils.pixelBudget.
+     */
+
+    @Test
+    public void levelForTest() {
+        Rect small = new Rect(new Point(45.2830, 11.6490), new Point(45.2750, 11.6570));
+        assertEquals(0, Renderer.levelFor(small));
+
+        Rect large = new Rect(new Point(46.0, 11.0), new Point(45.0, 12.0));
+        int level = Renderer.levelFor(large);
+        assertTrue(level > 0);
+
+        double width = 1.0*(Utils.factor >> level)/180;
+        double height = (Utils.projLatitude(46.0) - Utils.projLatitude(45.0))*(Utils.factor >> level)/180;
+        assertTrue(width * height <= Utils.pixelBudget);
+
+        double finerWidth = 1.0*(Utils.factor >> (level - 1))/180;
+        double finerHeight = (Utils.projLatitude(46.0) - Utils.projLatitude(45.0))*(Utils.factor >> (level - 1))/180;
+        assertTrue(finerWidth * finerHeight > Utils.pixelBudget);
+    }
+
+    /**
+     * Testa che maxLevel() sia l'ultimo livello di zoom con fattore di
+     * conversione positivo.
+     */
+
+    @Test
+    public void maxLevelTest() {
+        int level = Renderer.maxLevel();
+        assertTrue((Utils.factor >> level) > 0);
+        assertEquals(0, Utils.factor >> (level + 1));
+    }
+}
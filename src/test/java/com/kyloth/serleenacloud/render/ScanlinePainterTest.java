@@ -0,0 +1,103 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: ScanlinePainterTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * Contiene test per la classe ScanlinePainter.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class ScanlinePainterTest {
+
+    /**
+     * Disegna le stesse entità con ScanlinePainter e con Java2DPainter e
+     * restituisce i pixel delle due immagini.
+     */
+
+    private static byte[][] paint(int[] x, int[] y, boolean polygon) {
+        byte[][] pixels = new byte[2][];
+        for (int i = 0; i < 2; i++) {
+            BufferedImage img = Utils.createImage(64, 48);
+            Painter p = i == 0 ? new ScanlinePainter(img) : new Java2DPainter(img);
+            p.fillRect(Utils.backgroundColor, 0, 0, 64, 48);
+            p.clip(2, 3, 56, 40);
+            p.translate(5, -2);
+            p.fillRect(Utils.elevationColor, -10, 4, 30, 12);
+            if (polygon)
+                p.fillPolygon(Utils.lakeColor, x, y, x.length);
+            else
+                p.drawPolyline(Utils.trackLineColor, x, y, x.length);
+            p.dispose();
+            pixels[i] = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+        }
+        return pixels;
+    }
+
+    /**
+     * Testa che rettangoli e poligoni vengano disegnati come da Graphics2D,
+     * rispettando traslazione e area di disegno.
+     */
+
+    @Test
+    public void polygonTest() {
+        byte[][] p = paint(new int[] {-8, 30, 52, 41, 12, 20},
+                           new int[] {10, 1, 25, 47, 30, 18}, true);
+        assertTrue(Arrays.equals(p[1], p[0]));
+    }
+
+    /**
+     * Testa che le spezzate vengano disegnate come da Graphics2D, anche
+     * a parità di errore tra due pixel.
+     */
+
+    @Test
+    public void polylineTest() {
+        byte[][] p = paint(new int[] {0, 4, 0, 6, 12, 9, 60, 3},
+                           new int[] {5, 6, 8, 11, 5, 11, 20, 44}, false);
+        assertTrue(Arrays.equals(p[1], p[0]));
+    }
+
+    /**
+     * Testa che ScanlinePainter venga usato solo per immagini a colori
+     * indicizzati.
+     */
+
+    @Test
+    public void supportsTest() {
+        assertTrue(ScanlinePainter.supports(Utils.createImage(8, 8)));
+        assertFalse(ScanlinePainter.supports(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB)));
+    }
+}
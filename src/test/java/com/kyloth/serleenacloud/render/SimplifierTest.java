@@ -0,0 +1,83 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: SimplifierTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Contiene test per la classe Simplifier.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class SimplifierTest {
+
+    /**
+     * Testa che vengano scartati i vertici entro la tolleranza e mantenuti
+     * gli estremi e i vertici che se ne discostano.
+     */
+
+    @Test
+    public void simplifyTest() {
+        double[] xy = {0, 0, 1, 0.2, 2, -0.2, 3, 0, 4, 5, 5, 0};
+        assertArrayEquals(new double[] {0, 0, 3, 0, 4, 5, 5, 0}, Simplifier.simplify(xy, 0.5), 0);
+        assertSame(xy, Simplifier.simplify(xy, 0));
+        assertSame(xy, Simplifier.simplify(xy, 0.1));
+    }
+
+    /**
+     * Testa che un poligono con molti vertici venga ridotto restando entro
+     * la tolleranza.
+     */
+
+    @Test
+    public void denseTest() {
+        int n = 2000;
+        double[] xy = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            xy[2*i] = 10 * Math.cos(2 * Math.PI * i / n);
+            xy[2*i+1] = 10 * Math.sin(2 * Math.PI * i / n);
+        }
+        double[] s = Simplifier.simplify(xy, 0.5);
+        assertTrue(s.length < 2 * 20);
+        for (int i = 0; i < s.length; i += 2)
+            assertEquals(10, Math.hypot(s[i], s[i+1]), 1e-9);
+    }
+
+    /**
+     * Testa il riconoscimento delle entità più piccole della soglia.
+     */
+
+    @Test
+    public void smallTest() {
+        assertTrue(Simplifier.isSmallerThan(new double[0], 1));
+        assertTrue(Simplifier.isSmallerThan(new double[] {10, 10, 10.5, 10.9}, 1));
+        assertFalse(Simplifier.isSmallerThan(new double[] {10, 10, 10.5, 11.5}, 1));
+    }
+}
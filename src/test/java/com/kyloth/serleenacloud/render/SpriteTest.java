@@ -0,0 +1,93 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: SpriteTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Contiene test per la classe Sprite.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class SpriteTest {
+
+    /**
+     * Testa che un'icona disegnata sullo sfondo abbia i colori della
+     * sovrapposizione dell'icona allo sfondo.
+     */
+
+    @Test
+    public void drawTest() {
+        BufferedImage icon = Utils.cp;
+        BufferedImage img = Utils.createImage(icon.getWidth() + 4, icon.getHeight() + 4);
+        Painter p = new ScanlinePainter(img);
+        p.fillRect(Utils.backgroundColor, 0, 0, img.getWidth(), img.getHeight());
+        p.drawImage(icon, 2, 2);
+        p.dispose();
+
+        for (int y = 0; y < img.getHeight(); y++)
+            for (int x = 0; x < img.getWidth(); x++) {
+                int expected = Utils.backgroundColor.getRGB();
+                if (x >= 2 && y >= 2 && x < icon.getWidth() + 2 && y < icon.getHeight() + 2)
+                    expected = Utils.over(icon.getRGB(x - 2, y - 2), expected);
+                assertEquals(expected, img.getRGB(x, y));
+            }
+    }
+
+    /**
+     * Testa che un'icona a cavallo del bordo dell'area disegnabile venga
+     * disegnata come nell'immagine intera.
+     */
+
+    @Test
+    public void clipTest() {
+        BufferedImage icon = Utils.up;
+        int w = icon.getWidth();
+        int h = icon.getHeight();
+        BufferedImage full = Utils.createImage(2 * w, 2 * h);
+        BufferedImage part = Utils.createImage(w, h);
+
+        Painter p = new ScanlinePainter(full);
+        p.drawImage(icon, w / 2, h / 2);
+        p.dispose();
+        p = new ScanlinePainter(part);
+        p.translate(-w, -h);
+        assertTrue(p.isVisible(w / 2, h / 2, w, h));
+        assertFalse(p.isVisible(0, 0, w, h));
+        p.drawImage(icon, w / 2, h / 2);
+        p.dispose();
+
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
+                assertEquals(full.getRGB(x + w, y + h), part.getRGB(x, y));
+    }
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: TileCacheTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Contiene test per la classe TileCache.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class TileCacheTest {
+
+    /**
+     * Testa che i quadranti inseriti vengano restituiti e che
+     * richieste soddisfatte e non soddisfatte vengano contate.
+     */
+
+    @Test
+    public void hitMissTest() {
+        TileCache c = new TileCache(100);
+        byte[] tile = new byte[10];
+        assertNull(c.get("a"));
+        c.put("a", tile);
+        assertSame(tile, c.get("a"));
+        assertSame(tile, c.get("a"));
+        assertEquals(2, c.getHits());
+        assertEquals(1, c.getMisses());
+        assertEquals(10, c.getSize());
+    }
+
+    /**
+     * Testa che al superamento della dimensione massima vengano
+     * scartati i quadranti usati meno di recente.
+     */
+
+    @Test
+    public void evictionTest() {
+        TileCache c = new TileCache(30);
+        c.put("a", new byte[10]);
+        c.put("b", new byte[10]);
+        c.put("c", new byte[10]);
+        c.get("a");
+        c.put("d", new byte[10]);
+        assertNotNull(c.get("a"));
+        assertNull(c.get("b"));
+        assertNotNull(c.get("c"));
+        assertNotNull(c.get("d"));
+        assertEquals(1, c.getEvictions());
+        assertEquals(30, c.getSize());
+        assertEquals(3, c.getCount());
+    }
+
+    /**
+     * Testa che un quadrante più grande della cache non venga inserito
+     * e che la sostituzione di un quadrante ne aggiorni la dimensione.
+     */
+
+    @Test
+    public void sizeTest() {
+        TileCache c = new TileCache(30);
+        c.put("a", new byte[40]);
+        assertNull(c.get("a"));
+        c.put("b", new byte[10]);
+        c.put("b", new byte[20]);
+        assertEquals(20, c.getSize());
+        assertEquals(1, c.getCount());
+    }
+
+    /**
+     * Testa che, se la cache conteggia le chiavi, la dimensione di ogni
+     * voce comprenda la chiave e l'occupazione della mappa, e che il
+     * limite venga rispettato su questa dimensione.
+     */
+
+    @Test
+    public void keySizeTest() {
+        String key = "0123456789012345678901234567890123456789";
+        long entry = 20 + 2 * key.length() + TileCache.ENTRY_OVERHEAD;
+        TileCache c = new TileCache(2 * entry, true);
+        c.put(key, new byte[20]);
+        assertEquals(entry, c.getSize());
+        c.put(key, new byte[20]);
+        assertEquals(entry, c.getSize());
+
+        c.put("b" + key.substring(1), new byte[20]);
+        c.put("c" + key.substring(1), new byte[20]);
+        assertEquals(2, c.getCount());
+        assertEquals(1, c.getEvictions());
+        assertEquals(2 * entry, c.getSize());
+        assertNull(c.get(key));
+    }
+}
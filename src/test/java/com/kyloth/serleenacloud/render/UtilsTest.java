@@ -72,6 +72,53 @@ public class UtilsTest {
     }
 
 
+    /**
+     * Testa che l'impronta della configurazione del rendering cambi al
+     * cambiare di colori, semplificazione, compressione e uso di
+     * BaseLayer, e torni uguale ripristinando la configurazione.
+     */
+
+    @Test
+    public void renderFingerprintTest() {
+        String fingerprint = Utils.renderFingerprint();
+        assertEquals(fingerprint, Utils.renderFingerprint());
+
+        Color lake = Utils.lakeColor;
+        double tolerance = Utils.simplifyTolerance;
+        double size = Utils.minFeatureSize;
+        int level = Utils.pngCompressionLevel;
+        boolean base = Utils.baseLayer;
+        try {
+            Utils.lakeColor = lake.equals(Color.RED) ? Color.GREEN : Color.RED;
+            assertFalse(fingerprint.equals(Utils.renderFingerprint()));
+            Utils.lakeColor = lake;
+
+            Utils.simplifyTolerance = tolerance + 1;
+            assertFalse(fingerprint.equals(Utils.renderFingerprint()));
+            Utils.simplifyTolerance = tolerance;
+
+            Utils.minFeatureSize = size + 1;
+            assertFalse(fingerprint.equals(Utils.renderFingerprint()));
+            Utils.minFeatureSize = size;
+
+            Utils.pngCompressionLevel = level == 9 ? 1 : 9;
+            assertFalse(fingerprint.equals(Utils.renderFingerprint()));
+            Utils.pngCompressionLevel = level;
+
+            Utils.baseLayer = !base;
+            assertFalse(fingerprint.equals(Utils.renderFingerprint()));
+            Utils.baseLayer = base;
+
+            assertEquals(fingerprint, Utils.renderFingerprint());
+        } finally {
+            Utils.lakeColor = lake;
+            Utils.simplifyTolerance = tolerance;
+            Utils.minFeatureSize = size;
+            Utils.pngCompressionLevel = level;
+            Utils.baseLayer = base;
+        }
+    }
+
     /**
      * Testa che i metodi di proiezione siano corretti
      */
@@ -96,5 +143,43 @@ public class UtilsTest {
         assertTrue(15.0 == Utils.multipleOf(14.2, 5));
     }
 
+    /**
+     * Testa che l'impronta di un raster dipenda solo dai suoi pixel e che
+     * un quadrante vuoto venga riconosciuto.
+     */
+
+    @Test
+    public void rasterDigestTest() {
+        int bg = Utils.backgroundColor.getRGB();
+        int[] a = new int[] {bg, bg, bg};
+        int[] b = new int[] {bg & 0xffffff, bg, bg};
+        int[] c = new int[] {bg, Color.RED.getRGB(), bg};
+
+        assertEquals(Utils.toHex(Utils.rasterDigest(a)), Utils.toHex(Utils.rasterDigest(b)));
+        assertFalse(Utils.toHex(Utils.rasterDigest(a)).equals(Utils.toHex(Utils.rasterDigest(c))));
+        assertTrue(Utils.isEmptyTile(a));
+        assertTrue(Utils.isEmptyTile(b));
+        assertFalse(Utils.isEmptyTile(c));
+        assertEquals("00ff10", Utils.toHex(new byte[] {0, (byte)0xff, 0x10}));
+    }
+
+    /**
+     * Testa che la tavolozza contenga il nero come primo colore e tutti
+     * i colori configurati.
+     */
 
+    @Test
+    public void paletteTest() {
+        assertEquals(Color.BLACK.getRGB(), Utils.palette.getRGB(0));
+        assertTrue(Utils.palette.getMapSize() <= 256);
+        Color[] colors = {Utils.backgroundColor, Utils.lakeColor, Utils.pathColor, Utils.riverColor,
+                          Utils.trackLineColor, Utils.checkPointColor, Utils.elevationColor,
+                          Utils.elevationColor.darker().darker()};
+        for (Color c : colors) {
+            boolean found = false;
+            for (int i = 0; i < Utils.palette.getMapSize(); i++)
+                found |= Utils.palette.getRGB(i) == c.getRGB();
+            assertTrue(found);
+        }
+    }
 }
@@ -0,0 +1,170 @@
+/******************************************************************************
+* Copyright (c) 2015 Nicola Mometto
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*  Nicola Mometto
+*  Antonio Cavestro
+*  Sebastiano Valle
+*  Gabriele Pozzan
+******************************************************************************/
+
+
+/**
+ * Name: VectorTileEncoderTest.java
+ * Package: com.kyloth.serleenacloud.render
+ * Author: Nicola Mometto
+ *
+ * History:
+ * Version  Programmer       Changes
+ * 1.0.0    Nicola Mometto  Creazione file e scrittura
+ *                                       codice e documentazione Javadoc
+ */
+
+package com.kyloth.serleenacloud.render;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Contiene test per la classe VectorTileEncoder.
+ *
+ * @author Nicola Mometto <nicola.mometto@studenti.unipd.it>
+ * @version 1.0.0
+ */
+
+public class VectorTileEncoderTest {
+
+    /**
+     * Testa la codifica varint e zigzag.
+     */
+
+    @Test
+    public void varintTest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VectorTileEncoder.writeVarint(out, 1);
+        VectorTileEncoder.writeVarint(out, 300);
+        VectorTileEncoder.writeVarint(out, VectorTileEncoder.zigzag(-1));
+        assertArrayEquals(new byte[] {1, (byte)0xac, 0x02, 1}, out.toByteArray());
+
+        assertEquals(0, VectorTileEncoder.zigzag(0));
+        assertEquals(2, VectorTileEncoder.zigzag(1));
+        assertEquals(3, VectorTileEncoder.zigzag(-2));
+    }
+
+    /**
+     * Testa che i livelli vuoti vengano omessi, che i rettangoli vengano
+     * ritagliati sul quadrante e che le coordinate siano relative al suo
+     * angolo nord-ovest.
+     */
+
+    @Test
+    public void layerTest() {
+        VectorTileEncoder e = new VectorTileEncoder(new Rectangle(100, 200, 256, 256));
+        e.beginLayer(VectorTileEncoder.ELEVATION);
+        e.addRect(90, 210, 20, 5, 7);
+        e.addRect(0, 0, 10, 10, 3);
+        e.beginLayer(VectorTileEncoder.LAKE);
+        e.beginLayer(VectorTileEncoder.USER_POINT);
+        e.addPoint(101, 199, -1);
+        e.beginLayer(VectorTileEncoder.POI);
+        e.addPoint(110, 220, 2);
+
+        assertArrayEquals(new byte[] {VectorTileEncoder.VERSION,
+                                      VectorTileEncoder.ELEVATION, 1, 0, 10, 10, 5, 7,
+                                      VectorTileEncoder.USER_POINT, 1, 2, 1,
+                                      VectorTileEncoder.POI, 1, 2, 20, 40},
+                          e.toByteArray());
+    }
+
+    /**
+     * Testa che un poligono molto più grande del quadrante venga
+     * ritagliato sul quadrante allargato del margine.
+     */
+
+    @Test
+    public void polygonClipTest() {
+        VectorTileEncoder e = new VectorTileEncoder(new Rectangle(100, 200, 256, 256));
+        e.beginLayer(VectorTileEncoder.LAKE);
+        e.addPoly(new int[] {-1000, 5000, 5000, -1000}, new int[] {-1000, -1000, 5000, 5000}, 4, 1, true);
+
+        int[][] polys = decode(e.toByteArray(), VectorTileEncoder.LAKE);
+        assertEquals(1, polys.length);
+        assertEquals(8, polys[0].length);
+        for (int i = 0; i < polys[0].length; i += 2) {
+            assertTrue(polys[0][i] == -1 || polys[0][i] == 257);
+            assertTrue(polys[0][i+1] == -1 || polys[0][i+1] == 257);
+        }
+    }
+
+    /**
+     * Testa che una spezzata che esce dal quadrante e vi rientra venga
+     * ritagliata in due entità, e che una spezzata interna resti invariata.
+     */
+
+    @Test
+    public void polylineClipTest() {
+        VectorTileEncoder e = new VectorTileEncoder(new Rectangle(100, 200, 256, 256));
+        e.beginLayer(VectorTileEncoder.TRACK);
+        e.addPoly(new int[] {-1000, 1000, 1000, -1000}, new int[] {250, 250, 400, 400}, 4, 10, false);
+        e.addPoly(new int[] {110, 120, 130}, new int[] {210, 220, 210}, 3, 10, false);
+        e.addPoly(new int[] {-1000, -900}, new int[] {0, 0}, 2, 10, false);
+
+        int[][] polys = decode(e.toByteArray(), VectorTileEncoder.TRACK);
+        assertEquals(3, polys.length);
+        assertArrayEquals(new int[] {-10, 50, 266, 50}, polys[0]);
+        assertArrayEquals(new int[] {266, 200, -10, 200}, polys[1]);
+        assertArrayEquals(new int[] {10, 10, 20, 20, 30, 10}, polys[2]);
+    }
+
+    /**
+     * Decodifica i poligoni o le spezzate dell'unico livello dei dati
+     * vettoriali.
+     *
+     * @param data Dati vettoriali.
+     * @param id Identificativo atteso del livello.
+     * @return Restituisce le coordinate dei vertici di ogni entità, relative al quadrante e alternate x e y.
+     */
+
+    private static int[][] decode(byte[] data, int id) {
+        int[] pos = {0};
+        assertEquals(VectorTileEncoder.VERSION, readVarint(data, pos));
+        assertEquals(id, readVarint(data, pos));
+        int[][] polys = new int[readVarint(data, pos)][];
+        for (int f = 0; f < polys.length; f++) {
+            int n = readVarint(data, pos);
+            polys[f] = new int[2 * n];
+            int x = 0;
+            int y = 0;
+            for (int i = 0; i < n; i++) {
+                x += unzigzag(readVarint(data, pos));
+                y += unzigzag(readVarint(data, pos));
+                polys[f][2*i] = x;
+                polys[f][2*i+1] = y;
+            }
+        }
+        assertEquals(data.length, pos[0]);
+        return polys;
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]++];
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}